@@ -0,0 +1,104 @@
+package com.github.vincentrussell.query.mongodb.sql.converter;
+
+import com.alibaba.fastjson.JSON;
+import com.github.vincentrussell.query.mongodb.sql.converter.util.LiteralClassifier;
+import com.github.vincentrussell.query.mongodb.sql.converter.util.SqlUtils;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Slot for a named parameter (:name) in a translated query, it is replaced by the value of the parameter
+ * when the query is bound with {@link QueryConverter#bind(java.util.function.Function)}.
+ */
+public class BindParameter {
+    private final String name;
+    private final FieldType fieldType;
+    private final boolean like;
+
+    public BindParameter(String name, FieldType fieldType) {
+        this(name, fieldType, false);
+    }
+
+    private BindParameter(String name, FieldType fieldType, boolean like) {
+        this.name = name;
+        this.fieldType = fieldType != null ? fieldType : FieldType.UNKNOWN;
+        this.like = like;
+    }
+
+    /**
+     * @param name the parameter name
+     * @return a slot that is bound to the regex of a like pattern
+     */
+    public static BindParameter like(String name) {
+        return new BindParameter(name, FieldType.STRING, true);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public FieldType getFieldType() {
+        return fieldType;
+    }
+
+    public boolean isLike() {
+        return like;
+    }
+
+    /**
+     * Convert the value of the parameter into the value that is put into the mongo document.
+     *
+     * @param value the parameter value
+     * @return the bson value
+     * @throws ParseException when the value cannot be converted to the field type
+     */
+    public Object bind(Object value) throws ParseException {
+        if (value == null) {
+            return null;
+        }
+        if (like) {
+            return "^" + SqlUtils.replaceRegexCharacters(String.valueOf(value)) + "$";
+        }
+        if (value instanceof Collection || value.getClass().isArray()) {
+            List<Object> list = new ArrayList<>();
+            if (value instanceof Collection) {
+                for (Object item : (Collection) value) {
+                    list.add(bind(item));
+                }
+            } else {
+                for (int i = 0; i < Array.getLength(value); i++) {
+                    list.add(bind(Array.get(value, i)));
+                }
+            }
+            return list;
+        }
+        if (value instanceof Enum) {
+            value = ((Enum) value).name();
+        }
+        if (!FieldType.UNKNOWN.equals(fieldType)) {
+            if (FieldType.NUMBER.equals(fieldType) && value instanceof Number
+                    || FieldType.DATE.equals(fieldType) && value instanceof Date
+                    || FieldType.BOOLEAN.equals(fieldType) && value instanceof Boolean) {
+                return value;
+            }
+            return SqlUtils.normalizeValue(value instanceof String ? value : String.valueOf(value), fieldType);
+        }
+        if (value instanceof String) {
+            return LiteralClassifier.classify(value, fieldType);
+        }
+        if (value instanceof Number || value instanceof Boolean || value instanceof Date || value instanceof Map) {
+            return value;
+        }
+        return JSON.toJSON(value);
+    }
+
+    @Override
+    public String toString() {
+        return ":" + name;
+    }
+}
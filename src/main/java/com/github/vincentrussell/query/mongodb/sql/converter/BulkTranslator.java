@@ -0,0 +1,149 @@
+package com.github.vincentrussell.query.mongodb.sql.converter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Translates a batch of sql statements in parallel on a {@link ForkJoinPool}, for jobs like replaying a query log
+ * or checking every where template up front.
+ * <p>
+ * The translation keeps no shared mutable state: the natural language date parsers are kept per thread and the date
+ * formatters and the {@link QueryPlanCache} are thread safe. The sql parsers are shared by the threads through the
+ * {@link SqlParserPool}, a parser is taken out of its queue for one statement and only one thread uses it until it is
+ * given back, when the pool is empty the thread parses with a new parser.
+ */
+public class BulkTranslator {
+    private final ForkJoinPool pool;
+    private final boolean cachePlans;
+    private final Map<String, FieldType> fieldNameToFieldTypeMapping;
+    private final FieldType defaultFieldType;
+
+    /**
+     * Translate on the common pool and put the plans in the {@link QueryPlanCache}.
+     */
+    public BulkTranslator() {
+        this(ForkJoinPool.commonPool(), true);
+    }
+
+    /**
+     * @param pool       the pool to translate on
+     * @param cachePlans true to take the plans from and put them in the {@link QueryPlanCache}
+     */
+    public BulkTranslator(ForkJoinPool pool, boolean cachePlans) {
+        this(pool, cachePlans, Collections.<String, FieldType>emptyMap(), FieldType.UNKNOWN);
+    }
+
+    /**
+     * @param pool                        the pool to translate on
+     * @param cachePlans                  true to take the plans from and put them in the {@link QueryPlanCache},
+     *                                    the cache only holds translations without a field type mapping
+     * @param fieldNameToFieldTypeMapping mapping for each field
+     * @param defaultFieldType            the default {@link FieldType} to be used
+     */
+    public BulkTranslator(ForkJoinPool pool, boolean cachePlans, Map<String, FieldType> fieldNameToFieldTypeMapping,
+                          FieldType defaultFieldType) {
+        this.pool = pool;
+        this.fieldNameToFieldTypeMapping = fieldNameToFieldTypeMapping;
+        this.defaultFieldType = defaultFieldType;
+        this.cachePlans = cachePlans && fieldNameToFieldTypeMapping.isEmpty() && FieldType.UNKNOWN.equals(defaultFieldType);
+    }
+
+    /**
+     * @param sqls the sql statements
+     * @return the translation of every statement, in the order of the statements
+     */
+    public List<Translation> translate(Collection<String> sqls) {
+        return translate(sqls.stream());
+    }
+
+    /**
+     * @param sqls the sql statements
+     * @return the translation of every statement, in the order of the statements
+     */
+    public List<Translation> translate(Stream<String> sqls) {
+        final List<String> list = sqls.collect(Collectors.toList());
+        try {
+            return pool.submit(() -> list.parallelStream().map(this::translate).collect(Collectors.toList())).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while translating", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * @param sqls the sql statements
+     * @return the statements that cannot be translated, with the reason
+     */
+    public List<Translation> failures(Collection<String> sqls) {
+        List<Translation> failures = new ArrayList<>();
+        for (Translation translation : translate(sqls)) {
+            if (!translation.isSuccess()) {
+                failures.add(translation);
+            }
+        }
+        return failures;
+    }
+
+    private Translation translate(String sql) {
+        try {
+            QueryConverter queryConverter = cachePlans ? QueryPlanCache.get(sql)
+                    : new QueryConverter(sql, fieldNameToFieldTypeMapping, defaultFieldType);
+            return new Translation(sql, queryConverter, null);
+        } catch (ParseException e) {
+            return new Translation(sql, null, e);
+        } catch (RuntimeException e) {
+            ParseException parseException = new ParseException("could not translate: " + e);
+            parseException.initCause(e);
+            return new Translation(sql, null, parseException);
+        }
+    }
+
+    /**
+     * The plan of one sql statement or the reason it could not be translated.
+     */
+    public static class Translation {
+        private final String sql;
+        private final QueryConverter queryConverter;
+        private final ParseException exception;
+
+        Translation(String sql, QueryConverter queryConverter, ParseException exception) {
+            this.sql = sql;
+            this.queryConverter = queryConverter;
+            this.exception = exception;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public boolean isSuccess() {
+            return exception == null;
+        }
+
+        /**
+         * @return the plan, null when the statement could not be translated
+         */
+        public QueryConverter getQueryConverter() {
+            return queryConverter;
+        }
+
+        /**
+         * @return why the statement could not be translated, null when it was
+         */
+        public ParseException getException() {
+            return exception;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.github.vincentrussell.query.mongodb.sql.converter;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.mongodb.ReadPreference;
+import com.mongodb.client.MongoCollection;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the counts of the selects without scanning more than needed.
+ * <ul>
+ * <li>A count without a filter reads the document count of the collection metadata (estimatedDocumentCount)
+ * instead of running an aggregation over every document. The metadata count can be off after an unclean shutdown
+ * and on sharded clusters with orphaned documents, set {@link #D_EXACT_COUNT_WITHOUT_FILTER} to count them.</li>
+ * <li>A count with a filter is kept for {@link #D_COUNT_CACHE_SECONDS} seconds (5 by default, 0 to not keep it), so
+ * the pages of one paged query do not count the same filter again. A count can miss the writes of other processes
+ * for that long. A count of a query with the approximateCount option
+ * (see {@link QueryOptions}) may be {@link #D_APPROXIMATE_COUNT_CACHE_SECONDS} seconds old.</li>
+ * <li>{@link #exists(MongoCollection, Bson)} reads one _id instead of counting.</li>
+ * </ul>
+ * A count is kept per collection, read preference and filter. The kept counts of a collection are dropped when a
+ * statement of this library writes to it: the write moves the generation of the collection on, and a count of an
+ * older generation is not read.
+ */
+public class CountEngine {
+    public static final String D_COUNT_CACHE_SECONDS = "countCacheSeconds";
+    public static final String D_APPROXIMATE_COUNT_CACHE_SECONDS = "approximateCountCacheSeconds";
+    public static final String D_EXACT_COUNT_WITHOUT_FILTER = "exactCountWithoutFilter";
+    private static final long DEFAULT_COUNT_CACHE_SECONDS = 5;
+    private static final long DEFAULT_APPROXIMATE_COUNT_CACHE_SECONDS = 60;
+    private static final String SEPARATOR = " ";
+
+    private static final long COUNT_CACHE_MILLIS = TimeUnit.SECONDS.toMillis(
+            Long.getLong(D_COUNT_CACHE_SECONDS, DEFAULT_COUNT_CACHE_SECONDS));
+    private static final long APPROXIMATE_COUNT_CACHE_MILLIS = TimeUnit.SECONDS.toMillis(
+            Long.getLong(D_APPROXIMATE_COUNT_CACHE_SECONDS, DEFAULT_APPROXIMATE_COUNT_CACHE_SECONDS));
+
+    private static final ConcurrentMap<String, AtomicLong> GENERATIONS = new ConcurrentHashMap<>();
+    private static final Cache<Key, CachedCount> COUNTS = CacheBuilder.newBuilder()
+            .maximumSize(10000)
+            .expireAfterWrite(Math.max(1, Math.max(COUNT_CACHE_MILLIS, APPROXIMATE_COUNT_CACHE_MILLIS)), TimeUnit.MILLISECONDS)
+            .build();
+
+    private CountEngine() {
+    }
+
+    /**
+     * @param mongoCollection the collection
+     * @param filter          the filter of the count
+     * @param options         the options of the query
+     * @return the number of documents that match the filter
+     */
+    public static long count(MongoCollection<?> mongoCollection, Bson filter, QueryOptions options) {
+        BsonDocument bsonFilter = filter.toBsonDocument(BsonDocument.class, mongoCollection.getCodecRegistry());
+        if (isEstimated(bsonFilter)) {
+            return mongoCollection.estimatedDocumentCount(options.toEstimatedCountOptions());
+        }
+        Key key = key(mongoCollection.getNamespace().getFullName(), mongoCollection.getReadPreference(), bsonFilter);
+        Long count = getIfPresent(key, options);
+        if (count == null) {
+            count = mongoCollection.countDocuments(bsonFilter, options.toCountOptions(mongoCollection));
+            put(key, count);
+        }
+        return count;
+    }
+
+    /**
+     * @param mongoCollection the collection
+     * @param filter          the filter
+     * @return true when a document matches the filter, read with find(filter).projection({_id:1}).limit(1)
+     */
+    public static boolean exists(MongoCollection<?> mongoCollection, Bson filter) {
+        return mongoCollection.find(filter, Document.class).projection(new Document("_id", 1)).limit(1).first() != null;
+    }
+
+    /**
+     * @param mongoCollection the collection that was written to
+     */
+    public static void invalidate(MongoCollection<?> mongoCollection) {
+        invalidate(mongoCollection.getNamespace().getFullName());
+    }
+
+    static void invalidate(String namespace) {
+        GENERATIONS.computeIfAbsent(namespace, n -> new AtomicLong()).incrementAndGet();
+    }
+
+    public static void invalidateAll() {
+        COUNTS.invalidateAll();
+    }
+
+    static boolean isEstimated(BsonDocument filter) {
+        return filter.isEmpty() && !Boolean.getBoolean(D_EXACT_COUNT_WITHOUT_FILTER);
+    }
+
+    private static long generation(String namespace) {
+        AtomicLong generation = GENERATIONS.get(namespace);
+        return generation != null ? generation.get() : 0;
+    }
+
+    /**
+     * Take the key before the count is run, so a write that ends while it runs drops the count.
+     *
+     * @param namespace      the full name of the collection
+     * @param readPreference the read preference of the count, a count read from a secondary is not kept for the primary
+     * @param filter         the filter of the count
+     * @return the key of the kept count
+     */
+    static Key key(String namespace, ReadPreference readPreference, BsonDocument filter) {
+        return new Key(namespace, readPreference + SEPARATOR + filter.toJson(), generation(namespace));
+    }
+
+    /**
+     * @param key     the collection, the read preference and the filter
+     * @param options the options of the query
+     * @return the kept count, null when there is none that is recent enough for the options
+     */
+    static Long getIfPresent(Key key, QueryOptions options) {
+        long maxAge = options.isApproximateCount() ? APPROXIMATE_COUNT_CACHE_MILLIS : COUNT_CACHE_MILLIS;
+        CachedCount cachedCount = maxAge > 0 ? COUNTS.getIfPresent(key) : null;
+        if (cachedCount == null || cachedCount.generation != generation(key.namespace)
+                || System.currentTimeMillis() - cachedCount.time > maxAge) {
+            return null;
+        }
+        return cachedCount.count;
+    }
+
+    static void put(Key key, long count) {
+        if (COUNT_CACHE_MILLIS > 0 || APPROXIMATE_COUNT_CACHE_MILLIS > 0) {
+            COUNTS.put(key, new CachedCount(count, System.currentTimeMillis(), key.generation));
+        }
+    }
+
+    /**
+     * A kept count is found by its collection, read preference and filter, the generation is the one it was counted in.
+     */
+    static final class Key {
+        private final String namespace;
+        private final String query;
+        private final long generation;
+
+        private Key(String namespace, String query, long generation) {
+            this.namespace = namespace;
+            this.query = query;
+            this.generation = generation;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return namespace.equals(key.namespace) && query.equals(key.query);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * namespace.hashCode() + query.hashCode();
+        }
+    }
+
+    private static class CachedCount {
+        private final long count;
+        private final long time;
+        private final long generation;
+
+        private CachedCount(long count, long time, long generation) {
+            this.count = count;
+            this.time = time;
+            this.generation = generation;
+        }
+    }
+}
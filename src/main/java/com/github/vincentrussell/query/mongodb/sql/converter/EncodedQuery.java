@@ -0,0 +1,67 @@
+package com.github.vincentrussell.query.mongodb.sql.converter;
+
+import com.mongodb.MongoClientSettings;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.Codec;
+
+/**
+ * The filter, projection and sort of a translated query encoded to bson once, so a cached query is handed to the
+ * driver as bytes instead of being encoded again every time it is run. A copy of the documents that were encoded is
+ * kept, so a query whose documents were changed after they were encoded is not run with the old bytes.
+ */
+public class EncodedQuery {
+    private static final Codec<Document> DOCUMENT_CODEC = MongoClientSettings.getDefaultCodecRegistry().get(Document.class);
+
+    private final Document source;
+    private final RawBsonDocument filter;
+    private final RawBsonDocument projection;
+    private final RawBsonDocument sort;
+
+    private EncodedQuery(Document source, RawBsonDocument filter, RawBsonDocument projection, RawBsonDocument sort) {
+        this.source = source;
+        this.filter = filter;
+        this.projection = projection;
+        this.sort = sort;
+    }
+
+    /**
+     * @param mongoDBQueryHolder the translated query, it must not have named parameters left to bind
+     * @return the encoded documents of the query
+     */
+    public static EncodedQuery encode(MongoDBQueryHolder mongoDBQueryHolder) {
+        return new EncodedQuery(MongoDBQueryHolder.copyDocument(source(mongoDBQueryHolder)),
+                encode(mongoDBQueryHolder.getQuery()), encode(mongoDBQueryHolder.getProjection()),
+                encode(mongoDBQueryHolder.getSort()));
+    }
+
+    /**
+     * @param mongoDBQueryHolder a translated query
+     * @return true when the filter, projection and sort of the query are the documents that were encoded
+     */
+    public boolean encodes(MongoDBQueryHolder mongoDBQueryHolder) {
+        return source.equals(source(mongoDBQueryHolder));
+    }
+
+    private static Document source(MongoDBQueryHolder mongoDBQueryHolder) {
+        return new Document("filter", mongoDBQueryHolder.getQuery())
+                .append("projection", mongoDBQueryHolder.getProjection())
+                .append("sort", mongoDBQueryHolder.getSort());
+    }
+
+    private static RawBsonDocument encode(Document document) {
+        return new RawBsonDocument(document != null ? document : new Document(), DOCUMENT_CODEC);
+    }
+
+    public RawBsonDocument getFilter() {
+        return filter;
+    }
+
+    public RawBsonDocument getProjection() {
+        return projection;
+    }
+
+    public RawBsonDocument getSort() {
+        return sort;
+    }
+}
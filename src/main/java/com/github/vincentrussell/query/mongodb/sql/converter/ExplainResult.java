@@ -0,0 +1,182 @@
+package com.github.vincentrussell.query.mongodb.sql.converter;
+
+import org.bson.Document;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * What the explain command told about a query: the winning plan, the indexes it uses and, for
+ * <code>EXPLAIN ANALYZE</code>, the keys and documents examined, the documents returned and the execution time.
+ * <p>
+ * The figures are read from the first queryPlanner and executionStats of the explain output, so for an aggregation
+ * they are the ones of the stage that reads the collection, not of the whole pipeline. The whole output is
+ * {@link #getExplain()}.
+ */
+public class ExplainResult {
+    /**
+     * the verbosity of <code>EXPLAIN</code>: the winning plan, the query is not run
+     */
+    public static final String QUERY_PLANNER = "queryPlanner";
+    /**
+     * the verbosity of <code>EXPLAIN ANALYZE</code>: the query is run and its execution is measured
+     */
+    public static final String EXECUTION_STATS = "executionStats";
+    private static final String COLLSCAN = "COLLSCAN";
+
+    private final Document explain;
+    private final Document winningPlan;
+    private final Document executionStats;
+    private final List<String> indexNames;
+    private final boolean collectionScan;
+
+    ExplainResult(Document explain) {
+        this.explain = explain;
+        this.winningPlan = find(explain, "winningPlan");
+        this.executionStats = find(explain, EXECUTION_STATS);
+        Set<String> names = new LinkedHashSet<>();
+        this.collectionScan = winningPlan != null && addIndexNames(winningPlan, names);
+        this.indexNames = Collections.unmodifiableList(new ArrayList<>(names));
+    }
+
+    /**
+     * @return the first document under the key, depth first
+     */
+    private static Document find(Object node, String key) {
+        if (node instanceof Document) {
+            Object value = ((Document) node).get(key);
+            if (value instanceof Document) {
+                return (Document) value;
+            }
+            node = ((Document) node).values();
+        }
+        if (node instanceof Iterable) {
+            for (Object child : (Iterable<?>) node) {
+                Document found = find(child, key);
+                if (found != null) {
+                    return found;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return true when a stage of the plan scans the collection
+     */
+    private static boolean addIndexNames(Object node, Set<String> names) {
+        boolean collectionScan = false;
+        if (node instanceof Document) {
+            Document stage = (Document) node;
+            if (stage.get("indexName") instanceof String) {
+                names.add(stage.getString("indexName"));
+            }
+            collectionScan = COLLSCAN.equals(stage.get("stage"));
+            node = stage.values();
+        }
+        if (node instanceof Iterable) {
+            for (Object child : (Iterable<?>) node) {
+                collectionScan |= addIndexNames(child, names);
+            }
+        }
+        return collectionScan;
+    }
+
+    /**
+     * @return the output of the explain command
+     */
+    public Document getExplain() {
+        return explain;
+    }
+
+    public Document getWinningPlan() {
+        return winningPlan;
+    }
+
+    /**
+     * @return the stage at the root of the winning plan, like FETCH, IXSCAN or COLLSCAN
+     */
+    public String getStage() {
+        Document stage = winningPlan;
+        if (stage != null && !stage.containsKey("stage") && stage.get("queryPlan") instanceof Document) {
+            // the plans of the slot based engine are under queryPlan
+            stage = (Document) stage.get("queryPlan");
+        }
+        return stage != null && stage.get("stage") instanceof String ? stage.getString("stage") : null;
+    }
+
+    /**
+     * @return the indexes the winning plan reads, in the order of the plan
+     */
+    public List<String> getIndexNames() {
+        return indexNames;
+    }
+
+    /**
+     * @return the first index the winning plan reads, null when it reads none
+     */
+    public String getIndexName() {
+        return indexNames.isEmpty() ? null : indexNames.get(0);
+    }
+
+    /**
+     * @return true when a stage of the winning plan scans the collection
+     */
+    public boolean isCollectionScan() {
+        return collectionScan;
+    }
+
+    /**
+     * @return the execution stats, null when the query was only planned
+     */
+    public Document getExecutionStats() {
+        return executionStats;
+    }
+
+    public Long getKeysExamined() {
+        return getStat("totalKeysExamined");
+    }
+
+    public Long getDocsExamined() {
+        return getStat("totalDocsExamined");
+    }
+
+    public Long getReturned() {
+        return getStat("nReturned");
+    }
+
+    public Long getExecutionTimeMillis() {
+        return getStat("executionTimeMillis");
+    }
+
+    private Long getStat(String name) {
+        Object value = executionStats != null ? executionStats.get(name) : null;
+        return value instanceof Number ? ((Number) value).longValue() : null;
+    }
+
+    /**
+     * @return the result as the row of a select
+     */
+    public Map<String, Object> toRow() {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("stage", getStage());
+        row.put("indexName", getIndexName());
+        row.put("collectionScan", collectionScan);
+        row.put("keysExamined", getKeysExamined());
+        row.put("docsExamined", getDocsExamined());
+        row.put("returned", getReturned());
+        row.put("executionTimeMillis", getExecutionTimeMillis());
+        row.put("winningPlan", winningPlan != null ? winningPlan.toJson() : null);
+        return row;
+    }
+
+    @Override
+    public String toString() {
+        return toRow().toString();
+    }
+}
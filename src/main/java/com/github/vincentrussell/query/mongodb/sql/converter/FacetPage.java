@@ -0,0 +1,144 @@
+package com.github.vincentrussell.query.mongodb.sql.converter;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.AggregateIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * One page of a select and the number of rows of every page, read in one aggregation:
+ * <code>$match, $sort, $facet: {total: [$count], rows: [$skip, $limit, $project]}</code>,
+ * instead of a count and a select that both run the filter. The sort is before the $facet, where it can use an
+ * index, the stages inside a $facet cannot.
+ * <p>
+ * The facet result is one document, so it cannot be larger than 16MB. When the server refuses the page for that,
+ * or the select has no limit, the page is read with a count and a select.
+ * <p>
+ * The rows are documents, a page is not decoded with the {@link qeorm.ModelCodec} of its model.
+ */
+public class FacetPage {
+    private static final String TOTAL = "total";
+    private static final String ROWS = "rows";
+    /**
+     * BSONObjectTooLarge, the aggregation result exceeds the maximum document size and the $facet document is too large
+     */
+    private static final Set<Integer> TOO_LARGE = new HashSet<>(Arrays.asList(10334, 16389, 4031700));
+    private static final Logger logger = LoggerFactory.getLogger(FacetPage.class);
+
+    private final List<Map> rows;
+    private final long total;
+
+    public FacetPage(List<Map> rows, long total) {
+        this.rows = rows;
+        this.total = total;
+    }
+
+    /**
+     * @return the rows of the page
+     */
+    public List<Map> getRows() {
+        return rows;
+    }
+
+    /**
+     * @return the number of rows that match the where clause, on every page
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * @param queryConverter a select of documents with a limit (and an offset)
+     * @param mongoDatabase  the database to run it against
+     * @return the page and the total, the aggregation is recorded in the {@link QueryTrace} of the thread
+     */
+    public static FacetPage read(QueryConverter queryConverter, MongoDatabase mongoDatabase) {
+        MongoDBQueryHolder mongoDBQueryHolder = queryConverter.getMongoQuery();
+        if (!SQLCommandType.SELECT.equals(mongoDBQueryHolder.getSqlCommandType()) || mongoDBQueryHolder.isDistinct()
+                || mongoDBQueryHolder.isCountAll() || !mongoDBQueryHolder.getGroupBys().isEmpty()) {
+            throw new IllegalArgumentException("only a select of documents can be read by page");
+        }
+        try (QueryTrace trace = QueryTrace.start()) {
+            trace.setQuery(queryConverter);
+            FacetPage page = read(queryConverter, mongoDatabase, mongoDBQueryHolder);
+            trace.setResult(page.getRows());
+            return page;
+        }
+    }
+
+    private static FacetPage read(QueryConverter queryConverter, MongoDatabase mongoDatabase, MongoDBQueryHolder mongoDBQueryHolder) {
+        QueryOptions options = mongoDBQueryHolder.getOptions();
+        MongoCollection<Document> mongoCollection = options.apply(mongoDatabase.getCollection(mongoDBQueryHolder.getCollection()));
+        if (mongoDBQueryHolder.getLimit() != -1) {
+            List<Document> pipeline = getPipeline(mongoDBQueryHolder);
+            if (logger.isDebugEnabled()) {
+                logger.debug("db.{}.aggregate({})", mongoDBQueryHolder.getCollection(), new Document("pipeline", pipeline).toJson());
+            }
+            try {
+                long start = System.nanoTime();
+                AggregateIterable<Document> aggregate = mongoCollection.aggregate(pipeline);
+                options.apply(aggregate, mongoCollection);
+                Document facet = aggregate.first();
+                start = QueryTrace.record(QueryTrace.Stage.ROUND_TRIP, start);
+                FacetPage page = toPage(facet);
+                QueryTrace.record(QueryTrace.Stage.MAP, start);
+                return page;
+            } catch (MongoCommandException e) {
+                if (!TOO_LARGE.contains(e.getErrorCode())) {
+                    throw e;
+                }
+                logger.warn("分页结果超过16MB，改为分别查询总数和数据：{}", e.getErrorMessage());
+            }
+        }
+        long start = System.nanoTime();
+        long total = CountEngine.count(mongoCollection, mongoDBQueryHolder.getQuery(), options);
+        QueryTrace.record(QueryTrace.Stage.ROUND_TRIP, start);
+        List<Map> rows = ResultUtils.select(queryConverter, mongoDatabase);
+        return new FacetPage(rows, total);
+    }
+
+    /**
+     * @param mongoDBQueryHolder a select of documents
+     * @return the $match, $sort and $facet stages of the page
+     */
+    static List<Document> getPipeline(MongoDBQueryHolder mongoDBQueryHolder) {
+        List<Document> rows = new ArrayList<>();
+        if (mongoDBQueryHolder.getOffset() != -1) {
+            rows.add(new Document("$skip", mongoDBQueryHolder.getOffset()));
+        }
+        if (mongoDBQueryHolder.getLimit() != -1) {
+            rows.add(new Document("$limit", mongoDBQueryHolder.getLimit()));
+        }
+        if (mongoDBQueryHolder.getProjection() != null && mongoDBQueryHolder.getProjection().size() > 0) {
+            rows.add(new Document("$project", mongoDBQueryHolder.getProjection()));
+        }
+        List<Document> pipeline = new ArrayList<>();
+        if (mongoDBQueryHolder.getQuery() != null && mongoDBQueryHolder.getQuery().size() > 0) {
+            pipeline.add(new Document("$match", mongoDBQueryHolder.getQuery()));
+        }
+        if (mongoDBQueryHolder.getSort() != null && mongoDBQueryHolder.getSort().size() > 0) {
+            pipeline.add(new Document("$sort", mongoDBQueryHolder.getSort()));
+        }
+        pipeline.add(new Document("$facet", new Document(TOTAL, Collections.singletonList(new Document("$count", TOTAL)))
+                .append(ROWS, rows)));
+        return pipeline;
+    }
+
+    static FacetPage toPage(Document facet) {
+        List<Document> totals = facet != null ? (List<Document>) facet.get(TOTAL) : null;
+        long total = totals == null || totals.isEmpty() ? 0 : ((Number) totals.get(0).get(TOTAL)).longValue();
+        List<Map> rows = facet != null ? new ArrayList<Map>((List<Document>) facet.get(ROWS)) : new ArrayList<Map>();
+        return new FacetPage(rows, total);
+    }
+}
@@ -0,0 +1,446 @@
+package com.github.vincentrussell.query.mongodb.sql.converter;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Checks the translated queries against the indexes of their collections, before a collection scan shows up as a
+ * latency alarm. For every query it tells which index serves the filter, whether the query risks a collection scan
+ * or an in-memory sort, whether the index covers the query and which compound index would serve it, built with the
+ * equality, sort, range rule.
+ * <p>
+ * The indexes of a collection are listed once and kept in the {@link IndexCache}. Run it on one query with
+ * {@link #advise(QueryConverter, MongoDatabase)} or on a file of captured sql with {@link #adviseFile(MongoDatabase, Path)}.
+ */
+public class IndexAdvisor {
+    private static final Logger logger = LoggerFactory.getLogger(IndexAdvisor.class);
+    private static final Set<String> EQUALITY_OPERATORS = new LinkedHashSet<>(Arrays.asList("$eq", "$in"));
+    // the sql is followed by the parameters, the collection, the rows and the timings, each of them may be missing
+    private static final Pattern CAPTURED_SQL = Pattern.compile(
+            ".*?的sql(\\[[0-9a-f]*\\])?：(.*?)( , (参数为：|集合：|返回\\d+行|耗时\\(ms\\)：).*)?$");
+
+    private IndexAdvisor() {
+    }
+
+    /**
+     * @param queryConverter the translated query
+     * @param mongoDatabase  the database of its collection
+     * @return the advice for the query
+     */
+    public static Advice advise(QueryConverter queryConverter, MongoDatabase mongoDatabase) {
+        MongoDBQueryHolder mongoDBQueryHolder = queryConverter.getMongoQuery();
+        MongoCollection<Document> mongoCollection = mongoDatabase.getCollection(mongoDBQueryHolder.getCollection());
+        return advise(mongoDBQueryHolder, IndexCache.getIndexes(mongoCollection));
+    }
+
+    /**
+     * @param mongoDatabase the database of the collections
+     * @param file          captured sql, one statement per line, lines of the {@link QueryTrace} log are read too
+     * @return the advice for every statement that can be translated, in the order of the file
+     * @throws IOException when the file cannot be read
+     */
+    public static List<Advice> adviseFile(MongoDatabase mongoDatabase, Path file) throws IOException {
+        Set<String> sqls = new LinkedHashSet<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            String sql = toSql(line);
+            if (sql != null) {
+                sqls.add(sql);
+            }
+        }
+        List<Advice> advices = new ArrayList<>();
+        for (BulkTranslator.Translation translation : new BulkTranslator().translate(sqls)) {
+            if (!translation.isSuccess()) {
+                logger.warn("sql不能翻译：{} , {}", translation.getSql(), translation.getException().getMessage());
+                continue;
+            }
+            MongoDBQueryHolder mongoDBQueryHolder = translation.getQueryConverter().getMongoQuery();
+            if (!SQLCommandType.SELECT.equals(mongoDBQueryHolder.getSqlCommandType())
+                    && !SQLCommandType.UPDATE.equals(mongoDBQueryHolder.getSqlCommandType())
+                    && !SQLCommandType.DELETE.equals(mongoDBQueryHolder.getSqlCommandType())) {
+                continue;
+            }
+            Advice advice = advise(translation.getQueryConverter(), mongoDatabase);
+            advice.sql = translation.getSql();
+            if (advice.isCollscanRisk()) {
+                logger.warn("sql可能全表扫描：{} , 建议索引：{}", advice.sql, advice.getSuggestedIndex());
+            }
+            advices.add(advice);
+        }
+        return advices;
+    }
+
+    /**
+     * @param line a line of a file of captured sql
+     * @return the sql of the line, null when the line has none
+     */
+    static String toSql(String line) {
+        String sql = line.trim();
+        Matcher matcher = CAPTURED_SQL.matcher(sql);
+        if (matcher.matches()) {
+            sql = matcher.group(2).trim();
+        }
+        if (sql.isEmpty() || sql.startsWith("--") || sql.startsWith("#")) {
+            return null;
+        }
+        return sql.endsWith(";") ? sql.substring(0, sql.length() - 1) : sql;
+    }
+
+    /**
+     * @param mongoDBQueryHolder the translated query
+     * @param indexes            the index documents of its collection, as listIndexes returns them
+     * @return the advice for the query
+     */
+    public static Advice advise(MongoDBQueryHolder mongoDBQueryHolder, List<Document> indexes) {
+        Map<String, Boolean> filterFields = new LinkedHashMap<>();
+        List<Set<String>> orBranches = new ArrayList<>();
+        addFilterFields(mongoDBQueryHolder.getQuery(), filterFields, orBranches);
+        // the sort of a group by is done on the groups, an index cannot serve it
+        Document sort = mongoDBQueryHolder.getSort() != null && mongoDBQueryHolder.getGroupBys().isEmpty()
+                ? mongoDBQueryHolder.getSort() : new Document();
+        Map<String, Boolean> allFields = new LinkedHashMap<>(filterFields);
+        for (Set<String> branch : orBranches) {
+            for (String field : branch) {
+                putField(allFields, field, false);
+            }
+        }
+        Advice advice = new Advice(mongoDBQueryHolder.getCollection());
+        Document suggestedIndex = suggest(allFields, sort);
+
+        Document best = null;
+        int bestPrefix = 0;
+        for (Document index : indexes) {
+            Document keys = (Document) index.get("key");
+            int prefix = getFilterPrefix(keys, filterFields);
+            if (prefix > bestPrefix || (prefix == bestPrefix && prefix > 0
+                    && keys.size() < ((Document) best.get("key")).size())) {
+                best = index;
+                bestPrefix = prefix;
+            }
+        }
+        if (best == null && !sort.isEmpty()) {
+            for (Document index : indexes) {
+                if (isSortServed((Document) index.get("key"), filterFields, sort)) {
+                    best = index;
+                    break;
+                }
+            }
+        }
+        advice.indexName = best != null ? best.getString("name") : null;
+        if (bestPrefix == 0 && !orBranches.isEmpty()) {
+            // an $or is served by an index for every branch, or scans the collection
+            List<String> branchIndexes = getBranchIndexes(orBranches, indexes);
+            advice.collscanRisk = branchIndexes == null;
+            if (branchIndexes != null && best == null) {
+                advice.indexName = String.join(",", branchIndexes);
+            }
+        } else {
+            advice.collscanRisk = best == null && (!filterFields.isEmpty() || !sort.isEmpty());
+        }
+        advice.inMemorySort = !sort.isEmpty() && (best == null || !isSortServed((Document) best.get("key"), filterFields, sort));
+        advice.covered = best != null && isCovered(mongoDBQueryHolder, (Document) best.get("key"), allFields);
+        if (!suggestedIndex.isEmpty() && (best == null || !startsWith((Document) best.get("key"), suggestedIndex, filterFields))) {
+            advice.suggestedIndex = suggestedIndex;
+        }
+        return advice;
+    }
+
+    /**
+     * Collect the fields of a filter, true for the fields compared for equality, false for the ranges. The fields of
+     * an $or or a $nor are collected per branch.
+     */
+    private static void addFilterFields(Document query, Map<String, Boolean> fields, List<Set<String>> orBranches) {
+        if (query == null) {
+            return;
+        }
+        for (Map.Entry<String, Object> entry : query.entrySet()) {
+            String key = entry.getKey();
+            Object value = entry.getValue();
+            if ("$and".equals(key)) {
+                for (Object condition : (Collection<?>) value) {
+                    addFilterFields((Document) condition, fields, orBranches);
+                }
+            } else if ("$or".equals(key) || "$nor".equals(key)) {
+                for (Object condition : (Collection<?>) value) {
+                    Map<String, Boolean> branchFields = new LinkedHashMap<>();
+                    List<Set<String>> nestedBranches = new ArrayList<>();
+                    addFilterFields((Document) condition, branchFields, nestedBranches);
+                    Set<String> branch = new LinkedHashSet<>(branchFields.keySet());
+                    for (Set<String> nested : nestedBranches) {
+                        branch.addAll(nested);
+                    }
+                    orBranches.add(branch);
+                }
+            } else if (!key.startsWith("$")) {
+                putField(fields, key, isEquality(value));
+            }
+        }
+    }
+
+    /**
+     * @return the name of an index for every branch of an $or, null when a branch has no index
+     */
+    private static List<String> getBranchIndexes(List<Set<String>> orBranches, List<Document> indexes) {
+        Set<String> names = new LinkedHashSet<>();
+        for (Set<String> branch : orBranches) {
+            String name = null;
+            for (Document index : indexes) {
+                Document keys = (Document) index.get("key");
+                if (!keys.isEmpty() && branch.contains(keys.keySet().iterator().next())) {
+                    name = index.getString("name");
+                    break;
+                }
+            }
+            if (name == null) {
+                return null;
+            }
+            names.add(name);
+        }
+        return new ArrayList<>(names);
+    }
+
+    private static void putField(Map<String, Boolean> fields, String field, boolean equality) {
+        Boolean previous = fields.get(field);
+        fields.put(field, previous != null ? previous || equality : equality);
+    }
+
+    private static boolean isEquality(Object value) {
+        if (value instanceof Document) {
+            for (String operator : ((Document) value).keySet()) {
+                if (operator.startsWith("$") && !EQUALITY_OPERATORS.contains(operator)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return !(value instanceof Pattern);
+    }
+
+    /**
+     * equality fields, then the sort, then the ranges
+     */
+    private static Document suggest(Map<String, Boolean> filterFields, Document sort) {
+        Document index = new Document();
+        for (Map.Entry<String, Boolean> field : filterFields.entrySet()) {
+            if (field.getValue()) {
+                index.put(field.getKey(), 1);
+            }
+        }
+        for (Map.Entry<String, Object> field : sort.entrySet()) {
+            if (!index.containsKey(field.getKey())) {
+                index.put(field.getKey(), field.getValue());
+            }
+        }
+        for (Map.Entry<String, Boolean> field : filterFields.entrySet()) {
+            if (!index.containsKey(field.getKey())) {
+                index.put(field.getKey(), 1);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @return the number of leading keys of the index that are fields of the filter
+     */
+    private static int getFilterPrefix(Document keys, Map<String, Boolean> filterFields) {
+        int prefix = 0;
+        for (String key : keys.keySet()) {
+            if (!filterFields.containsKey(key)) {
+                break;
+            }
+            prefix++;
+        }
+        return prefix;
+    }
+
+    /**
+     * @return true when the keys after the leading equality fields are the sort, in its direction or reversed
+     */
+    private static boolean isSortServed(Document keys, Map<String, Boolean> filterFields, Document sort) {
+        if (sort.isEmpty()) {
+            return true;
+        }
+        List<String> names = new ArrayList<>(keys.keySet());
+        int i = 0;
+        while (i < names.size() && Boolean.TRUE.equals(filterFields.get(names.get(i))) && !sort.containsKey(names.get(i))) {
+            i++;
+        }
+        Boolean reversed = null;
+        for (Map.Entry<String, Object> field : sort.entrySet()) {
+            if (i >= names.size() || !names.get(i).equals(field.getKey()) || !(keys.get(names.get(i)) instanceof Number)) {
+                return false;
+            }
+            boolean same = Integer.signum(((Number) keys.get(names.get(i))).intValue())
+                    == Integer.signum(((Number) field.getValue()).intValue());
+            if (reversed != null && reversed == same) {
+                return false;
+            }
+            reversed = !same;
+            i++;
+        }
+        return true;
+    }
+
+    /**
+     * @return true when every field the query reads and returns is a key of the index
+     */
+    private static boolean isCovered(MongoDBQueryHolder mongoDBQueryHolder, Document keys, Map<String, Boolean> filterFields) {
+        if (!keys.keySet().containsAll(filterFields.keySet())) {
+            return false;
+        }
+        if (mongoDBQueryHolder.isCountAll()) {
+            return true;
+        }
+        Document projection = mongoDBQueryHolder.getGroupBys().isEmpty() ? mongoDBQueryHolder.getProjection()
+                : PipelineOptimizer.getGroupProjection(mongoDBQueryHolder.getProjection());
+        if (projection == null || projection.isEmpty() || mongoDBQueryHolder.isDistinct()) {
+            return mongoDBQueryHolder.isDistinct() && projection != null && keys.keySet().containsAll(projection.keySet());
+        }
+        boolean idExcluded = false;
+        for (Map.Entry<String, Object> field : projection.entrySet()) {
+            if ("_id".equals(field.getKey()) && Integer.valueOf(0).equals(field.getValue())) {
+                idExcluded = true;
+            } else if (!keys.containsKey(field.getKey())) {
+                return false;
+            }
+        }
+        return idExcluded || keys.containsKey("_id");
+    }
+
+    /**
+     * @return true when the index starts with the keys of the prefix, in their directions or all of them reversed,
+     * the direction of a field compared for equality does not matter
+     */
+    private static boolean startsWith(Document keys, Document prefix, Map<String, Boolean> filterFields) {
+        List<Map.Entry<String, Object>> entries = new ArrayList<>(keys.entrySet());
+        Boolean reversed = null;
+        int i = 0;
+        for (Map.Entry<String, Object> field : prefix.entrySet()) {
+            if (i >= entries.size() || !entries.get(i).getKey().equals(field.getKey())
+                    || !(entries.get(i).getValue() instanceof Number)) {
+                return false;
+            }
+            i++;
+            if (Boolean.TRUE.equals(filterFields.get(field.getKey()))) {
+                continue;
+            }
+            boolean same = Integer.signum(((Number) entries.get(i - 1).getValue()).intValue())
+                    == Integer.signum(((Number) field.getValue()).intValue());
+            if (reversed != null && reversed == same) {
+                return false;
+            }
+            reversed = !same;
+        }
+        return true;
+    }
+
+    /**
+     * Print the advice for a file of captured sql.
+     *
+     * @param args the connection string, the database and the file
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.err.println("usage: IndexAdvisor <connection string> <database> <file of sql>");
+            return;
+        }
+        MongoClient mongoClient = MongoClients.create(args[0]);
+        try {
+            for (Advice advice : adviseFile(mongoClient.getDatabase(args[1]), Paths.get(args[2]))) {
+                System.out.println(advice);
+            }
+        } finally {
+            mongoClient.close();
+        }
+    }
+
+    /**
+     * What {@link IndexAdvisor} found for one query.
+     */
+    public static class Advice {
+        private final String collection;
+        private String sql;
+        private String indexName;
+        private boolean collscanRisk;
+        private boolean inMemorySort;
+        private boolean covered;
+        private Document suggestedIndex;
+
+        private Advice(String collection) {
+            this.collection = collection;
+        }
+
+        public String getCollection() {
+            return collection;
+        }
+
+        /**
+         * @return the sql of the query, null when the advice was not asked for a file
+         */
+        public String getSql() {
+            return sql;
+        }
+
+        /**
+         * @return the index that serves the filter or the sort, null when there is none
+         */
+        public String getIndexName() {
+            return indexName;
+        }
+
+        /**
+         * @return true when no index serves the filter, every branch of its $or or the sort
+         */
+        public boolean isCollscanRisk() {
+            return collscanRisk;
+        }
+
+        /**
+         * @return true when the sort is not served by the index and is done in memory
+         */
+        public boolean isInMemorySort() {
+            return inMemorySort;
+        }
+
+        /**
+         * @return true when the index has every field the query reads and returns, so no document is fetched
+         */
+        public boolean isCovered() {
+            return covered;
+        }
+
+        /**
+         * @return the compound index that would serve the filter and the sort, null when the used index already does
+         */
+        public Document getSuggestedIndex() {
+            return suggestedIndex;
+        }
+
+        @Override
+        public String toString() {
+            return collection + (sql != null ? " " + sql : "") + " index=" + indexName + " collscanRisk=" + collscanRisk
+                    + " inMemorySort=" + inMemorySort + " covered=" + covered
+                    + (suggestedIndex != null ? " suggestedIndex=" + suggestedIndex.toJson() : "");
+        }
+    }
+}
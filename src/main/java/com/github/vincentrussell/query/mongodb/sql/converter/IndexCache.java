@@ -0,0 +1,108 @@
+package com.github.vincentrussell.query.mongodb.sql.converter;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.mongodb.client.MongoCollection;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the indexes of the collections for a while, so that a query that names its index does not list the indexes
+ * of its collection every time it is run.
+ */
+public class IndexCache {
+    public static final String D_INDEX_CACHE_SECONDS = "indexCacheSeconds";
+    private static final long DEFAULT_CACHE_SECONDS = 600;
+    private static final Logger logger = LoggerFactory.getLogger(IndexCache.class);
+
+    private static final long CACHE_SECONDS = Long.getLong(D_INDEX_CACHE_SECONDS, DEFAULT_CACHE_SECONDS);
+
+    private static final Cache<String, List<Document>> INDEXES = CacheBuilder.newBuilder()
+            .maximumSize(1000)
+            .expireAfterWrite(CACHE_SECONDS, TimeUnit.SECONDS)
+            .build();
+    /**
+     * the hints that name an index the collection does not have, warned about once while the indexes are kept
+     */
+    private static final Cache<String, Boolean> MISSING = CacheBuilder.newBuilder()
+            .maximumSize(1000)
+            .expireAfterWrite(CACHE_SECONDS, TimeUnit.SECONDS)
+            .build();
+
+    private IndexCache() {
+    }
+
+    /**
+     * @param mongoCollection the collection
+     * @return the index documents of the collection, as listIndexes returns them
+     */
+    public static List<Document> getIndexes(final MongoCollection<?> mongoCollection) {
+        try {
+            return INDEXES.get(mongoCollection.getNamespace().getFullName(), () -> {
+                List<Document> indexes = new ArrayList<>();
+                for (Document index : mongoCollection.listIndexes()) {
+                    indexes.add(index);
+                }
+                return Collections.unmodifiableList(indexes);
+            });
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * @param mongoCollection the collection
+     * @param indexName       the name of an index
+     * @return the keys of the index, null when the collection has no index with that name
+     */
+    public static Document getKeys(MongoCollection<?> mongoCollection, String indexName) {
+        return getKeys(mongoCollection.getNamespace().getFullName(), getIndexes(mongoCollection), indexName);
+    }
+
+    static Document getKeys(String namespace, List<Document> indexes, String indexName) {
+        for (Document index : indexes) {
+            if (indexName.equals(index.getString("name"))) {
+                return (Document) index.get("key");
+            }
+        }
+        if (MISSING.asMap().putIfAbsent(namespace + " " + indexName, Boolean.TRUE) == null) {
+            logger.warn("集合{}上没有索引{}，不使用hint", namespace, indexName);
+        }
+        return null;
+    }
+
+    /**
+     * @param namespace the full name of the collection
+     * @return the cached indexes of the collection, null when they are not cached
+     */
+    static List<Document> getIfPresent(String namespace) {
+        return INDEXES.getIfPresent(namespace);
+    }
+
+    static void put(String namespace, List<Document> indexes) {
+        INDEXES.put(namespace, Collections.unmodifiableList(new ArrayList<>(indexes)));
+    }
+
+    /**
+     * @param mongoCollection the collection whose indexes have changed
+     */
+    public static void invalidate(MongoCollection<?> mongoCollection) {
+        INDEXES.invalidate(mongoCollection.getNamespace().getFullName());
+    }
+
+    public static void invalidateAll() {
+        INDEXES.invalidateAll();
+        MISSING.invalidateAll();
+    }
+}
@@ -0,0 +1,206 @@
+package com.github.vincentrussell.query.mongodb.sql.converter;
+
+import com.github.vincentrussell.query.mongodb.sql.converter.util.SqlUtils;
+import org.bson.Document;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonWriterSettings;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keyset pagination: the next page is read with a range on the sort key of the last row of the page before,
+ * instead of skipping every row of the pages before, so a deep page costs as much as the first one.
+ * <p>
+ * The sort of the select gets _id as the last column so that every row has its own sort key. The token that
+ * continues after a page holds the sort key of its last row as extended json in url safe base64. Rows without a
+ * value in a sort column cannot be continued from, the sort columns should always have a value. The sort columns are
+ * read even when the select does not select them, {@link #removeSortColumns} takes them out of the rows again.
+ */
+public class Keyset {
+    private static final JsonWriterSettings JSON_SETTINGS = JsonWriterSettings.builder().outputMode(JsonMode.EXTENDED).build();
+    private static final String ID = "_id";
+
+    private Keyset() {
+    }
+
+    /**
+     * @param queryConverter a select of documents, its offset is dropped
+     * @param token          the token of the page before, null or empty for the first page
+     * @return a copy of the select that reads the page after the token
+     * @throws ParseException when the select is not a select of documents or the token is not from this sort
+     */
+    public static QueryConverter seek(QueryConverter queryConverter, String token) throws ParseException {
+        MongoDBQueryHolder mongoDBQueryHolder = queryConverter.getMongoQuery();
+        SqlUtils.isTrue(SQLCommandType.SELECT.equals(mongoDBQueryHolder.getSqlCommandType()) && !mongoDBQueryHolder.isDistinct()
+                        && !mongoDBQueryHolder.isCountAll() && mongoDBQueryHolder.getGroupBys().isEmpty(),
+                "keyset pagination needs a select of documents");
+        MongoDBQueryHolder copy = mongoDBQueryHolder.copy();
+        Document sort = getSort(mongoDBQueryHolder);
+        copy.setSort(sort);
+        copy.setOffset(-1);
+        copy.setProjection(withSortColumns(copy.getProjection(), sort));
+        if (token != null && !token.isEmpty()) {
+            Document seek = getSeekFilter(sort, decode(token, sort));
+            copy.setQuery(copy.getQuery().isEmpty() ? seek : new Document("$and", Arrays.asList(copy.getQuery(), seek)));
+        }
+        return queryConverter.withMongoQuery(copy);
+    }
+
+    /**
+     * @param page the select returned by {@link #seek(QueryConverter, String)}
+     * @param rows the rows of the page
+     * @return the token of the page after, null when this page is the last one
+     */
+    public static String nextToken(QueryConverter page, List<? extends Map> rows) {
+        MongoDBQueryHolder mongoDBQueryHolder = page.getMongoQuery();
+        long limit = mongoDBQueryHolder.getLimit();
+        if (rows.isEmpty() || (limit != -1 && rows.size() < limit)) {
+            return null;
+        }
+        Map last = rows.get(rows.size() - 1);
+        Document sort = getSort(mongoDBQueryHolder);
+        List<Object> values = new ArrayList<>();
+        for (String column : sort.keySet()) {
+            values.add(getValue(last, column));
+        }
+        String json = new Document("s", new ArrayList<>(sort.keySet())).append("v", values).toJson(JSON_SETTINGS);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Take the sort columns that the select does not select out of the rows, after {@link #nextToken} has read them.
+     *
+     * @param select the select given to {@link #seek(QueryConverter, String)}
+     * @param page   the select returned by {@link #seek(QueryConverter, String)}
+     * @param rows   the rows of the page
+     */
+    public static void removeSortColumns(QueryConverter select, QueryConverter page, List<? extends Map> rows) {
+        Document projection = select.getMongoQuery().getProjection();
+        List<String> columns = new ArrayList<>();
+        for (String column : getSort(page.getMongoQuery()).keySet()) {
+            if (!isProjected(projection, column)) {
+                columns.add(column);
+            }
+        }
+        if (columns.isEmpty()) {
+            return;
+        }
+        for (Map row : rows) {
+            for (String column : columns) {
+                remove(row, column);
+            }
+        }
+    }
+
+    private static Document getSort(MongoDBQueryHolder mongoDBQueryHolder) {
+        Document sort = new Document(mongoDBQueryHolder.getSort());
+        if (!sort.containsKey(ID)) {
+            sort.put(ID, 1);
+        }
+        return sort;
+    }
+
+    private static Document withSortColumns(Document projection, Document sort) {
+        if (projection.isEmpty()) {
+            return projection;
+        }
+        boolean inclusive = isInclusive(projection);
+        Document copy = new Document(projection);
+        for (String column : sort.keySet()) {
+            if (inclusive) {
+                copy.put(column, 1);
+            } else {
+                copy.remove(column);
+            }
+        }
+        return copy;
+    }
+
+    private static boolean isInclusive(Document projection) {
+        for (Map.Entry<String, Object> entry : projection.entrySet()) {
+            if (!ID.equals(entry.getKey()) && !isExcluded(entry.getValue())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return whether the projection reads the column, or a document the column is in
+     */
+    private static boolean isProjected(Document projection, String column) {
+        if (projection.isEmpty()) {
+            return true;
+        }
+        for (String path = column; ; path = path.substring(0, path.lastIndexOf('.'))) {
+            if (projection.containsKey(path)) {
+                return !isExcluded(projection.get(path));
+            }
+            if (path.indexOf('.') < 0) {
+                return ID.equals(column) || !isInclusive(projection);
+            }
+        }
+    }
+
+    private static void remove(Map row, String column) {
+        String[] names = column.split("\\.");
+        Object value = row;
+        for (int i = 0; i < names.length - 1; i++) {
+            value = ((Map) value).get(names[i]);
+            if (!(value instanceof Map)) {
+                return;
+            }
+        }
+        ((Map) value).remove(names[names.length - 1]);
+    }
+
+    private static boolean isExcluded(Object value) {
+        return Boolean.FALSE.equals(value) || (value instanceof Number && ((Number) value).intValue() == 0);
+    }
+
+    /**
+     * (a &gt; v1) or (a = v1 and b &gt; v2) or ..., with &lt; for the descending columns
+     */
+    private static Document getSeekFilter(Document sort, List<Object> values) {
+        List<Document> or = new ArrayList<>();
+        List<String> columns = new ArrayList<>(sort.keySet());
+        for (int i = 0; i < columns.size(); i++) {
+            Document condition = new Document();
+            for (int j = 0; j < i; j++) {
+                condition.put(columns.get(j), values.get(j));
+            }
+            String operator = ((Number) sort.get(columns.get(i))).intValue() < 0 ? "$lt" : "$gt";
+            condition.put(columns.get(i), new Document(operator, values.get(i)));
+            or.add(condition);
+        }
+        return or.size() == 1 ? or.get(0) : new Document("$or", or);
+    }
+
+    private static List<Object> decode(String token, Document sort) throws ParseException {
+        Document document;
+        try {
+            document = Document.parse(new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8));
+        } catch (RuntimeException e) {
+            throw new ParseException("bad keyset token: " + token);
+        }
+        SqlUtils.isTrue(new ArrayList<>(sort.keySet()).equals(document.get("s")),
+                "the keyset token is not from a select sorted by " + sort.keySet());
+        return (List<Object>) document.get("v");
+    }
+
+    private static Object getValue(Map row, String column) {
+        Object value = row;
+        for (String name : column.split("\\.")) {
+            if (!(value instanceof Map)) {
+                return null;
+            }
+            value = ((Map) value).get(name);
+        }
+        return value;
+    }
+}
@@ -1,12 +1,13 @@
 package com.github.vincentrussell.query.mongodb.sql.converter;
 
-import com.github.vincentrussell.query.mongodb.sql.converter.util.SqlUtils;
 import org.bson.Document;
 
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 
 import static org.apache.commons.lang3.Validate.notNull;
 
@@ -23,6 +24,8 @@ public class MongoDBQueryHolder {
     private long limit = -1;
     private long offset = -1;
     private Document items;
+    private List<String> timeFunctionItems = new ArrayList<>();
+    private QueryOptions options = QueryOptions.NONE;
 
     /**
      * Pojo to hold the MongoDB data
@@ -69,7 +72,6 @@ public class MongoDBQueryHolder {
     public void setQuery(Document query) {
         notNull(query, "query is null");
         this.query = query;
-        dealQuery(this.query);
     }
 
     public void setProjection(Document projection) {
@@ -77,6 +79,9 @@ public class MongoDBQueryHolder {
         this.projection = projection;
     }
 
+    /**
+     * @return the $project stage after the $group stage of a group by query, it makes the rows with the sql aliases
+     */
     public Document getAliseProjection() {
         return aliseProjection;
     }
@@ -142,28 +147,149 @@ public class MongoDBQueryHolder {
         return sqlCommandType;
     }
 
-    public void dealQuery(Document doc) {
-        for (Map.Entry entry : doc.entrySet()) {
-            if(entry.getKey().equals("$in"))continue;
-            Object value = entry.getValue();
-            if (value instanceof List) {
-                List list = (List) value;
-                for (int i = 0; i < list.size(); i++) {
-                    dealQuery((Document) list.get(i));
-                }
+    public List<String> getTimeFunctionItems() {
+        return timeFunctionItems;
+    }
+
+    public void setTimeFunctionItems(List<String> timeFunctionItems) {
+        notNull(timeFunctionItems, "timeFunctionItems is null");
+        this.timeFunctionItems = timeFunctionItems;
+    }
+
+    /**
+     * @return the execution options of the query
+     */
+    public QueryOptions getOptions() {
+        return options;
+    }
+
+    public void setOptions(QueryOptions options) {
+        notNull(options, "options is null");
+        this.options = options;
+    }
+
+    /**
+     * Copy this holder so that a cached translation can be handed out to one execution.
+     * The documents are copied deeply, the items produced by time functions like now() are evaluated again.
+     *
+     * @return a copy that can be changed without touching this holder
+     */
+    public MongoDBQueryHolder copy() {
+        try {
+            return copy(null);
+        } catch (ParseException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Copy this holder and replace every {@link BindParameter} with the value of its parameter.
+     *
+     * @param parameters gives the value of a parameter by name, null to keep the {@link BindParameter}s
+     * @return a copy that can be changed without touching this holder
+     * @throws ParseException when a parameter value cannot be converted
+     */
+    public MongoDBQueryHolder copy(Function<String, Object> parameters) throws ParseException {
+        MongoDBQueryHolder copy = new MongoDBQueryHolder(collection, sqlCommandType);
+        copy.query = copyDocument(query, parameters);
+        copy.projection = copyDocument(projection, parameters);
+        copy.aliseProjection = copyDocument(aliseProjection, parameters);
+        copy.sort = copyDocument(sort, parameters);
+        copy.distinct = distinct;
+        copy.countAll = countAll;
+        copy.groupBys = groupBys;
+        copy.limit = limit;
+        copy.offset = offset;
+        copy.items = copyDocument(items, parameters);
+        copy.timeFunctionItems = timeFunctionItems;
+        copy.options = options;
+        if (copy.items != null) {
+            for (String item : timeFunctionItems) {
+                copy.items.put(item, new Date());
             }
-            if (value instanceof Document) {
-                dealQuery((Document) value);
+        }
+        return copy;
+    }
+
+    /**
+     * @return the number of {@link BindParameter}s in the query and the items
+     */
+    public int getBindParameterCount() {
+        return countBindParameters(query) + countBindParameters(items);
+    }
+
+    private static int countBindParameters(Object value) {
+        int count = 0;
+        if (value instanceof BindParameter) {
+            count++;
+        } else if (value instanceof Map) {
+            for (Object item : ((Map) value).values()) {
+                count += countBindParameters(item);
+            }
+        } else if (value instanceof List) {
+            for (Object item : (List) value) {
+                count += countBindParameters(item);
             }
-            if (value instanceof String) {
-                String val = (String) value;
-                if (val.matches("^\\d{4}-\\d{1,2}-\\d{1,2}(\\s\\d{1,2}:\\d{1,2}:\\d{1,2}(.\\d{1,5})?)?$")) {
-                    if (val.indexOf(" ") == -1) {
-                        val = val + " 00:00:00";
-                    }
-                    entry.setValue(SqlUtils.parseNaturalLanguageDate(val));
+        }
+        return count;
+    }
+
+    /**
+     * @param doc a document of a query, it has no {@link BindParameter} left to bind
+     * @return a deep copy of the document
+     */
+    static Document copyDocument(Document doc) {
+        try {
+            return copyDocument(doc, null);
+        } catch (ParseException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Document copyDocument(Document doc, Function<String, Object> parameters) throws ParseException {
+        if (doc == null) {
+            return null;
+        }
+        Document copy = new Document();
+        for (Map.Entry<String, Object> entry : doc.entrySet()) {
+            copy.put(entry.getKey(), copyValue(entry.getValue(), parameters));
+        }
+        return copy;
+    }
+
+    private static Object copyValue(Object value, Function<String, Object> parameters) throws ParseException {
+        if (value instanceof BindParameter && parameters != null) {
+            BindParameter bindParameter = (BindParameter) value;
+            return bindParameter.bind(parameters.apply(bindParameter.getName()));
+        }
+        if (value instanceof Document) {
+            return copyDocument((Document) value, parameters);
+        }
+        if (value instanceof List) {
+            List list = (List) value;
+            List copy = new ArrayList(list.size());
+            for (Object item : list) {
+                Object itemCopy = copyValue(item, parameters);
+                if (item instanceof BindParameter && itemCopy instanceof List) {
+                    //in (:list) takes all the values of the list
+                    copy.addAll((List) itemCopy);
+                } else {
+                    copy.add(itemCopy);
                 }
             }
+            return copy;
+        }
+        if (value instanceof Map) {
+            Map<Object, Object> copy = new LinkedHashMap<>();
+            for (Object o : ((Map) value).entrySet()) {
+                Map.Entry entry = (Map.Entry) o;
+                copy.put(entry.getKey(), copyValue(entry.getValue(), parameters));
+            }
+            return copy;
+        }
+        if (value instanceof Date) {
+            return new Date(((Date) value).getTime());
         }
+        return value;
     }
 }
@@ -0,0 +1,134 @@
+package com.github.vincentrussell.query.mongodb.sql.converter;
+
+import org.bson.Document;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Rewrites the stages of a translated aggregation so the server moves fewer documents through them:
+ * <ul>
+ * <li>empty $match stages and $skip 0 are dropped, adjacent $match, $skip and $limit stages are merged;</li>
+ * <li>$sort, $skip n, $limit m becomes $sort, $limit n+m, $skip n, so the sort only keeps the top n+m documents;</li>
+ * <li>a $project of only the fields the $group stage reads is put before it.</li>
+ * </ul>
+ */
+public class PipelineOptimizer {
+    private static final String MATCH = "$match";
+    private static final String GROUP = "$group";
+    private static final String SORT = "$sort";
+    private static final String SKIP = "$skip";
+    private static final String LIMIT = "$limit";
+    private static final String PROJECT = "$project";
+
+    private PipelineOptimizer() {
+    }
+
+    /**
+     * @param stages the stages, one operator per stage
+     * @return the rewritten stages, the given stages are not changed
+     */
+    public static List<Document> optimize(List<Document> stages) {
+        List<Document> optimized = new ArrayList<>();
+        for (Document stage : stages) {
+            String operator = getOperator(stage);
+            Document last = optimized.isEmpty() ? null : optimized.get(optimized.size() - 1);
+            if (MATCH.equals(operator) && ((Map) stage.get(MATCH)).isEmpty()) {
+                continue;
+            } else if (SKIP.equals(operator) && getNumber(stage, SKIP) == 0) {
+                continue;
+            } else if (last != null && operator.equals(getOperator(last))) {
+                if (MATCH.equals(operator)) {
+                    optimized.set(optimized.size() - 1, new Document(MATCH,
+                            new Document("$and", Arrays.asList(last.get(MATCH), stage.get(MATCH)))));
+                    continue;
+                } else if (SKIP.equals(operator)) {
+                    optimized.set(optimized.size() - 1, new Document(SKIP, getNumber(last, SKIP) + getNumber(stage, SKIP)));
+                    continue;
+                } else if (LIMIT.equals(operator)) {
+                    optimized.set(optimized.size() - 1, new Document(LIMIT, Math.min(getNumber(last, LIMIT), getNumber(stage, LIMIT))));
+                    continue;
+                }
+            } else if (GROUP.equals(operator)) {
+                Document project = getGroupProjection((Document) stage.get(GROUP));
+                if (project != null) {
+                    optimized.add(new Document(PROJECT, project));
+                }
+            } else if (LIMIT.equals(operator) && last != null && SKIP.equals(getOperator(last))
+                    && optimized.size() > 1 && SORT.equals(getOperator(optimized.get(optimized.size() - 2)))) {
+                long skip = getNumber(last, SKIP);
+                optimized.set(optimized.size() - 1, new Document(LIMIT, skip + getNumber(stage, LIMIT)));
+                optimized.add(new Document(SKIP, skip));
+                continue;
+            }
+            optimized.add(stage);
+        }
+        return optimized;
+    }
+
+    /**
+     * @param group the $group stage
+     * @return the $project of the fields the stage reads, null when it reads none or reads variables
+     */
+    static Document getGroupProjection(Document group) {
+        Set<String> fields = new LinkedHashSet<>();
+        if (!addFieldPaths(group.values(), fields) || fields.isEmpty()) {
+            return null;
+        }
+        Document project = new Document();
+        for (String field : fields) {
+            if (!isCovered(field, fields)) {
+                project.put(field, 1);
+            }
+        }
+        if (!project.containsKey("_id")) {
+            project.put("_id", 0);
+        }
+        return project;
+    }
+
+    /**
+     * @return true when a parent of the field is projected too, projecting both is a path collision
+     */
+    private static boolean isCovered(String field, Set<String> fields) {
+        for (int dot = field.lastIndexOf('.'); dot > 0; dot = field.lastIndexOf('.', dot - 1)) {
+            if (fields.contains(field.substring(0, dot))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return false when a value reads a variable ($$), the fields it reads cannot be known then
+     */
+    private static boolean addFieldPaths(Collection<?> values, Set<String> fields) {
+        for (Object value : values) {
+            if (value instanceof String && ((String) value).startsWith("$")) {
+                String path = ((String) value).substring(1);
+                if (path.startsWith("$")) {
+                    return false;
+                }
+                fields.add(path);
+            } else if (value instanceof Map && !addFieldPaths(((Map<?, ?>) value).values(), fields)) {
+                return false;
+            } else if (value instanceof Collection && !addFieldPaths((Collection<?>) value, fields)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String getOperator(Document stage) {
+        return stage.keySet().iterator().next();
+    }
+
+    private static long getNumber(Document stage, String operator) {
+        return ((Number) stage.get(operator)).longValue();
+    }
+}
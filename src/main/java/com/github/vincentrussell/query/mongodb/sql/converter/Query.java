@@ -1,6 +1,7 @@
 package com.github.vincentrussell.query.mongodb.sql.converter;
 
 import com.google.common.collect.Lists;
+import com.mongodb.client.MongoCollection;
 import org.bson.Document;
 import qeorm.MongoDbExecutor;
 import qeorm.utils.JsonUtils;
@@ -12,14 +13,18 @@ import java.util.Map;
 public class Query {
 
     public static int update(String dbName, String tableName, Document query, Map update) {
-        new MongoDbExecutor().getConn(dbName).getDataBase().getCollection(tableName).updateOne(query, new Document("$set", update));
+        MongoCollection<Document> collection = new MongoDbExecutor().getConn(dbName).getDataBase().getCollection(tableName);
+        collection.updateOne(query, new Document("$set", update));
+        CountEngine.invalidate(collection);
         return 1;
     }
 
     public static int batchInsert(String dbName, String tableName, Map data) {
         Document doc = new Document();
         doc.putAll(data);
-        new MongoDbExecutor().getConn(dbName).getDataBase().getCollection(tableName).insertOne(doc);
+        MongoCollection<Document> collection = new MongoDbExecutor().getConn(dbName).getDataBase().getCollection(tableName);
+        collection.insertOne(doc);
+        CountEngine.invalidate(collection);
         return 1;
     }
 
@@ -30,7 +35,9 @@ public class Query {
             doc.putAll(data);
             list.add(doc);
         });
-        new MongoDbExecutor().getConn(dbName).getDataBase().getCollection(tableName).insertMany(list);
+        MongoCollection<Document> collection = new MongoDbExecutor().getConn(dbName).getDataBase().getCollection(tableName);
+        collection.insertMany(list);
+        CountEngine.invalidate(collection);
         return dataList.size();
     }
 }
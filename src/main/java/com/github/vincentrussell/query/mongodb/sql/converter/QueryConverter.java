@@ -2,17 +2,13 @@ package com.github.vincentrussell.query.mongodb.sql.converter;
 
 import com.github.vincentrussell.query.mongodb.sql.converter.util.SqlUtils;
 import com.google.common.base.Charsets;
-import com.google.common.base.Joiner;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Collections2;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonParser;
 import com.mongodb.bulk.DeleteRequest;
 import com.mongodb.client.AggregateIterable;
+import com.mongodb.client.DistinctIterable;
 import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoDatabase;
@@ -21,20 +17,24 @@ import com.mongodb.client.result.UpdateResult;
 import net.sf.jsqlparser.expression.Expression;
 import net.sf.jsqlparser.expression.Function;
 import net.sf.jsqlparser.parser.CCJSqlParser;
+import net.sf.jsqlparser.parser.Provider;
 import net.sf.jsqlparser.parser.StreamProvider;
+import net.sf.jsqlparser.parser.StringProvider;
 import net.sf.jsqlparser.schema.Column;
 import net.sf.jsqlparser.statement.select.*;
 import org.apache.commons.io.IOUtils;
 import org.bson.Document;
+import org.bson.conversions.Bson;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.apache.commons.lang.StringUtils.isEmpty;
 
@@ -47,6 +47,11 @@ public class QueryConverter {
     private final Map<String, FieldType> fieldNameToFieldTypeMapping;
     private final FieldType defaultFieldType;
     private final SQLCommandInfoHolder sqlCommandInfoHolder;
+    private final AtomicReference<String> shellStatement;
+    private final AtomicReference<EncodedQuery> encodedQuery;
+    private final MongoDBQueryHolder planQuery;
+    private final int bindParameterCount;
+    private final QueryFingerprint fingerprint;
 
     /**
      * Create a QueryConverter with a string
@@ -55,7 +60,7 @@ public class QueryConverter {
      * @throws ParseException when the sql query cannot be parsed
      */
     public QueryConverter(String sql) throws ParseException {
-        this(new ByteArrayInputStream(sql.getBytes(Charsets.UTF_8)), Collections.<String, FieldType>emptyMap(), FieldType.UNKNOWN);
+        this(new StringProvider(sql), sql, Collections.<String, FieldType>emptyMap(), FieldType.UNKNOWN);
     }
 
     /**
@@ -66,7 +71,7 @@ public class QueryConverter {
      * @throws ParseException when the sql query cannot be parsed
      */
     public QueryConverter(String sql, Map<String, FieldType> fieldNameToFieldTypeMapping) throws ParseException {
-        this(new ByteArrayInputStream(sql.getBytes(Charsets.UTF_8)), fieldNameToFieldTypeMapping, FieldType.UNKNOWN);
+        this(new StringProvider(sql), sql, fieldNameToFieldTypeMapping, FieldType.UNKNOWN);
     }
 
     /**
@@ -77,7 +82,7 @@ public class QueryConverter {
      * @throws ParseException
      */
     public QueryConverter(String sql, FieldType fieldType) throws ParseException {
-        this(new ByteArrayInputStream(sql.getBytes(Charsets.UTF_8)), Collections.<String, FieldType>emptyMap(), fieldType);
+        this(new StringProvider(sql), sql, Collections.<String, FieldType>emptyMap(), fieldType);
     }
 
     /**
@@ -89,7 +94,7 @@ public class QueryConverter {
      * @throws ParseException
      */
     public QueryConverter(String sql, Map<String, FieldType> fieldNameToFieldTypeMapping, FieldType defaultFieldType) throws ParseException {
-        this(new ByteArrayInputStream(sql.getBytes(Charsets.UTF_8)), fieldNameToFieldTypeMapping, defaultFieldType);
+        this(new StringProvider(sql), sql, fieldNameToFieldTypeMapping, defaultFieldType);
     }
 
     /**
@@ -112,27 +117,70 @@ public class QueryConverter {
      */
     public QueryConverter(InputStream inputStream, Map<String, FieldType> fieldNameToFieldTypeMapping,
                           FieldType defaultFieldType) throws ParseException {
+        this(streamProvider(inputStream), null, fieldNameToFieldTypeMapping, defaultFieldType);
+    }
+
+    /**
+     * Create a QueryConverter with a Reader
+     *
+     * @param reader a reader that has the sql statement in it
+     * @throws ParseException when the sql query cannot be parsed
+     */
+    public QueryConverter(Reader reader) throws ParseException {
+        this(reader, Collections.<String, FieldType>emptyMap(), FieldType.UNKNOWN);
+    }
+
+    /**
+     * Create a QueryConverter with a Reader
+     *
+     * @param reader                      a reader that has the sql statement in it
+     * @param fieldNameToFieldTypeMapping mapping for each field
+     * @param defaultFieldType            the default {@link FieldType} to be used
+     * @throws ParseException when the sql query cannot be parsed
+     */
+    public QueryConverter(Reader reader, Map<String, FieldType> fieldNameToFieldTypeMapping,
+                          FieldType defaultFieldType) throws ParseException {
+        this(new StreamProvider(reader), null, fieldNameToFieldTypeMapping, defaultFieldType);
+    }
+
+    private QueryConverter(Provider provider, String sql, Map<String, FieldType> fieldNameToFieldTypeMapping,
+                           FieldType defaultFieldType) throws ParseException {
+        SqlParserPool.PooledParser pooledParser = SqlParserPool.acquire(provider);
+        CCJSqlParser jSqlParser = pooledParser.getParser();
         try {
-            StreamProvider streamProvider = new StreamProvider(inputStream, Charsets.UTF_8.name());
-            CCJSqlParser jSqlParser = new CCJSqlParser(streamProvider);
             this.defaultFieldType = defaultFieldType != null ? defaultFieldType : FieldType.UNKNOWN;
             //final PlainSelect plainSelect = jSqlParser.PlainSelect();
+            net.sf.jsqlparser.parser.Token first = jSqlParser.token;
             this.sqlCommandInfoHolder = SQLCommandInfoHolder.Builder
                     .create(defaultFieldType, fieldNameToFieldTypeMapping)
                     .setJSqlParser(jSqlParser)
                     .build();
             this.fieldNameToFieldTypeMapping = fieldNameToFieldTypeMapping != null
                     ? fieldNameToFieldTypeMapping : Collections.<String, FieldType>emptyMap();
+            this.shellStatement = new AtomicReference<>();
+            this.encodedQuery = new AtomicReference<>();
+            this.fingerprint = sql != null ? QueryFingerprint.of(sql) : null;
 
             net.sf.jsqlparser.parser.Token nextToken = jSqlParser.getNextToken();
             SqlUtils.isTrue(isEmpty(nextToken.image) || ";".equals(nextToken.image), "unable to parse complete sql string. one reason for this is the use of double equals (==)");
 
             mongoDBQueryHolder = getMongoQueryInternal();
+            mongoDBQueryHolder.setOptions(QueryOptions.fromHints(first));
+            this.planQuery = mongoDBQueryHolder;
+            this.bindParameterCount = mongoDBQueryHolder.getBindParameterCount();
             validate();
-        } catch (IOException e) {
-            throw new ParseException(e.getMessage());
         } catch (net.sf.jsqlparser.parser.ParseException e) {
             throw SqlUtils.convertParseException(e);
+        } finally {
+            pooledParser.release();
+        }
+    }
+
+    private static Provider streamProvider(InputStream inputStream) throws ParseException {
+        try {
+            return new StreamProvider(inputStream, Charsets.UTF_8.name());
+        } catch (IOException e) {
+            throw new ParseException(e.getMessage());
         }
     }
 
@@ -159,6 +207,7 @@ public class QueryConverter {
         SqlUtils.isFalse(sqlCommandInfoHolder.getGoupBys().size() == 0 && selectItems.size() != filteredItems.size() && !SqlUtils.isSelectAll(selectItems)
                 && !SqlUtils.isCountAll(selectItems), "illegal expression(s) found in select clause.  Only column names supported");
         SqlUtils.isTrue(sqlCommandInfoHolder.getJoins() == null || sqlCommandInfoHolder.getJoins().isEmpty(), "Joins are not supported.  Only one simple table name is supported.");
+        SqlUtils.isFalse(isExplain() && SQLCommandType.INSERT.equals(sqlCommandInfoHolder.getSqlCommandType()), "an insert cannot be explained");
     }
 
     /**
@@ -171,6 +220,96 @@ public class QueryConverter {
         return mongoDBQueryHolder;
     }
 
+    /**
+     * @return the shape of the sql statement, shared by its copies and bound copies, null when the statement was
+     * read from a stream
+     */
+    public QueryFingerprint getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * @return true for an <code>EXPLAIN</code> or <code>EXPLAIN ANALYZE</code> statement, it is run with
+     * {@link #explain(MongoDatabase)}
+     */
+    public boolean isExplain() {
+        return sqlCommandInfoHolder.getExplainVerbosity() != null;
+    }
+
+    private QueryConverter(QueryConverter plan, MongoDBQueryHolder mongoDBQueryHolder, AtomicReference<String> shellStatement,
+                           AtomicReference<EncodedQuery> encodedQuery, MongoDBQueryHolder planQuery, int bindParameterCount) {
+        this.sqlCommandInfoHolder = plan.sqlCommandInfoHolder;
+        this.fieldNameToFieldTypeMapping = plan.fieldNameToFieldTypeMapping;
+        this.defaultFieldType = plan.defaultFieldType;
+        this.mongoDBQueryHolder = mongoDBQueryHolder;
+        this.shellStatement = shellStatement;
+        this.encodedQuery = encodedQuery;
+        this.planQuery = planQuery;
+        this.bindParameterCount = bindParameterCount;
+        this.fingerprint = plan.fingerprint;
+    }
+
+    /**
+     * Copy the translated query, the parsed sql is shared and the mongo documents are copied.
+     *
+     * @return a {@link QueryConverter} that can be run without changing this one
+     */
+    public QueryConverter copy() {
+        return new QueryConverter(this, mongoDBQueryHolder.copy(), mongoDBQueryHolder.getTimeFunctionItems().isEmpty()
+                ? shellStatement : new AtomicReference<String>(), encodedQuery, planQuery, bindParameterCount);
+    }
+
+    /**
+     * Copy the translated query and put the parameter values in place of the named parameters (:name).
+     *
+     * @param parameters gives the value of a parameter by name
+     * @return a {@link QueryConverter} with every {@link BindParameter} replaced by its value
+     * @throws ParseException when a value cannot be converted to the type of its field
+     */
+    public QueryConverter bind(java.util.function.Function<String, Object> parameters) throws ParseException {
+        return new QueryConverter(this, mongoDBQueryHolder.copy(parameters), new AtomicReference<String>(), null, null, 0);
+    }
+
+    /**
+     * Copy the translated query with other execution options.
+     *
+     * @param options the options, they win over the options of the hint comments of the sql statement
+     * @return a {@link QueryConverter} that runs with the options
+     */
+    public QueryConverter withOptions(QueryOptions options) {
+        MongoDBQueryHolder copy = mongoDBQueryHolder.copy();
+        copy.setOptions(mongoDBQueryHolder.getOptions().merge(options));
+        return new QueryConverter(this, copy, new AtomicReference<String>(), encodedQuery, planQuery, bindParameterCount);
+    }
+
+    /**
+     * Copy a select * with a projection, so that only the given columns are read. Any other statement, and a select
+     * that names its columns, is returned as it is.
+     *
+     * @param projection the columns to read
+     * @return a {@link QueryConverter} that reads the columns
+     */
+    public QueryConverter withProjection(Document projection) {
+        MongoDBQueryHolder mongoQuery = getMongoQuery();
+        if (projection == null || projection.isEmpty() || !SQLCommandType.SELECT.equals(mongoQuery.getSqlCommandType())
+                || mongoQuery.isDistinct() || mongoQuery.isCountAll() || !mongoQuery.getGroupBys().isEmpty()
+                || (mongoQuery.getProjection() != null && !mongoQuery.getProjection().isEmpty())) {
+            return this;
+        }
+        MongoDBQueryHolder copy = mongoQuery.copy();
+        copy.setProjection(new Document(projection));
+        return withMongoQuery(copy);
+    }
+
+    /**
+     * @param mongoDBQueryHolder a changed copy of the query of this plan
+     * @return a {@link QueryConverter} that runs the changed query
+     */
+    QueryConverter withMongoQuery(MongoDBQueryHolder mongoDBQueryHolder) {
+        return new QueryConverter(this, mongoDBQueryHolder, new AtomicReference<String>(), new AtomicReference<EncodedQuery>(),
+                mongoDBQueryHolder, mongoDBQueryHolder.getBindParameterCount());
+    }
+
     private MongoDBQueryHolder getMongoQueryInternal() throws ParseException {
         MongoDBQueryHolder mongoDBQueryHolder = new MongoDBQueryHolder(sqlCommandInfoHolder.getTable(), sqlCommandInfoHolder.getSqlCommandType());
         Document document = new Document();
@@ -180,8 +319,10 @@ public class QueryConverter {
             mongoDBQueryHolder.setDistinct(sqlCommandInfoHolder.isDistinct());
         } else if (sqlCommandInfoHolder.getGoupBys().size() > 0) {
             mongoDBQueryHolder.setGroupBys(sqlCommandInfoHolder.getGoupBys());
-            mongoDBQueryHolder.setProjection(createProjectionsFromSelectItems(sqlCommandInfoHolder.getSelectItems(),
-                    sqlCommandInfoHolder.getGoupBys()));
+            Document groupDocument = createProjectionsFromSelectItems(sqlCommandInfoHolder.getSelectItems(),
+                    sqlCommandInfoHolder.getGoupBys());
+            mongoDBQueryHolder.setProjection(groupDocument);
+            mongoDBQueryHolder.setAliseProjection(createAliasProjection(sqlCommandInfoHolder.getSelectItems(), groupDocument));
         } else if (sqlCommandInfoHolder.isCountAll()) {
             mongoDBQueryHolder.setCountAll(sqlCommandInfoHolder.isCountAll());
         } else if (!SqlUtils.isSelectAll(sqlCommandInfoHolder.getSelectItems())) {
@@ -205,6 +346,7 @@ public class QueryConverter {
         mongoDBQueryHolder.setLimit(sqlCommandInfoHolder.getLimit());
         mongoDBQueryHolder.setOffset(sqlCommandInfoHolder.getOffset());
         mongoDBQueryHolder.setItems(sqlCommandInfoHolder.getItems());
+        mongoDBQueryHolder.setTimeFunctionItems(sqlCommandInfoHolder.getTimeFunctionItems());
         return mongoDBQueryHolder;
     }
 
@@ -299,6 +441,30 @@ public class QueryConverter {
         return document;
     }
 
+    /**
+     * The $project stage after the $group stage: the group by columns out of _id and every aggregate under its sql
+     * alias, so that the documents of the aggregation are the rows.
+     */
+    private Document createAliasProjection(List<SelectItem> selectItems, Document groupDocument) throws ParseException {
+        Document document = new Document("_id", 0);
+        boolean compound = groupDocument.get("_id") instanceof Document;
+        for (SelectItem selectItem : selectItems) {
+            SelectExpressionItem selectExpressionItem = (SelectExpressionItem) selectItem;
+            String alias = selectExpressionItem.getAlias() != null ? selectExpressionItem.getAlias().getName() : null;
+            if (Function.class.isInstance(selectExpressionItem.getExpression())) {
+                Document functionDocument = new Document();
+                parseFunctionForAggregation((Function) selectExpressionItem.getExpression(), functionDocument,
+                        Collections.<String>emptyList());
+                String field = Iterables.get(functionDocument.keySet(), 0);
+                document.put(alias != null ? alias : field, "$" + field);
+            } else {
+                String columnName = SqlUtils.getStringValue(selectExpressionItem.getExpression());
+                document.put(alias != null ? alias : columnName, compound ? "$_id." + columnName : "$_id");
+            }
+        }
+        return document;
+    }
+
     private void parseFunctionForAggregation(Function function, Document document, List<String> groupBys) throws ParseException {
         List<String> parameters = function.getParameters() == null ? Collections.<String>emptyList() : Lists.transform(function.getParameters().getExpressions(), new com.google.common.base.Function<Expression, String>() {
             @Override
@@ -338,152 +504,308 @@ public class QueryConverter {
      * @throws IOException when there is an issue writing to the {@link java.io.OutputStream}
      */
     public void write(OutputStream outputStream) throws IOException {
+        IOUtils.write(getShellStatement(), outputStream, Charsets.UTF_8);
+    }
+
+    /**
+     * Get the mongo shell statement with the code to run the specified query, it is only built the first time
+     * it is asked for and shared with the copies of this query.
+     *
+     * @return the mongo shell statement
+     */
+    public String getShellStatement() {
+        String statement = shellStatement.get();
+        if (statement == null) {
+            statement = buildShellStatement();
+            shellStatement.set(statement);
+        }
+        return statement;
+    }
+
+    private String buildShellStatement() {
         MongoDBQueryHolder mongoDBQueryHolder = getMongoQuery();
+        ShellJsonWriter writer = new ShellJsonWriter(new StringBuilder());
+        String db = "db." + mongoDBQueryHolder.getCollection()
+                + (isExplain() ? ".explain(\"" + sqlCommandInfoHolder.getExplainVerbosity() + "\")" : "");
         if(mongoDBQueryHolder.getSqlCommandType().equals(SQLCommandType.INSERT)){
-            IOUtils.write("db." + mongoDBQueryHolder.getCollection() + ".insert(", outputStream);
-            IOUtils.write(prettyPrintJson(mongoDBQueryHolder.getItems().toJson()), outputStream);
+            writer.write(db + ".insert(");
+            writer.writeJson(mongoDBQueryHolder.getItems());
         } else if (mongoDBQueryHolder.isDistinct()) {
-            IOUtils.write("db." + mongoDBQueryHolder.getCollection() + ".distinct(", outputStream);
-            IOUtils.write("\"" + getDistinctFieldName(mongoDBQueryHolder) + "\"", outputStream);
-            IOUtils.write(" , ", outputStream);
-            IOUtils.write(prettyPrintJson(mongoDBQueryHolder.getQuery().toJson()), outputStream);
+            writer.write(db + ".distinct(");
+            writer.write("\"" + getDistinctFieldName(mongoDBQueryHolder) + "\"");
+            writer.write(" , ");
+            writer.writeJson(mongoDBQueryHolder.getQuery());
         } else if (sqlCommandInfoHolder.getGoupBys().size() > 0) {
-            IOUtils.write("db." + mongoDBQueryHolder.getCollection() + ".aggregate(", outputStream);
-            IOUtils.write("[", outputStream);
-            List<Document> documents = new ArrayList<>();
-            documents.add(new Document("$match", mongoDBQueryHolder.getQuery()));
-            documents.add(new Document("$group", mongoDBQueryHolder.getProjection()));
-
-            if (mongoDBQueryHolder.getSort() != null && mongoDBQueryHolder.getSort().size() > 0) {
-                documents.add(new Document("$sort", mongoDBQueryHolder.getSort()));
-            }
-
-            if (mongoDBQueryHolder.getLimit() != -1) {
-                documents.add(new Document("$limit", mongoDBQueryHolder.getLimit()));
-            }
-
-            IOUtils.write(Joiner.on(",").join(Lists.transform(documents, new com.google.common.base.Function<Document, String>() {
-                @Override
-                public String apply(Document document) {
-                    return prettyPrintJson(document.toJson());
+            writer.write(db + ".aggregate(");
+            writer.write("[");
+            List<Document> documents = getGroupPipeline();
+            for (int i = 0; i < documents.size(); i++) {
+                if (i > 0) {
+                    writer.write(",");
                 }
-            })), outputStream);
-            IOUtils.write("]", outputStream);
-
-            Document options = new Document();
-            if (System.getProperty(D_AGGREGATION_ALLOW_DISK_USE) != null) {
-                options.put("allowDiskUse", Boolean.valueOf(System.getProperty(D_AGGREGATION_ALLOW_DISK_USE)));
+                writer.writeJson(documents.get(i));
             }
+            writer.write("]");
 
-            if (System.getProperty(D_AGGREGATION_BATCH_SIZE) != null) {
-                options.put("cursor", new Document("batchSize", Integer.valueOf(System.getProperty(D_AGGREGATION_BATCH_SIZE))));
-            }
+            Document options = mongoDBQueryHolder.getOptions().toAggregateOptions();
 
             if (options.size() > 0) {
-                IOUtils.write(",", outputStream);
-                IOUtils.write(prettyPrintJson(options.toJson()), outputStream);
+                writer.write(",");
+                writer.writeJson(options);
             }
 
 
         } else if (sqlCommandInfoHolder.isCountAll()) {
-            IOUtils.write("db." + mongoDBQueryHolder.getCollection() + ".count(", outputStream);
-            IOUtils.write(prettyPrintJson(mongoDBQueryHolder.getQuery().toJson()), outputStream);
+            writer.write(db + ".count(");
+            writer.writeJson(mongoDBQueryHolder.getQuery());
         } else {
-            IOUtils.write("db." + mongoDBQueryHolder.getCollection() + ".find(", outputStream);
-            IOUtils.write(prettyPrintJson(mongoDBQueryHolder.getQuery().toJson()), outputStream);
+            writer.write(db + ".find(");
+            writer.writeJson(mongoDBQueryHolder.getQuery());
             if (mongoDBQueryHolder.getProjection() != null && mongoDBQueryHolder.getProjection().size() > 0) {
-                IOUtils.write(" , ", outputStream);
-                IOUtils.write(prettyPrintJson(mongoDBQueryHolder.getProjection().toJson()), outputStream);
+                writer.write(" , ");
+                writer.writeJson(mongoDBQueryHolder.getProjection());
             }
         }
-        IOUtils.write(")", outputStream);
+        writer.write(")");
 
         if (mongoDBQueryHolder.getSort() != null && mongoDBQueryHolder.getSort().size() > 0
                 && !sqlCommandInfoHolder.isCountAll() && !sqlCommandInfoHolder.isDistinct() && sqlCommandInfoHolder.getGoupBys().isEmpty()) {
-            IOUtils.write(".sort(", outputStream);
-            IOUtils.write(prettyPrintJson(mongoDBQueryHolder.getSort().toJson()), outputStream);
-            IOUtils.write(")", outputStream);
+            writer.write(".sort(");
+            writer.writeJson(mongoDBQueryHolder.getSort());
+            writer.write(")");
         }
 
         if (mongoDBQueryHolder.getLimit() != -1
                 && !sqlCommandInfoHolder.isCountAll() && !sqlCommandInfoHolder.isDistinct()
                 && sqlCommandInfoHolder.getGoupBys().isEmpty()) {
-            IOUtils.write(".limit(", outputStream);
-            IOUtils.write(mongoDBQueryHolder.getLimit() + "", outputStream);
-            IOUtils.write(")", outputStream);
+            writer.write(".limit(");
+            writer.write(mongoDBQueryHolder.getLimit() + "");
+            writer.write(")");
+        }
+        return writer.toString();
+    }
+
+    /**
+     * Get the filter, projection and sort encoded to bson. The query of the plan is only encoded the first time it is
+     * asked for and shared with the copies of the plan, a copy whose filter, projection or sort was changed is encoded
+     * again. Bound queries are run once, so they are not encoded ahead of time.
+     *
+     * @return the encoded query, null when this query is bound or still has named parameters
+     */
+    public EncodedQuery getEncodedQuery() {
+        if (encodedQuery == null || bindParameterCount > 0) {
+            return null;
+        }
+        EncodedQuery encoded = encodedQuery.get();
+        if (encoded == null) {
+            encoded = EncodedQuery.encode(planQuery);
+            encodedQuery.set(encoded);
+        }
+        return encoded.encodes(mongoDBQueryHolder) ? encoded : EncodedQuery.encode(mongoDBQueryHolder);
+    }
+
+    /**
+     * The one builder of the aggregation of a group by query, for running it and for its shell statement.
+     *
+     * @return the stages of the aggregation of a group by query, rewritten by {@link PipelineOptimizer}
+     */
+    List<Document> getGroupPipeline() {
+        MongoDBQueryHolder mongoDBQueryHolder = getMongoQuery();
+        List<Document> documents = new ArrayList<>();
+        if (mongoDBQueryHolder.getQuery() != null && mongoDBQueryHolder.getQuery().size() > 0) {
+            documents.add(new Document("$match", mongoDBQueryHolder.getQuery()));
+        }
+        documents.add(new Document("$group", mongoDBQueryHolder.getProjection()));
+        if (mongoDBQueryHolder.getSort() != null && mongoDBQueryHolder.getSort().size() > 0) {
+            documents.add(new Document("$sort", mongoDBQueryHolder.getSort()));
+        }
+        if (mongoDBQueryHolder.getOffset() != -1) {
+            documents.add(new Document("$skip", mongoDBQueryHolder.getOffset()));
+        }
+        if (mongoDBQueryHolder.getLimit() != -1) {
+            documents.add(new Document("$limit", mongoDBQueryHolder.getLimit()));
         }
+        if (mongoDBQueryHolder.getAliseProjection() != null && mongoDBQueryHolder.getAliseProjection().size() > 0) {
+            documents.add(new Document("$project", mongoDBQueryHolder.getAliseProjection()));
+        }
+        return PipelineOptimizer.optimize(documents);
     }
 
-    private String getDistinctFieldName(MongoDBQueryHolder mongoDBQueryHolder) {
+    String getDistinctFieldName(MongoDBQueryHolder mongoDBQueryHolder) {
         return Iterables.get(mongoDBQueryHolder.getProjection().keySet(), 0);
     }
 
+    /**
+     * Run a select of documents and decode the documents into a class, with the codec of the database.
+     *
+     * @param mongoDatabase the database to run the select against, its codec registry has a codec for the class
+     * @param documentClass the class of the documents
+     * @param <T>           the class of the documents
+     * @return the documents
+     */
+    public <T> QueryResultIterator<T> run(MongoDatabase mongoDatabase, Class<T> documentClass) {
+        MongoDBQueryHolder mongoDBQueryHolder = getMongoQuery();
+        if (!SQLCommandType.SELECT.equals(mongoDBQueryHolder.getSqlCommandType()) || mongoDBQueryHolder.isDistinct()
+                || mongoDBQueryHolder.isCountAll() || sqlCommandInfoHolder.getGoupBys().size() > 0 || isExplain()) {
+            throw new IllegalArgumentException("only a select of documents can be decoded into a class");
+        }
+        return new QueryResultIterator<>(find(mongoDBQueryHolder.getOptions()
+                .apply(mongoDatabase.getCollection(mongoDBQueryHolder.getCollection(), documentClass))));
+    }
+
+    private <T> FindIterable<T> find(MongoCollection<T> mongoCollection) {
+        MongoDBQueryHolder mongoDBQueryHolder = getMongoQuery();
+        EncodedQuery encoded = getEncodedQuery();
+        Bson filter = encoded != null ? encoded.getFilter() : mongoDBQueryHolder.getQuery();
+        Bson projection = encoded != null ? encoded.getProjection() : mongoDBQueryHolder.getProjection();
+        Bson sort = encoded != null ? encoded.getSort() : mongoDBQueryHolder.getSort();
+        FindIterable<T> findIterable = mongoCollection.find(filter).projection(projection);
+        if (mongoDBQueryHolder.getSort() != null && mongoDBQueryHolder.getSort().size() > 0) {
+            findIterable.sort(sort);
+        }
+        if (mongoDBQueryHolder.getLimit() != -1) {
+            findIterable.limit((int) mongoDBQueryHolder.getLimit());
+        }
+        if (mongoDBQueryHolder.getOffset() != -1) {
+            findIterable.skip((int) mongoDBQueryHolder.getOffset());
+        }
+        mongoDBQueryHolder.getOptions().apply(findIterable, mongoCollection);
+        return findIterable;
+    }
+
+    /**
+     * Explain the query with the verbosity of the statement, {@link ExplainResult#QUERY_PLANNER} when the statement
+     * is not an <code>EXPLAIN</code>.
+     *
+     * @param mongoDatabase the database to explain the query on
+     * @return what the server told about the plan of the query
+     */
+    public ExplainResult explain(MongoDatabase mongoDatabase) {
+        return explain(mongoDatabase, getExplainVerbosity());
+    }
+
+    String getExplainVerbosity() {
+        String verbosity = sqlCommandInfoHolder.getExplainVerbosity();
+        return verbosity != null ? verbosity : ExplainResult.QUERY_PLANNER;
+    }
+
+    /**
+     * Explain the query with the explain command. Explaining a delete or an update does not change any document,
+     * {@link ExplainResult#EXECUTION_STATS} runs a select.
+     *
+     * @param mongoDatabase the database to explain the query on
+     * @param verbosity     {@link ExplainResult#QUERY_PLANNER} or {@link ExplainResult#EXECUTION_STATS}
+     * @return what the server told about the plan of the query
+     */
+    public ExplainResult explain(MongoDatabase mongoDatabase, String verbosity) {
+        QueryOptions options = getMongoQuery().getOptions();
+        Document command = getExplainCommand(verbosity);
+        boolean read = SQLCommandType.SELECT.equals(getMongoQuery().getSqlCommandType());
+        return new ExplainResult(read && options.getReadPreference() != null
+                ? mongoDatabase.runCommand(command, options.getReadPreference()) : mongoDatabase.runCommand(command));
+    }
+
+    /**
+     * @return the explain command of the find, aggregate, count, distinct, delete or update the query runs
+     */
+    Document getExplainCommand(String verbosity) {
+        MongoDBQueryHolder mongoDBQueryHolder = getMongoQuery();
+        QueryOptions options = mongoDBQueryHolder.getOptions();
+        String collection = mongoDBQueryHolder.getCollection();
+        Document query = mongoDBQueryHolder.getQuery() != null ? mongoDBQueryHolder.getQuery() : new Document();
+        Document command;
+        if (SQLCommandType.DELETE.equals(mongoDBQueryHolder.getSqlCommandType())) {
+            command = new Document("delete", collection)
+                    .append("deletes", Collections.singletonList(new Document("q", query).append("limit", 0)));
+        } else if (SQLCommandType.UPDATE.equals(mongoDBQueryHolder.getSqlCommandType())) {
+            command = new Document("update", collection).append("updates", Collections.singletonList(new Document("q", query)
+                    .append("u", new Document("$set", mongoDBQueryHolder.getItems())).append("multi", false)));
+        } else if (!SQLCommandType.SELECT.equals(mongoDBQueryHolder.getSqlCommandType())) {
+            throw new UnsupportedOperationException("SQL command type cannot be explained");
+        } else if (mongoDBQueryHolder.isDistinct()) {
+            command = new Document("distinct", collection).append("key", getDistinctFieldName(mongoDBQueryHolder))
+                    .append("query", query);
+        } else if (mongoDBQueryHolder.isCountAll()) {
+            command = new Document("count", collection).append("query", query);
+        } else if (sqlCommandInfoHolder.getGoupBys().size() > 0) {
+            command = new Document("aggregate", collection).append("pipeline", getGroupPipeline())
+                    .append("cursor", new Document());
+            Boolean diskUse = options.getAggregationAllowDiskUse();
+            if (diskUse != null) {
+                command.append("allowDiskUse", diskUse);
+            }
+        } else {
+            command = new Document("find", collection).append("filter", query);
+            if (mongoDBQueryHolder.getProjection() != null && mongoDBQueryHolder.getProjection().size() > 0) {
+                command.append("projection", mongoDBQueryHolder.getProjection());
+            }
+            if (mongoDBQueryHolder.getSort() != null && mongoDBQueryHolder.getSort().size() > 0) {
+                command.append("sort", mongoDBQueryHolder.getSort());
+            }
+            if (mongoDBQueryHolder.getOffset() != -1) {
+                command.append("skip", mongoDBQueryHolder.getOffset());
+            }
+            if (mongoDBQueryHolder.getLimit() != -1) {
+                command.append("limit", mongoDBQueryHolder.getLimit());
+            }
+        }
+        if (SQLCommandType.SELECT.equals(mongoDBQueryHolder.getSqlCommandType())) {
+            if (options.getHint() != null && !mongoDBQueryHolder.isDistinct()) {
+                command.append("hint", options.getHint());
+            }
+            if (options.getMaxTimeMS() != null) {
+                command.append("maxTimeMS", options.getMaxTimeMS());
+            }
+        }
+        return new Document("explain", command).append("verbosity", verbosity);
+    }
+
     /**
      * @param mongoDatabase the database to run the query against.
      * @param <T>           variable based on the type of query run.
      * @return When query does a find will return QueryResultIterator&lt;{@link org.bson.Document}&gt;
      * When query does a count will return a Long
      * When query does a distinct will return QueryResultIterator&lt;{@link java.lang.String}&gt;
+     * When query is an explain will return an {@link ExplainResult}
      */
     @SuppressWarnings("unchecked")
     public <T> T run(MongoDatabase mongoDatabase) {
+        if (isExplain()) {
+            return (T) explain(mongoDatabase);
+        }
         MongoDBQueryHolder mongoDBQueryHolder = getMongoQuery();
 
-        MongoCollection mongoCollection = mongoDatabase.getCollection(mongoDBQueryHolder.getCollection());
+        QueryOptions options = mongoDBQueryHolder.getOptions();
+        MongoCollection mongoCollection = options.apply(mongoDatabase.getCollection(mongoDBQueryHolder.getCollection()));
+        EncodedQuery encoded = getEncodedQuery();
+        Bson filter = encoded != null ? encoded.getFilter() : mongoDBQueryHolder.getQuery();
 
         if (SQLCommandType.SELECT.equals(mongoDBQueryHolder.getSqlCommandType())) {
             if (mongoDBQueryHolder.isDistinct()) {
-                return (T) new QueryResultIterator<>(mongoCollection.distinct(getDistinctFieldName(mongoDBQueryHolder), mongoDBQueryHolder.getQuery(), String.class));
+                DistinctIterable distinctIterable = mongoCollection.distinct(getDistinctFieldName(mongoDBQueryHolder), filter, String.class);
+                options.apply(distinctIterable);
+                return (T) new QueryResultIterator<>(distinctIterable);
             } else if (mongoDBQueryHolder.isCountAll()) {
-                return (T) Long.valueOf(mongoCollection.countDocuments(mongoDBQueryHolder.getQuery()));
+                return (T) Long.valueOf(CountEngine.count(mongoCollection, filter, options));
             } else if (sqlCommandInfoHolder.getGoupBys().size() > 0) {
-                List<Document> documents = new ArrayList<>();
-                if (mongoDBQueryHolder.getQuery() != null && mongoDBQueryHolder.getQuery().size() > 0) {
-                    documents.add(new Document("$match", mongoDBQueryHolder.getQuery()));
-                }
-                documents.add(new Document("$group", mongoDBQueryHolder.getProjection()));
-                if (mongoDBQueryHolder.getSort() != null && mongoDBQueryHolder.getSort().size() > 0) {
-                    documents.add(new Document("$sort", mongoDBQueryHolder.getSort()));
-                }
-                if (mongoDBQueryHolder.getLimit() != -1) {
-                    documents.add(new Document("$limit", mongoDBQueryHolder.getLimit()));
-                }
-                if (mongoDBQueryHolder.getOffset() != -1) {
-                    documents.add(new Document("$skip", mongoDBQueryHolder.getOffset()));
-                }
-                AggregateIterable aggregate = mongoCollection.aggregate(documents);
-
-                if (System.getProperty(D_AGGREGATION_ALLOW_DISK_USE) != null) {
-                    aggregate.allowDiskUse(Boolean.valueOf(System.getProperty(D_AGGREGATION_ALLOW_DISK_USE)));
-                }
-
-                if (System.getProperty(D_AGGREGATION_BATCH_SIZE) != null) {
-                    aggregate.batchSize(Integer.valueOf(System.getProperty(D_AGGREGATION_BATCH_SIZE)));
-                }
+                AggregateIterable aggregate = mongoCollection.aggregate(getGroupPipeline());
+                options.apply(aggregate, mongoCollection);
 
                 return (T) new QueryResultIterator<>(aggregate);
             } else {
-                FindIterable findIterable = mongoCollection.find(mongoDBQueryHolder.getQuery()).projection(mongoDBQueryHolder.getProjection());
-                if (mongoDBQueryHolder.getSort() != null && mongoDBQueryHolder.getSort().size() > 0) {
-                    findIterable.sort(mongoDBQueryHolder.getSort());
-                }
-                if (mongoDBQueryHolder.getLimit() != -1) {
-                    findIterable.limit((int) mongoDBQueryHolder.getLimit());
-                }
-                if (mongoDBQueryHolder.getOffset() != -1) {
-                    findIterable.skip((int) mongoDBQueryHolder.getOffset());
-                }
-
-                return (T) new QueryResultIterator<>(findIterable);
+                return (T) new QueryResultIterator<>(find(mongoCollection));
             }
         } else if (SQLCommandType.DELETE.equals(mongoDBQueryHolder.getSqlCommandType())) {
-            DeleteResult deleteResult = mongoCollection.deleteMany(mongoDBQueryHolder.getQuery());
+            DeleteResult deleteResult = mongoCollection.deleteMany(filter);
+            CountEngine.invalidate(mongoCollection);
             return (T) ((Long) deleteResult.getDeletedCount());
         } else if (SQLCommandType.INSERT.equals(mongoDBQueryHolder.getSqlCommandType())) {
             mongoCollection.insertOne(mongoDBQueryHolder.getItems());
+            CountEngine.invalidate(mongoCollection);
             return null;
         } else if (SQLCommandType.UPDATE.equals(mongoDBQueryHolder.getSqlCommandType())) {
-            UpdateResult result = mongoCollection.updateOne(mongoDBQueryHolder.getQuery(), new Document("$set", mongoDBQueryHolder.getItems()));
+            UpdateResult result = mongoCollection.updateOne(filter, new Document("$set", mongoDBQueryHolder.getItems()));
+            CountEngine.invalidate(mongoCollection);
             return (T) ((Long) result.getModifiedCount());
         } else {
             throw new UnsupportedOperationException("SQL command type not supported");
@@ -491,12 +813,6 @@ public class QueryConverter {
     }
 
 
-    private String prettyPrintJson(String json) {
-        Gson gson = new GsonBuilder().setPrettyPrinting().create();
-        JsonParser jp = new JsonParser();
-        JsonElement je = jp.parse(json);
-        return gson.toJson(je);
-    }
 
 
 }
@@ -0,0 +1,285 @@
+package com.github.vincentrussell.query.mongodb.sql.converter;
+
+/**
+ * The shape of a sql statement: the statement with every literal and named parameter replaced by ?, so that
+ * {@code select * from rpc_logs where type='a'} and {@code select * from rpc_logs where type=:type} have the same
+ * fingerprint.
+ * <p>
+ * The statement is only scanned, not parsed. Whitespace and comments are dropped, unquoted words are lower cased and
+ * an IN list of literals of any length becomes {@code (?+)}. The hash is the 64 bit FNV-1a hash of the canonical text,
+ * it is computed without building the text or allocating, the text is only built when asked for.
+ */
+public final class QueryFingerprint {
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final String PLACEHOLDER = "?";
+    private static final String LITERAL_LIST = "(?+)";
+
+    private final String sql;
+    private final long hash;
+    private volatile String canonical;
+
+    private QueryFingerprint(String sql, long hash) {
+        this.sql = sql;
+        this.hash = hash;
+    }
+
+    /**
+     * @param sql the sql statement
+     * @return the fingerprint of the statement
+     */
+    public static QueryFingerprint of(String sql) {
+        return new QueryFingerprint(sql, hash(sql));
+    }
+
+    /**
+     * @param sql the sql statement
+     * @return the 64 bit hash of the shape of the statement
+     */
+    public static long hash(CharSequence sql) {
+        return scan(sql, null);
+    }
+
+    /**
+     * @param sql the sql statement
+     * @return the statement with the literals replaced by ?
+     */
+    public static String canonical(CharSequence sql) {
+        StringBuilder builder = new StringBuilder(sql.length());
+        scan(sql, builder);
+        return builder.toString();
+    }
+
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * @return the hash as 16 hex digits
+     */
+    public String getHex() {
+        String hex = Long.toHexString(hash);
+        return hex.length() == 16 ? hex : "0000000000000000".substring(hex.length()) + hex;
+    }
+
+    public String getCanonical() {
+        String result = canonical;
+        if (result == null) {
+            result = canonical(sql);
+            canonical = result;
+        }
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof QueryFingerprint && ((QueryFingerprint) o).hash == hash;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return getHex();
+    }
+
+    private static long scan(CharSequence sql, StringBuilder out) {
+        long hash = FNV_OFFSET_BASIS;
+        boolean space = false;
+        boolean afterValue = false;
+        boolean afterIn = false;
+        int length = sql.length();
+        int i = 0;
+        while (i < length) {
+            char c = sql.charAt(i);
+            int start = i;
+            CharSequence token = sql;
+            boolean lowerCase = false;
+            boolean in = false;
+            int listEnd = -1;
+            if (Character.isWhitespace(c) || c == ';') {
+                i++;
+                continue;
+            } else if (c == '-' && i + 1 < length && sql.charAt(i + 1) == '-') {
+                while (i < length && sql.charAt(i) != '\n') {
+                    i++;
+                }
+                continue;
+            } else if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+                int commentEnd = indexOf(sql, "*/", i + 2);
+                i = commentEnd < 0 ? length : commentEnd + 2;
+                continue;
+            } else if (c == '\'') {
+                i = skipString(sql, i);
+                token = PLACEHOLDER;
+            } else if (c == '"' || c == '`') {
+                int quoteEnd = indexOf(sql, c, i + 1);
+                i = quoteEnd < 0 ? length : quoteEnd + 1;
+            } else if (isDigit(c) || (c == '.' && i + 1 < length && isDigit(sql.charAt(i + 1)))
+                    || (c == '-' && i + 1 < length && isDigit(sql.charAt(i + 1)) && !afterValue)) {
+                i = skipNumber(sql, i + 1);
+                token = PLACEHOLDER;
+            } else if ((c == ':' && i + 1 < length && isWordPart(sql.charAt(i + 1))) || c == '?') {
+                i = skipParameter(sql, i + 1);
+                token = PLACEHOLDER;
+            } else if (isWordPart(c)) {
+                while (i < length && isWordPart(sql.charAt(i))) {
+                    i++;
+                }
+                if (isWord(sql, start, i, "true") || isWord(sql, start, i, "false")) {
+                    token = PLACEHOLDER;
+                } else {
+                    lowerCase = true;
+                    in = isWord(sql, start, i, "in");
+                }
+            } else if (c == '(' && afterIn && (listEnd = skipLiteralList(sql, i + 1)) > 0) {
+                i = listEnd;
+                token = LITERAL_LIST;
+            } else if (isOperator(c)) {
+                while (i < length && isOperator(sql.charAt(i))) {
+                    i++;
+                }
+            } else {
+                i++;
+            }
+            int tokenStart = token == sql ? start : 0;
+            int tokenEnd = token == sql ? i : token.length();
+            char first = token.charAt(tokenStart);
+            char last = token.charAt(tokenEnd - 1);
+            if (space && first != ',' && first != ')' && first != '.') {
+                hash = append(hash, ' ', out);
+            }
+            for (int j = tokenStart; j < tokenEnd; j++) {
+                hash = append(hash, lowerCase ? Character.toLowerCase(token.charAt(j)) : token.charAt(j), out);
+            }
+            space = last != '(' && last != '.';
+            afterValue = lowerCase || token != sql || last == ')' || first == '"' || first == '`';
+            afterIn = in;
+        }
+        return hash;
+    }
+
+    private static long append(long hash, char c, StringBuilder out) {
+        if (out != null) {
+            out.append(c);
+        }
+        return (hash ^ c) * FNV_PRIME;
+    }
+
+    private static int skipParameter(CharSequence sql, int i) {
+        while (i < sql.length() && (isWordPart(sql.charAt(i)) || sql.charAt(i) == '.')) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * @return the index after the closing parenthesis of a list that only has literals, -1 when it has anything else
+     */
+    private static int skipLiteralList(CharSequence sql, int i) {
+        int length = sql.length();
+        boolean expectValue = true;
+        while (i < length) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == ')') {
+                return expectValue ? -1 : i + 1;
+            } else if (c == ',' && !expectValue) {
+                expectValue = true;
+                i++;
+            } else if (!expectValue) {
+                return -1;
+            } else if (c == '\'') {
+                i = skipString(sql, i);
+                expectValue = false;
+            } else if (isDigit(c) || ((c == '-' || c == '.') && i + 1 < length && isDigit(sql.charAt(i + 1)))) {
+                i = skipNumber(sql, i + 1);
+                expectValue = false;
+            } else if ((c == ':' && i + 1 < length && isWordPart(sql.charAt(i + 1))) || c == '?') {
+                i = skipParameter(sql, i + 1);
+                expectValue = false;
+            } else {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private static int skipString(CharSequence sql, int i) {
+        int length = sql.length();
+        i++;
+        while (i < length) {
+            if (sql.charAt(i) == '\'') {
+                if (i + 1 < length && sql.charAt(i + 1) == '\'') {
+                    i += 2;
+                    continue;
+                }
+                return i + 1;
+            }
+            i++;
+        }
+        return length;
+    }
+
+    private static int skipNumber(CharSequence sql, int i) {
+        int length = sql.length();
+        while (i < length) {
+            char c = sql.charAt(i);
+            if (isDigit(c) || c == '.') {
+                i++;
+            } else if ((c == 'e' || c == 'E') && i + 1 < length
+                    && (isDigit(sql.charAt(i + 1)) || sql.charAt(i + 1) == '-' || sql.charAt(i + 1) == '+')) {
+                i += 2;
+            } else {
+                return i;
+            }
+        }
+        return length;
+    }
+
+    private static int indexOf(CharSequence sql, char c, int from) {
+        for (int i = from; i < sql.length(); i++) {
+            if (sql.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(CharSequence sql, String s, int from) {
+        for (int i = from; i + s.length() <= sql.length(); i++) {
+            if (sql.charAt(i) == s.charAt(0) && sql.charAt(i + 1) == s.charAt(1)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isWord(CharSequence sql, int start, int end, String word) {
+        if (end - start != word.length()) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (Character.toLowerCase(sql.charAt(i)) != word.charAt(i - start)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isWordPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+    }
+
+    private static boolean isOperator(char c) {
+        return c == '<' || c == '>' || c == '=' || c == '!';
+    }
+}
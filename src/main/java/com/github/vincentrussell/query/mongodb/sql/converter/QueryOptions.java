@@ -0,0 +1,347 @@
+package com.github.vincentrussell.query.mongodb.sql.converter;
+
+import com.github.vincentrussell.query.mongodb.sql.converter.util.SqlUtils;
+import com.mongodb.ReadPreference;
+import com.mongodb.client.AggregateIterable;
+import com.mongodb.client.DistinctIterable;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.CountOptions;
+import com.mongodb.client.model.EstimatedDocumentCountOptions;
+import org.bson.Document;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Execution options of one query: cursor batch size, server time limit, disk use of aggregations, read preference,
+ * the index to use and whether a count may be approximate, see {@link CountEngine}. They are given in a hint comment of the sql statement, like
+ * <code>select /*+ batchSize(5000) maxTimeMS(200) readPref(secondary) hint(idx_create_at) *&#47; * from rpc_logs</code>,
+ * or with {@link QueryConverter#withOptions(QueryOptions)}.
+ * <p>
+ * An option that is not set is left to the driver, the aggregations still take the
+ * {@link QueryConverter#D_AGGREGATION_ALLOW_DISK_USE} and {@link QueryConverter#D_AGGREGATION_BATCH_SIZE} system
+ * properties when their option is not set. The properties are read once, when the statement is translated.
+ * <p>
+ * A hint that names no index of the collection is dropped, the query runs without it.
+ */
+public class QueryOptions {
+    public static final QueryOptions NONE = Builder.create().build();
+    private static final String HINT_START = "/*+";
+    private static final Pattern OPTION = Pattern.compile("[\\s,]*([a-zA-Z]\\w*)\\s*(?:\\(\\s*([^)]*?)\\s*\\))?[\\s,]*");
+
+    private final Integer batchSize;
+    private final Long maxTimeMS;
+    private final Boolean allowDiskUse;
+    private final ReadPreference readPreference;
+    private final String hint;
+    private final Boolean approximateCount;
+    private final Boolean defaultAllowDiskUse;
+    private final Integer defaultAggregationBatchSize;
+
+    private QueryOptions(Integer batchSize, Long maxTimeMS, Boolean allowDiskUse, ReadPreference readPreference,
+                         String hint, Boolean approximateCount, Boolean defaultAllowDiskUse,
+                         Integer defaultAggregationBatchSize) {
+        this.batchSize = batchSize;
+        this.maxTimeMS = maxTimeMS;
+        this.allowDiskUse = allowDiskUse;
+        this.readPreference = readPreference;
+        this.hint = hint;
+        this.approximateCount = approximateCount;
+        this.defaultAllowDiskUse = defaultAllowDiskUse;
+        this.defaultAggregationBatchSize = defaultAggregationBatchSize;
+    }
+
+    public Integer getBatchSize() {
+        return batchSize;
+    }
+
+    public Long getMaxTimeMS() {
+        return maxTimeMS;
+    }
+
+    public Boolean getAllowDiskUse() {
+        return allowDiskUse;
+    }
+
+    public ReadPreference getReadPreference() {
+        return readPreference;
+    }
+
+    /**
+     * @return the name of the index to use
+     */
+    public String getHint() {
+        return hint;
+    }
+
+    /**
+     * @return true when a count may be a cached count of a while ago, see {@link CountEngine}
+     */
+    public Boolean getApproximateCount() {
+        return approximateCount;
+    }
+
+    boolean isApproximateCount() {
+        return Boolean.TRUE.equals(approximateCount);
+    }
+
+    public boolean isEmpty() {
+        return batchSize == null && maxTimeMS == null && allowDiskUse == null && readPreference == null && hint == null
+                && approximateCount == null;
+    }
+
+    /**
+     * @param options the options that win
+     * @return these options with every option that is set in the given options replaced
+     */
+    public QueryOptions merge(QueryOptions options) {
+        if (options == null || options.isEmpty()) {
+            return this;
+        }
+        return new QueryOptions(options.batchSize != null ? options.batchSize : batchSize,
+                options.maxTimeMS != null ? options.maxTimeMS : maxTimeMS,
+                options.allowDiskUse != null ? options.allowDiskUse : allowDiskUse,
+                options.readPreference != null ? options.readPreference : readPreference,
+                options.hint != null ? options.hint : hint,
+                options.approximateCount != null ? options.approximateCount : approximateCount,
+                defaultAllowDiskUse, defaultAggregationBatchSize);
+    }
+
+    /**
+     * Read the options of the hint comments (starting with /*+) before and after the tokens of a parsed statement.
+     *
+     * @param first the token before the first token of the statement
+     * @return the options, with the aggregation system properties
+     * @throws ParseException when a hint comment has an unknown option or a bad value
+     */
+    static QueryOptions fromHints(net.sf.jsqlparser.parser.Token first) throws ParseException {
+        QueryOptions options = NONE;
+        for (net.sf.jsqlparser.parser.Token token = first; token != null; token = token.next) {
+            for (net.sf.jsqlparser.parser.Token comment = token.specialToken; comment != null; comment = comment.specialToken) {
+                if (comment.image != null && comment.image.startsWith(HINT_START)) {
+                    options = parseHint(comment.image).merge(options);
+                }
+            }
+        }
+        String diskUse = System.getProperty(QueryConverter.D_AGGREGATION_ALLOW_DISK_USE);
+        return new QueryOptions(options.batchSize, options.maxTimeMS, options.allowDiskUse, options.readPreference,
+                options.hint, options.approximateCount, diskUse != null ? Boolean.valueOf(diskUse) : null,
+                Integer.getInteger(QueryConverter.D_AGGREGATION_BATCH_SIZE));
+    }
+
+    /**
+     * @param comment a hint comment, like /*+ batchSize(5000) maxTimeMS(200) *&#47;
+     * @return the options of the comment
+     * @throws ParseException when the comment has an unknown option or a bad value
+     */
+    public static QueryOptions parseHint(String comment) throws ParseException {
+        String text = comment.trim();
+        text = text.substring(text.startsWith(HINT_START) ? HINT_START.length() : 0,
+                text.endsWith("*/") ? text.length() - 2 : text.length());
+        Builder builder = Builder.create();
+        Matcher matcher = OPTION.matcher(text);
+        int position = 0;
+        while (position < text.length()) {
+            matcher.region(position, text.length());
+            SqlUtils.isTrue(matcher.lookingAt(), "cannot read the hint: " + comment);
+            String name = matcher.group(1);
+            String value = matcher.group(2);
+            try {
+                if ("batchSize".equalsIgnoreCase(name)) {
+                    builder.setBatchSize(Integer.valueOf(value));
+                } else if ("maxTimeMS".equalsIgnoreCase(name)) {
+                    builder.setMaxTimeMS(Long.valueOf(value));
+                } else if ("allowDiskUse".equalsIgnoreCase(name)) {
+                    builder.setAllowDiskUse(value == null || value.isEmpty() || Boolean.parseBoolean(value));
+                } else if ("approximateCount".equalsIgnoreCase(name)) {
+                    builder.setApproximateCount(value == null || value.isEmpty() || Boolean.parseBoolean(value));
+                } else if ("readPref".equalsIgnoreCase(name) || "readPreference".equalsIgnoreCase(name)) {
+                    builder.setReadPreference(ReadPreference.valueOf(unquote(value)));
+                } else if ("hint".equalsIgnoreCase(name) || "index".equalsIgnoreCase(name)) {
+                    SqlUtils.isFalse(value == null || value.isEmpty(), "the hint needs an index name");
+                    builder.setHint(unquote(value));
+                } else {
+                    throw new ParseException("unknown hint: " + name);
+                }
+            } catch (IllegalArgumentException | NullPointerException e) {
+                throw new ParseException("bad value of the hint " + name + ": " + value);
+            }
+            position = matcher.end();
+        }
+        return builder.build();
+    }
+
+    private static String unquote(String value) {
+        if (value != null && value.length() > 1 && (value.charAt(0) == '\'' || value.charAt(0) == '"')) {
+            return value.substring(1, value.length() - 1);
+        }
+        return value;
+    }
+
+    <T> MongoCollection<T> apply(MongoCollection<T> mongoCollection) {
+        return readPreference != null ? mongoCollection.withReadPreference(readPreference) : mongoCollection;
+    }
+
+    void apply(FindIterable<?> findIterable, MongoCollection<?> mongoCollection) {
+        if (batchSize != null) {
+            findIterable.batchSize(batchSize);
+        }
+        if (maxTimeMS != null) {
+            findIterable.maxTime(maxTimeMS, TimeUnit.MILLISECONDS);
+        }
+        Document keys = getHintKeys(mongoCollection);
+        if (keys != null) {
+            findIterable.hint(keys);
+        }
+    }
+
+    void apply(AggregateIterable<?> aggregateIterable, MongoCollection<?> mongoCollection) {
+        Boolean diskUse = getAggregationAllowDiskUse();
+        if (diskUse != null) {
+            aggregateIterable.allowDiskUse(diskUse);
+        }
+        Integer aggregationBatchSize = getAggregationBatchSize();
+        if (aggregationBatchSize != null) {
+            aggregateIterable.batchSize(aggregationBatchSize);
+        }
+        if (maxTimeMS != null) {
+            aggregateIterable.maxTime(maxTimeMS, TimeUnit.MILLISECONDS);
+        }
+        Document keys = getHintKeys(mongoCollection);
+        if (keys != null) {
+            aggregateIterable.hint(keys);
+        }
+    }
+
+    void apply(DistinctIterable<?> distinctIterable) {
+        if (batchSize != null) {
+            distinctIterable.batchSize(batchSize);
+        }
+        if (maxTimeMS != null) {
+            distinctIterable.maxTime(maxTimeMS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * @return the keys of the index named by the hint, null when there is no hint or the collection has no such index
+     */
+    Document getHintKeys(MongoCollection<?> mongoCollection) {
+        return hint != null ? IndexCache.getKeys(mongoCollection, hint) : null;
+    }
+
+    CountOptions toCountOptions(MongoCollection<?> mongoCollection) {
+        return toCountOptions(getHintKeys(mongoCollection));
+    }
+
+    /**
+     * @param hintKeys the keys of the index named by the hint, null to count without a hint
+     */
+    CountOptions toCountOptions(Document hintKeys) {
+        CountOptions countOptions = new CountOptions();
+        if (maxTimeMS != null) {
+            countOptions.maxTime(maxTimeMS, TimeUnit.MILLISECONDS);
+        }
+        if (hintKeys != null) {
+            countOptions.hint(hintKeys);
+        }
+        return countOptions;
+    }
+
+    EstimatedDocumentCountOptions toEstimatedCountOptions() {
+        EstimatedDocumentCountOptions countOptions = new EstimatedDocumentCountOptions();
+        if (maxTimeMS != null) {
+            countOptions.maxTime(maxTimeMS, TimeUnit.MILLISECONDS);
+        }
+        return countOptions;
+    }
+
+    /**
+     * @return the options document of the aggregate shell statement
+     */
+    Document toAggregateOptions() {
+        Document document = new Document();
+        Boolean diskUse = getAggregationAllowDiskUse();
+        if (diskUse != null) {
+            document.put("allowDiskUse", diskUse);
+        }
+        Integer aggregationBatchSize = getAggregationBatchSize();
+        if (aggregationBatchSize != null) {
+            document.put("cursor", new Document("batchSize", aggregationBatchSize));
+        }
+        if (maxTimeMS != null) {
+            document.put("maxTimeMS", maxTimeMS);
+        }
+        if (hint != null) {
+            document.put("hint", hint);
+        }
+        return document;
+    }
+
+    Boolean getAggregationAllowDiskUse() {
+        return allowDiskUse != null ? allowDiskUse : defaultAllowDiskUse;
+    }
+
+    Integer getAggregationBatchSize() {
+        return batchSize != null ? batchSize : defaultAggregationBatchSize;
+    }
+
+    public static class Builder {
+        private Integer batchSize;
+        private Long maxTimeMS;
+        private Boolean allowDiskUse;
+        private ReadPreference readPreference;
+        private String hint;
+        private Boolean approximateCount;
+
+        private Builder() {
+        }
+
+        public static Builder create() {
+            return new Builder();
+        }
+
+        public Builder setBatchSize(Integer batchSize) {
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        public Builder setMaxTimeMS(Long maxTimeMS) {
+            this.maxTimeMS = maxTimeMS;
+            return this;
+        }
+
+        public Builder setAllowDiskUse(Boolean allowDiskUse) {
+            this.allowDiskUse = allowDiskUse;
+            return this;
+        }
+
+        public Builder setReadPreference(ReadPreference readPreference) {
+            this.readPreference = readPreference;
+            return this;
+        }
+
+        /**
+         * @param hint the name of the index to use
+         * @return this builder
+         */
+        public Builder setHint(String hint) {
+            this.hint = hint;
+            return this;
+        }
+
+        /**
+         * @param approximateCount true when a count may be a cached count of a while ago
+         * @return this builder
+         */
+        public Builder setApproximateCount(Boolean approximateCount) {
+            this.approximateCount = approximateCount;
+            return this;
+        }
+
+        public QueryOptions build() {
+            return new QueryOptions(batchSize, maxTimeMS, allowDiskUse, readPreference, hint, approximateCount, null, null);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.github.vincentrussell.query.mongodb.sql.converter;
+
+import com.github.vincentrussell.query.mongodb.sql.converter.util.SqlUtils;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Keeps the translation of sql statements that have been seen before, so the same sql does not go
+ * through the sql parser and the mongo translation again.
+ * <p>
+ * The cached {@link QueryConverter} is never handed out, every caller gets its own {@link QueryConverter#copy()}.
+ */
+public class QueryPlanCache {
+
+    public static final String D_QUERY_PLAN_CACHE_SIZE = "queryPlanCacheSize";
+    private static final long DEFAULT_CACHE_SIZE = 2000;
+
+    private static final Cache<String, QueryConverter> PLANS = CacheBuilder.newBuilder()
+            .maximumSize(Long.getLong(D_QUERY_PLAN_CACHE_SIZE, DEFAULT_CACHE_SIZE))
+            .recordStats()
+            .build();
+
+    private QueryPlanCache() {
+    }
+
+    /**
+     * Get the translation of a sql statement, parsing it when it is not cached yet.
+     *
+     * @param sql the sql statement
+     * @return a copy of the cached {@link QueryConverter}
+     * @throws ParseException when the sql query cannot be parsed
+     */
+    public static QueryConverter get(final String sql) throws ParseException {
+        return load(sql).copy();
+    }
+
+    /**
+     * Get the translation of a sql template with named parameters (:name) to bind with {@link QueryConverter#bind}.
+     * The returned {@link QueryConverter} is shared and must not be changed.
+     *
+     * @param sql the sql template
+     * @return the cached translation of the template
+     * @throws ParseException when the template cannot be parsed or a parameter is in a place that cannot be bound
+     */
+    public static QueryConverter getTemplate(final String sql) throws ParseException {
+        QueryConverter template = load(sql);
+        SqlUtils.isTrue(template.getMongoQuery().getBindParameterCount() == countNamedParameters(sql),
+                "not every named parameter can be bound: " + sql);
+        return template;
+    }
+
+    private static QueryConverter load(final String sql) throws ParseException {
+        try {
+            return PLANS.get(normalize(sql), () -> new QueryConverter(sql));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof ParseException) {
+                throw (ParseException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * @return hit, miss and eviction counts of the cache
+     */
+    public static CacheStats stats() {
+        return PLANS.stats();
+    }
+
+    public static long size() {
+        return PLANS.size();
+    }
+
+    public static void invalidateAll() {
+        PLANS.invalidateAll();
+    }
+
+    /**
+     * @param sql the sql template
+     * @return the number of named parameters (:name) outside of quotes
+     */
+    public static int countNamedParameters(String sql) {
+        int count = 0;
+        char quote = 0;
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (quote == 0 && (c == '\'' || c == '"' || c == '`')) {
+                quote = c;
+            } else if (c == quote) {
+                quote = 0;
+            } else if (quote == 0 && c == ':' && i + 1 < sql.length()
+                    && (Character.isLetterOrDigit(sql.charAt(i + 1)) || sql.charAt(i + 1) == '_')) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Build the cache key of a sql statement: whitespace outside of quotes is collapsed and a trailing ';' dropped.
+     *
+     * @param sql the sql statement
+     * @return the normalized sql
+     */
+    public static String normalize(String sql) {
+        String trimmed = sql.trim();
+        if (trimmed.endsWith(";")) {
+            trimmed = trimmed.substring(0, trimmed.length() - 1).trim();
+        }
+        if (trimmed.contains("--")) {
+            //line comments end at the line break, so the line breaks have to be kept
+            return trimmed;
+        }
+        StringBuilder builder = new StringBuilder(trimmed.length());
+        char quote = 0;
+        boolean whitespace = false;
+        for (int i = 0; i < trimmed.length(); i++) {
+            char c = trimmed.charAt(i);
+            if (quote == 0 && Character.isWhitespace(c)) {
+                whitespace = true;
+                continue;
+            }
+            if (whitespace) {
+                builder.append(' ');
+                whitespace = false;
+            }
+            if (quote == 0 && (c == '\'' || c == '"' || c == '`')) {
+                quote = c;
+            } else if (c == quote) {
+                quote = 0;
+            }
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+}
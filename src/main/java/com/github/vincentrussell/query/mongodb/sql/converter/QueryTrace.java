@@ -0,0 +1,331 @@
+package com.github.vincentrussell.query.mongodb.sql.converter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * The slow query log. A trace follows one query through its stages, from binding its parameters to mapping its
+ * rows, and is logged when it ends:
+ * <ul>
+ * <li>at warn level when the query took {@link #D_SLOW_QUERY_MILLIS} or longer, for the fraction
+ * {@link #D_SLOW_QUERY_SAMPLE_RATE} of the slow queries;</li>
+ * <li>at debug level otherwise, or at info level for the fraction {@link ResultUtils#D_SHELL_LOG_SAMPLE_RATE} of the
+ * queries.</li>
+ * </ul>
+ * Nothing is rendered for a trace that is not logged: the parameters and the shell statement are only serialized
+ * when the entry is written.
+ * <p>
+ * The trace of a query is kept for the thread that runs it, from {@link #start()} to {@link #close()}, so the stages
+ * of a query are recorded with {@link #record(Stage, long)} wherever they run. Starting a trace on a thread that has
+ * one already joins that trace. A query whose rows are read after it returns, from a cursor, a stream or on the
+ * threads of the driver, takes its trace off the thread with {@link #detach()}, records its stages with
+ * {@link #record(QueryTrace, Stage, long)} and ends it when the rows have been read. A query whose rows the caller
+ * reads at its own pace takes its trace off with {@link #detachStream()}, and is judged slow by the sum of its stages.
+ * <p>
+ * The system properties are read once, when the class is loaded. A value that is not a number is ignored.
+ */
+public final class QueryTrace implements AutoCloseable {
+    /**
+     * the time in milliseconds from which a query is logged as slow, 500 by default, a negative value logs no query as slow
+     */
+    public static final String D_SLOW_QUERY_MILLIS = "slowQueryMillis";
+    /**
+     * fraction (0 to 1) of the slow queries that are logged, 1 by default
+     */
+    public static final String D_SLOW_QUERY_SAMPLE_RATE = "slowQuerySampleRate";
+    private static final long DEFAULT_SLOW_QUERY_MILLIS = 500;
+    private static final Logger logger = LoggerFactory.getLogger(QueryTrace.class);
+    private static final ThreadLocal<QueryTrace> CURRENT = new ThreadLocal<>();
+    private static final Pattern NEW_LINE = Pattern.compile("\\s*\\n\\s*");
+    private static final long SLOW_QUERY_MILLIS = Long.getLong(D_SLOW_QUERY_MILLIS, DEFAULT_SLOW_QUERY_MILLIS);
+    private static final double SLOW_QUERY_SAMPLE_RATE = getRate(D_SLOW_QUERY_SAMPLE_RATE, 1);
+    private static final double SHELL_LOG_SAMPLE_RATE = getRate(ResultUtils.D_SHELL_LOG_SAMPLE_RATE, 0);
+
+    /**
+     * The stages of a query.
+     */
+    public enum Stage {
+        BIND("绑定参数"), TRANSLATE("翻译"), ROUND_TRIP("往返"), DRAIN("读取游标"), MAP("映射结果");
+
+        private final String label;
+
+        Stage(String label) {
+            this.label = label;
+        }
+    }
+
+    private final long start = System.nanoTime();
+    private final long[] nanos = new long[Stage.values().length];
+    private int depth = 1;
+    private String dbName;
+    private String sql;
+    private Supplier<String> parameters;
+    private QueryConverter queryConverter;
+    private long rows = -1;
+    private volatile boolean paced;
+    private volatile boolean handedOver;
+
+    private QueryTrace() {
+    }
+
+    /**
+     * @return the trace of this thread, a new one when the thread has none
+     */
+    public static QueryTrace start() {
+        QueryTrace trace = CURRENT.get();
+        if (trace != null) {
+            trace.depth++;
+            return trace;
+        }
+        trace = new QueryTrace();
+        CURRENT.set(trace);
+        return trace;
+    }
+
+    /**
+     * A new trace on no thread, for a query that is run again for every subscriber of its rows. It goes on from the
+     * trace of the statement: it has its data source, its sql, its parameters and the time of its stages so far.
+     *
+     * @param origin the trace of the statement, null when there is none
+     * @return the trace
+     */
+    public static QueryTrace fork(QueryTrace origin) {
+        QueryTrace trace = new QueryTrace();
+        if (origin != null) {
+            trace.dbName = origin.dbName;
+            trace.sql = origin.sql;
+            trace.parameters = origin.parameters;
+            System.arraycopy(origin.nanos, 0, trace.nanos, 0, trace.nanos.length);
+        }
+        return trace;
+    }
+
+    /**
+     * @return the trace of this thread, null when the thread has none
+     */
+    public static QueryTrace current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Add the time from start to now to a stage of the trace of this thread, if it has one.
+     *
+     * @param stage the stage
+     * @param start the {@link System#nanoTime()} the stage started at
+     * @return now, the start of the next stage
+     */
+    public static long record(Stage stage, long start) {
+        return record(CURRENT.get(), stage, start);
+    }
+
+    /**
+     * Add the time from start to now to a stage of a trace that is not on this thread.
+     *
+     * @param trace the trace, nothing is recorded when it is null
+     * @param stage the stage
+     * @param start the {@link System#nanoTime()} the stage started at
+     * @return now, the start of the next stage
+     */
+    public static long record(QueryTrace trace, Stage stage, long start) {
+        long now = System.nanoTime();
+        if (trace != null) {
+            trace.nanos[stage.ordinal()] += now - start;
+        }
+        return now;
+    }
+
+    public QueryTrace setDbName(String dbName) {
+        this.dbName = dbName;
+        return this;
+    }
+
+    /**
+     * @param sql        the sql statement or template
+     * @param parameters renders the parameters, only called when the trace is logged
+     * @return this trace
+     */
+    public QueryTrace setSql(String sql, Supplier<String> parameters) {
+        this.sql = sql;
+        this.parameters = parameters;
+        return this;
+    }
+
+    public QueryTrace setQuery(QueryConverter queryConverter) {
+        this.queryConverter = queryConverter;
+        return this;
+    }
+
+    /**
+     * @param result the result of the query, the rows are counted when it is a list
+     * @return this trace
+     */
+    public QueryTrace setResult(Object result) {
+        if (result instanceof List) {
+            rows = ((List<?>) result).size();
+        } else if (result instanceof Number && queryConverter != null && queryConverter.getMongoQuery().isCountAll()) {
+            rows = 1;
+        }
+        return this;
+    }
+
+    /**
+     * @param rows the number of rows read from a cursor or a stream
+     * @return this trace
+     */
+    public QueryTrace setRows(long rows) {
+        this.rows = rows;
+        return this;
+    }
+
+    /**
+     * Take the trace off this thread, for a query that ends on another thread. It is logged when it is closed.
+     *
+     * @return this trace
+     */
+    public QueryTrace detach() {
+        if (CURRENT.get() == this) {
+            CURRENT.remove();
+        }
+        return this;
+    }
+
+    /**
+     * Take the trace off this thread, for a query whose rows the caller reads at its own pace. The time the caller
+     * spends between the rows is not query time, the trace is judged slow by the sum of its stages.
+     *
+     * @return this trace
+     */
+    public QueryTrace detachStream() {
+        paced = true;
+        return detach();
+    }
+
+    /**
+     * Do not log this trace when it ends, its query is logged by the traces {@link #fork(QueryTrace) forked} from it.
+     *
+     * @return this trace
+     */
+    public QueryTrace handOver() {
+        handedOver = true;
+        return this;
+    }
+
+    /**
+     * End the trace, the outermost close logs it. It never throws, the query it traced has already ended. A detached
+     * trace may be closed on two threads at once, and a trace that has ended ignores the closes after it.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (depth <= 0 || --depth > 0) {
+                return;
+            }
+        }
+        if (CURRENT.get() == this) {
+            CURRENT.remove();
+        }
+        if (handedOver) {
+            return;
+        }
+        try {
+            long millis = getQueryMillis();
+            if (SLOW_QUERY_MILLIS >= 0 && millis >= SLOW_QUERY_MILLIS) {
+                if (logger.isWarnEnabled() && isSampled(SLOW_QUERY_SAMPLE_RATE)) {
+                    logger.warn("慢查询{}ms，{}", millis, this);
+                }
+            } else if (logger.isDebugEnabled()) {
+                logger.debug("{}", this);
+            } else if (logger.isInfoEnabled() && isSampled(SHELL_LOG_SAMPLE_RATE)) {
+                logger.info("{}", this);
+            }
+        } catch (RuntimeException e) {
+            logger.warn("不能记录查询日志：{}", e.toString());
+        }
+    }
+
+    private static double getRate(String property, double defaultRate) {
+        String rate = System.getProperty(property);
+        if (rate == null) {
+            return defaultRate;
+        }
+        try {
+            return Double.parseDouble(rate.trim());
+        } catch (NumberFormatException e) {
+            logger.warn("系统属性{}不是数字：{}，使用默认值{}", property, rate, defaultRate);
+            return defaultRate;
+        }
+    }
+
+    private static boolean isSampled(double rate) {
+        return rate >= 1 || (rate > 0 && ThreadLocalRandom.current().nextDouble() < rate);
+    }
+
+    /**
+     * @return the time of a stage in milliseconds
+     */
+    public double getMillis(Stage stage) {
+        return nanos[stage.ordinal()] / 1e6;
+    }
+
+    /**
+     * @return the time of the query in milliseconds, the sum of its stages for a trace taken off with
+     * {@link #detachStream()}, otherwise the time since it started
+     */
+    public long getQueryMillis() {
+        if (!paced) {
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        }
+        long sum = 0;
+        for (long stageNanos : nanos) {
+            sum += stageNanos;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(sum);
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * @return the log entry of the trace
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        QueryFingerprint fingerprint = queryConverter != null ? queryConverter.getFingerprint() : null;
+        if (fingerprint == null && sql != null) {
+            fingerprint = QueryFingerprint.of(sql);
+        }
+        builder.append("在数据库").append(dbName != null ? dbName : "").append("上执行的sql");
+        if (fingerprint != null) {
+            builder.append('[').append(fingerprint.getHex()).append(']');
+        }
+        builder.append('：').append(sql != null ? sql : "");
+        if (parameters != null) {
+            builder.append(" , 参数为：").append(parameters.get());
+        }
+        if (queryConverter != null) {
+            builder.append(" , 集合：").append(queryConverter.getMongoQuery().getCollection());
+        }
+        if (rows >= 0) {
+            builder.append(" , 返回").append(rows).append("行");
+        }
+        builder.append(" , 耗时(ms)：");
+        for (Stage stage : Stage.values()) {
+            builder.append(stage.label).append(String.format(Locale.ROOT, "%.1f", getMillis(stage)))
+                    .append(stage.ordinal() < nanos.length - 1 ? "，" : "");
+        }
+        if (queryConverter != null) {
+            // one line per entry
+            builder.append(" , 语句：").append(NEW_LINE.matcher(queryConverter.getShellStatement()).replaceAll(" "));
+        }
+        return builder.toString();
+    }
+}
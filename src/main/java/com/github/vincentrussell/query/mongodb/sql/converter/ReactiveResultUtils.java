@@ -0,0 +1,450 @@
+package com.github.vincentrussell.query.mongodb.sql.converter;
+
+import com.mongodb.ReadPreference;
+import com.mongodb.client.result.DeleteResult;
+import com.mongodb.client.result.UpdateResult;
+import com.mongodb.reactivestreams.client.AggregatePublisher;
+import com.mongodb.reactivestreams.client.DistinctPublisher;
+import com.mongodb.reactivestreams.client.FindPublisher;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import com.mongodb.reactivestreams.client.MongoDatabase;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Runs translated queries on the reactive streams driver, so that no thread waits for the server while a query runs.
+ * The results have the shapes of {@link ResultUtils#exec(com.mongodb.client.MongoDatabase, QueryConverter)}.
+ * <p>
+ * The futures are completed on the given executor, so the stages the caller adds do not run on the threads of the
+ * driver. The reactive streams driver is an optional dependency, it is only needed when this class is used.
+ */
+public class ReactiveResultUtils {
+    private static final Executor SAME_THREAD = Runnable::run;
+
+    private ReactiveResultUtils() {
+    }
+
+    public static <T> CompletableFuture<T> exec(MongoDatabase mongoDatabase, QueryConverter queryConverter) {
+        return exec(mongoDatabase, queryConverter, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param mongoDatabase  the database on the reactive streams client
+     * @param queryConverter the query
+     * @param executor       completes the future
+     * @param <T>            a List for a select, a Long for a count, a delete and an update, null for an insert
+     * @return the result of the query, its {@link QueryTrace} ends when it completes
+     */
+    public static <T> CompletableFuture<T> exec(MongoDatabase mongoDatabase, QueryConverter queryConverter, Executor executor) {
+        // the query ends on the thread that completes the future
+        QueryTrace trace = QueryTrace.start().setQuery(queryConverter).detach();
+        CompletableFuture<T> future;
+        try {
+            future = run(mongoDatabase, queryConverter, executor, trace);
+        } catch (RuntimeException e) {
+            trace.close();
+            throw e;
+        }
+        return future.whenComplete((result, e) -> trace.setResult(result).close());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> CompletableFuture<T> run(MongoDatabase mongoDatabase, QueryConverter queryConverter, Executor executor,
+                                                QueryTrace trace) {
+        MongoDBQueryHolder mongoDBQueryHolder = queryConverter.getMongoQuery();
+        SQLCommandType type = mongoDBQueryHolder.getSqlCommandType();
+        MongoCollection<Document> mongoCollection = getCollection(mongoDatabase, mongoDBQueryHolder);
+        Bson filter = getFilter(queryConverter);
+        if (queryConverter.isExplain()) {
+            return (CompletableFuture<T>) explain(mongoDatabase, queryConverter, executor, trace)
+                    .thenApply(result -> Collections.singletonList(result.toRow()));
+        } else if (SQLCommandType.SELECT.equals(type)) {
+            if (mongoDBQueryHolder.isCountAll()) {
+                return (CompletableFuture<T>) count(mongoCollection, filter, mongoDBQueryHolder.getOptions(), executor, trace);
+            }
+            return (CompletableFuture<T>) publish(mongoCollection, queryConverter)
+                    .thenCompose(publisher -> collect(publisher, executor, trace))
+                    .thenApply(results -> toRows(queryConverter, results, trace));
+        } else if (SQLCommandType.DELETE.equals(type)) {
+            return (CompletableFuture<T>) first(mongoCollection.deleteMany(filter), executor, trace)
+                    .whenComplete((result, e) -> CountEngine.invalidate(mongoCollection.getNamespace().getFullName()))
+                    .thenApply(DeleteResult::getDeletedCount);
+        } else if (SQLCommandType.INSERT.equals(type)) {
+            return (CompletableFuture<T>) first(mongoCollection.insertOne(mongoDBQueryHolder.getItems()), executor, trace)
+                    .whenComplete((result, e) -> CountEngine.invalidate(mongoCollection.getNamespace().getFullName()))
+                    .thenApply(success -> null);
+        } else if (SQLCommandType.UPDATE.equals(type)) {
+            Document update = new Document("$set", mongoDBQueryHolder.getItems());
+            return (CompletableFuture<T>) first(mongoCollection.updateOne(filter, update), executor, trace)
+                    .whenComplete((result, e) -> CountEngine.invalidate(mongoCollection.getNamespace().getFullName()))
+                    .thenApply(UpdateResult::getModifiedCount);
+        }
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(new UnsupportedOperationException("SQL command type not supported"));
+        return future;
+    }
+
+    /**
+     * The {@link QueryConverter#explain(com.mongodb.client.MongoDatabase)} of the query, on the reactive streams driver.
+     */
+    private static CompletableFuture<ExplainResult> explain(MongoDatabase mongoDatabase, QueryConverter queryConverter,
+                                                           Executor executor, QueryTrace trace) {
+        MongoDBQueryHolder mongoDBQueryHolder = queryConverter.getMongoQuery();
+        Document command = queryConverter.getExplainCommand(queryConverter.getExplainVerbosity());
+        ReadPreference readPreference = mongoDBQueryHolder.getOptions().getReadPreference();
+        Publisher<Document> publisher = readPreference != null && SQLCommandType.SELECT.equals(mongoDBQueryHolder.getSqlCommandType())
+                ? mongoDatabase.runCommand(command, readPreference) : mongoDatabase.runCommand(command);
+        return first(publisher, executor, trace).thenApply(ExplainResult::new);
+    }
+
+    /**
+     * The count of {@link CountEngine#count}, on the reactive streams driver.
+     */
+    private static CompletableFuture<Long> count(MongoCollection<Document> mongoCollection, Bson filter,
+                                                 QueryOptions options, Executor executor, QueryTrace trace) {
+        BsonDocument bsonFilter = filter.toBsonDocument(BsonDocument.class, mongoCollection.getCodecRegistry());
+        if (CountEngine.isEstimated(bsonFilter)) {
+            return first(mongoCollection.estimatedDocumentCount(options.toEstimatedCountOptions()), executor, trace);
+        }
+        CountEngine.Key key = CountEngine.key(mongoCollection.getNamespace().getFullName(),
+                mongoCollection.getReadPreference(), bsonFilter);
+        Long count = CountEngine.getIfPresent(key, options);
+        if (count != null) {
+            return CompletableFuture.completedFuture(count);
+        }
+        return getHintKeys(mongoCollection, options.getHint())
+                .thenCompose(hintKeys -> first(mongoCollection.countDocuments(bsonFilter, options.toCountOptions(hintKeys)), executor, trace))
+                .thenApply(result -> {
+                    CountEngine.put(key, result);
+                    return result;
+                });
+    }
+
+    /**
+     * The rows of a select, read from the server as the subscriber requests them. Nothing is run before a subscriber
+     * subscribes, cancelling the subscription closes the cursor. Every subscription has its own {@link QueryTrace},
+     * {@link QueryTrace#fork(QueryTrace) forked} from the trace of this thread when there is one, from the moment it
+     * subscribes until it completes, fails or is cancelled.
+     *
+     * @param mongoDatabase  the database on the reactive streams client
+     * @param queryConverter the select
+     * @return the rows, shaped like the rows of {@link ResultUtils#iterate}
+     */
+    public static Publisher<Map> stream(MongoDatabase mongoDatabase, QueryConverter queryConverter) {
+        MongoDBQueryHolder mongoDBQueryHolder = queryConverter.getMongoQuery();
+        if (!SQLCommandType.SELECT.equals(mongoDBQueryHolder.getSqlCommandType()) || mongoDBQueryHolder.isCountAll()
+                || queryConverter.isExplain()) {
+            throw new IllegalArgumentException("only the rows of a select can be streamed");
+        }
+        MongoCollection<Document> mongoCollection = getCollection(mongoDatabase, mongoDBQueryHolder);
+        // every subscriber runs the query again and gets its own trace, which starts when it subscribes
+        QueryTrace statement = QueryTrace.current();
+        if (statement != null) {
+            statement.handOver();
+        }
+        return subscriber -> {
+            // the rows are read on the threads of the driver
+            QueryTrace trace = QueryTrace.fork(statement).setQuery(queryConverter).detachStream();
+            long start = System.nanoTime();
+            publish(mongoCollection, queryConverter).whenComplete((publisher, e) -> {
+                if (e != null) {
+                    trace.close();
+                    subscriber.onSubscribe(EmptySubscription.INSTANCE);
+                    subscriber.onError(e);
+                } else {
+                    new MappingPublisher<>(publisher, toRow(queryConverter), trace, start).subscribe(subscriber);
+                }
+            });
+        };
+    }
+
+    private static MongoCollection<Document> getCollection(MongoDatabase mongoDatabase, MongoDBQueryHolder mongoDBQueryHolder) {
+        MongoCollection<Document> mongoCollection = mongoDatabase.getCollection(mongoDBQueryHolder.getCollection());
+        QueryOptions options = mongoDBQueryHolder.getOptions();
+        return options.getReadPreference() != null ? mongoCollection.withReadPreference(options.getReadPreference()) : mongoCollection;
+    }
+
+    private static Bson getFilter(QueryConverter queryConverter) {
+        EncodedQuery encoded = queryConverter.getEncodedQuery();
+        return encoded != null ? encoded.getFilter() : queryConverter.getMongoQuery().getQuery();
+    }
+
+    /**
+     * @return the publisher of the documents or distinct values of a select, once the index of the hint is known
+     */
+    private static CompletableFuture<Publisher<?>> publish(MongoCollection<Document> mongoCollection, QueryConverter queryConverter) {
+        MongoDBQueryHolder mongoDBQueryHolder = queryConverter.getMongoQuery();
+        QueryOptions options = mongoDBQueryHolder.getOptions();
+        EncodedQuery encoded = queryConverter.getEncodedQuery();
+        Bson filter = encoded != null ? encoded.getFilter() : mongoDBQueryHolder.getQuery();
+        Bson projection = encoded != null ? encoded.getProjection() : mongoDBQueryHolder.getProjection();
+        Bson sort = encoded != null ? encoded.getSort() : mongoDBQueryHolder.getSort();
+        if (mongoDBQueryHolder.isDistinct()) {
+            DistinctPublisher<String> distinct = mongoCollection.distinct(queryConverter.getDistinctFieldName(mongoDBQueryHolder), filter, String.class);
+            if (options.getBatchSize() != null) {
+                distinct.batchSize(options.getBatchSize());
+            }
+            if (options.getMaxTimeMS() != null) {
+                distinct.maxTime(options.getMaxTimeMS(), TimeUnit.MILLISECONDS);
+            }
+            return CompletableFuture.completedFuture(distinct);
+        }
+        return getHintKeys(mongoCollection, options.getHint()).thenApply(hintKeys -> {
+            if (mongoDBQueryHolder.getGroupBys().size() > 0) {
+                AggregatePublisher<Document> aggregate = mongoCollection.aggregate(queryConverter.getGroupPipeline());
+                if (options.getAggregationAllowDiskUse() != null) {
+                    aggregate.allowDiskUse(options.getAggregationAllowDiskUse());
+                }
+                if (options.getAggregationBatchSize() != null) {
+                    aggregate.batchSize(options.getAggregationBatchSize());
+                }
+                if (options.getMaxTimeMS() != null) {
+                    aggregate.maxTime(options.getMaxTimeMS(), TimeUnit.MILLISECONDS);
+                }
+                if (hintKeys != null) {
+                    aggregate.hint(hintKeys);
+                }
+                return aggregate;
+            }
+            FindPublisher<Document> find = mongoCollection.find(filter).projection(projection);
+            if (mongoDBQueryHolder.getSort() != null && mongoDBQueryHolder.getSort().size() > 0) {
+                find.sort(sort);
+            }
+            if (mongoDBQueryHolder.getLimit() != -1) {
+                find.limit((int) mongoDBQueryHolder.getLimit());
+            }
+            if (mongoDBQueryHolder.getOffset() != -1) {
+                find.skip((int) mongoDBQueryHolder.getOffset());
+            }
+            if (options.getBatchSize() != null) {
+                find.batchSize(options.getBatchSize());
+            }
+            if (options.getMaxTimeMS() != null) {
+                find.maxTime(options.getMaxTimeMS(), TimeUnit.MILLISECONDS);
+            }
+            if (hintKeys != null) {
+                find.hint(hintKeys);
+            }
+            return find;
+        });
+    }
+
+    /**
+     * @return the keys of the index named by the hint, listing the indexes of the collection when they are not cached
+     */
+    private static CompletableFuture<Document> getHintKeys(MongoCollection<Document> mongoCollection, String hint) {
+        if (hint == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        String namespace = mongoCollection.getNamespace().getFullName();
+        List<Document> indexes = IndexCache.getIfPresent(namespace);
+        if (indexes != null) {
+            return CompletableFuture.completedFuture(IndexCache.getKeys(namespace, indexes, hint));
+        }
+        return collect(mongoCollection.listIndexes(), SAME_THREAD, null).thenApply(listed -> {
+            IndexCache.put(namespace, listed);
+            return IndexCache.getKeys(namespace, listed, hint);
+        });
+    }
+
+    private static List<Map> toRows(QueryConverter queryConverter, List<?> results, QueryTrace trace) {
+        long start = System.nanoTime();
+        Function<Object, Map> toRow = toRow(queryConverter);
+        List<Map> rows = new ArrayList<>(results.size());
+        for (Object result : results) {
+            rows.add(toRow.apply(result));
+        }
+        QueryTrace.record(trace, QueryTrace.Stage.MAP, start);
+        return rows;
+    }
+
+    private static Function<Object, Map> toRow(QueryConverter queryConverter) {
+        MongoDBQueryHolder mongoDBQueryHolder = queryConverter.getMongoQuery();
+        if (mongoDBQueryHolder.isDistinct()) {
+            String clumon = mongoDBQueryHolder.getProjection().keySet().toArray()[0].toString();
+            return value -> ResultUtils.distinctRow(value, clumon);
+        } else if (mongoDBQueryHolder.getGroupBys().size() > 0 && !ResultUtils.isShaped(mongoDBQueryHolder)) {
+            return doc -> ResultUtils.groupRow((Document) doc, mongoDBQueryHolder.getProjection());
+        }
+        return doc -> (Map) doc;
+    }
+
+    private static <T> CompletableFuture<T> first(Publisher<T> publisher, Executor executor, QueryTrace trace) {
+        return collect(publisher, executor, trace).thenApply(results -> results.isEmpty() ? null : results.get(0));
+    }
+
+    /**
+     * @param trace gets the time to the first result as the round trip and the time to the last as draining the
+     *              cursor, null to record nothing
+     */
+    private static <T> CompletableFuture<List<T>> collect(Publisher<T> publisher, Executor executor, QueryTrace trace) {
+        CollectingSubscriber<T> subscriber = new CollectingSubscriber<>(executor, trace);
+        publisher.subscribe(subscriber);
+        return subscriber.future;
+    }
+
+    private static class CollectingSubscriber<T> implements Subscriber<T> {
+        private final CompletableFuture<List<T>> future = new CompletableFuture<>();
+        private final List<T> results = new ArrayList<>();
+        private final Executor executor;
+        private final QueryTrace trace;
+        private long start;
+
+        private CollectingSubscriber(Executor executor, QueryTrace trace) {
+            this.executor = executor;
+            this.trace = trace;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            start = System.nanoTime();
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(T t) {
+            if (results.isEmpty()) {
+                start = QueryTrace.record(trace, QueryTrace.Stage.ROUND_TRIP, start);
+            }
+            results.add(t);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            executor.execute(() -> future.completeExceptionally(throwable));
+        }
+
+        @Override
+        public void onComplete() {
+            QueryTrace.record(trace, results.isEmpty() ? QueryTrace.Stage.ROUND_TRIP : QueryTrace.Stage.DRAIN, start);
+            executor.execute(() -> future.complete(results));
+        }
+    }
+
+    /**
+     * Maps the results of a publisher, and ends the {@link QueryTrace} of its query when the subscription completes,
+     * fails or is cancelled.
+     */
+    private static class MappingPublisher<T, R> implements Publisher<R> {
+        private final Publisher<T> source;
+        private final Function<? super T, ? extends R> mapper;
+        private final QueryTrace trace;
+        private final long start;
+
+        private MappingPublisher(Publisher<T> source, Function<? super T, ? extends R> mapper, QueryTrace trace, long start) {
+            this.source = source;
+            this.mapper = mapper;
+            this.trace = trace;
+            this.start = start;
+        }
+
+        @Override
+        public void subscribe(Subscriber<? super R> subscriber) {
+            source.subscribe(new Subscriber<T>() {
+                private final AtomicBoolean ended = new AtomicBoolean();
+                private Subscription subscription;
+                private boolean done;
+                private final AtomicLong demand = new AtomicLong();
+                private long rows;
+                private volatile long mark = start;
+
+                @Override
+                public void onSubscribe(Subscription subscription) {
+                    this.subscription = subscription;
+                    subscriber.onSubscribe(new Subscription() {
+                        @Override
+                        public void request(long n) {
+                            // the time the subscriber took to ask for more rows is not query time
+                            if (demand.getAndUpdate(d -> d + n < 0 ? Long.MAX_VALUE : d + n) == 0 && rows > 0) {
+                                mark = System.nanoTime();
+                            }
+                            subscription.request(n);
+                        }
+
+                        @Override
+                        public void cancel() {
+                            subscription.cancel();
+                            end();
+                        }
+                    });
+                }
+
+                @Override
+                public void onNext(T t) {
+                    if (done) {
+                        return;
+                    }
+                    mark = QueryTrace.record(trace, rows == 0 ? QueryTrace.Stage.ROUND_TRIP : QueryTrace.Stage.DRAIN, mark);
+                    R mapped;
+                    try {
+                        mapped = mapper.apply(t);
+                    } catch (RuntimeException e) {
+                        done = true;
+                        subscription.cancel();
+                        end();
+                        subscriber.onError(e);
+                        return;
+                    }
+                    QueryTrace.record(trace, QueryTrace.Stage.MAP, mark);
+                    rows++;
+                    demand.getAndUpdate(d -> d == Long.MAX_VALUE ? d : d - 1);
+                    subscriber.onNext(mapped);
+                    mark = System.nanoTime();
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    if (!done) {
+                        done = true;
+                        end();
+                        subscriber.onError(throwable);
+                    }
+                }
+
+                @Override
+                public void onComplete() {
+                    if (!done) {
+                        done = true;
+                        QueryTrace.record(trace, rows == 0 ? QueryTrace.Stage.ROUND_TRIP : QueryTrace.Stage.DRAIN, mark);
+                        end();
+                        subscriber.onComplete();
+                    }
+                }
+
+                private void end() {
+                    if (ended.compareAndSet(false, true)) {
+                        trace.setRows(rows).close();
+                    }
+                }
+            });
+        }
+    }
+
+    private enum EmptySubscription implements Subscription {
+        INSTANCE;
+
+        @Override
+        public void request(long n) {
+        }
+
+        @Override
+        public void cancel() {
+        }
+    }
+}
@@ -4,18 +4,32 @@ import com.alibaba.fastjson.JSON;
 import com.github.vincentrussell.query.mongodb.sql.converter.jdbc.MongodbConnection;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoDatabase;
 import org.bson.Document;
+import org.calrissian.mango.collect.AbstractCloseableIterator;
+import org.calrissian.mango.collect.CloseableIterator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class ResultUtils {
+    /**
+     * fraction (0 to 1) of the statements that are not slow whose {@link QueryTrace} is logged at info level,
+     * at debug level every statement is logged
+     */
+    public static final String D_SHELL_LOG_SAMPLE_RATE = "shellLogSampleRate";
     static Logger logger = LoggerFactory.getLogger(ResultUtils.class);
 
     public static <T> T exec(MongodbConnection connection, String sql) throws ParseException, IOException {
@@ -23,67 +37,279 @@ public class ResultUtils {
     }
 
     public static <T> T exec(MongoDatabase mongoDatabase, String sql) throws ParseException, IOException {
-        QueryConverter queryConverter = new QueryConverter(sql);
-        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-        queryConverter.write(byteArrayOutputStream);
-        logger.info(byteArrayOutputStream.toString("UTF-8"));
-        MongoDBQueryHolder mongoDBQueryHolder = queryConverter.getMongoQuery();
-        SQLCommandType type = mongoDBQueryHolder.getSqlCommandType();
-        Object ret = null;
-        if (type.equals(SQLCommandType.INSERT) || type.equals(SQLCommandType.DELETE) || type.equals(SQLCommandType.UPDATE)) {
-            ret = queryConverter.run(mongoDatabase);
-        } else if (type.equals(SQLCommandType.SELECT)) {
-            ret = select(queryConverter, mongoDatabase);
-        } else {
+        return exec(mongoDatabase, QueryPlanCache.get(sql));
+    }
+
+    public static <T> T exec(MongoDatabase mongoDatabase, QueryConverter queryConverter) throws IOException {
+        try (QueryTrace trace = QueryTrace.start()) {
+            trace.setQuery(queryConverter);
+            MongoDBQueryHolder mongoDBQueryHolder = queryConverter.getMongoQuery();
+            SQLCommandType type = mongoDBQueryHolder.getSqlCommandType();
+            Object ret = null;
+            long start = System.nanoTime();
+            if (queryConverter.isExplain()) {
+                ret = Lists.newArrayList(queryConverter.explain(mongoDatabase).toRow());
+                QueryTrace.record(QueryTrace.Stage.ROUND_TRIP, start);
+            } else if (type.equals(SQLCommandType.INSERT) || type.equals(SQLCommandType.DELETE) || type.equals(SQLCommandType.UPDATE)) {
+                ret = queryConverter.run(mongoDatabase);
+                QueryTrace.record(QueryTrace.Stage.ROUND_TRIP, start);
+            } else if (type.equals(SQLCommandType.SELECT)) {
+                ret = select(queryConverter, mongoDatabase);
+            } else {
+            }
+            trace.setResult(ret);
+            return (T) ret;
         }
-        return (T) ret;
     }
 
     public static <T> T select(QueryConverter queryConverter, MongoDatabase mongoDatabase) {
         Object ret = null;
         MongoDBQueryHolder mongoDBQueryHolder = queryConverter.getMongoQuery();
         if (mongoDBQueryHolder.isDistinct()) {
-            QueryResultIterator<String> distinctIterable = queryConverter.run(mongoDatabase);
-            final List _ret = (List) Lists.newArrayList(distinctIterable);
-            List<Map> list = Lists.newArrayList();
+            List<String> values = drain(() -> queryConverter.run(mongoDatabase));
             final String clumon = mongoDBQueryHolder.getProjection().keySet().toArray()[0].toString();
-            for (int i = 0; i < _ret.size(); i++) {
-                final Object val = _ret.get(i);
-                list.add(new HashMap() {{
-                    put(clumon, val);
-                }});
-            }
-            ret = list;
+            long start = System.nanoTime();
+            ret = distinctRows(values, clumon);
+            QueryTrace.record(QueryTrace.Stage.MAP, start);
         } else if (mongoDBQueryHolder.isCountAll()) {
+            long start = System.nanoTime();
             ret = queryConverter.run(mongoDatabase);
+            QueryTrace.record(QueryTrace.Stage.ROUND_TRIP, start);
         } else if (mongoDBQueryHolder.getGroupBys().size() > 0) {
-            QueryResultIterator<Document> distinctIterable = queryConverter.run(mongoDatabase);
-            List<Document> results = Lists.newArrayList(distinctIterable);
-            List<Map> list = Lists.newArrayList();
-            if (results.size() > 0) {
-                if (Document.class.isInstance(results.get(0).get("_id"))) {
-                    for (int i = 0; i < results.size(); i++) {
-                        Document doc = results.get(i);
-                        Map val = (Map) doc.get("_id");
-                        val.put("count", doc.get("count"));
-                        list.add(val);
-                    }
-                } else {
-                    String cloumn = mongoDBQueryHolder.getProjection().get("_id").toString().replace("$", "");
-                    for (int i = 0; i < results.size(); i++) {
-                        Document doc = results.get(i);
-                        Map val = Maps.newHashMap();
-                        val.put(cloumn, doc.get("_id"));
-                        val.put("count", doc.get("count"));
-                        list.add(val);
-                    }
-                }
-            }
-            ret = list;
+            List<Document> groups = drain(() -> queryConverter.run(mongoDatabase));
+            long start = System.nanoTime();
+            ret = isShaped(mongoDBQueryHolder) ? groups : groupRows(groups, mongoDBQueryHolder.getProjection());
+            QueryTrace.record(QueryTrace.Stage.MAP, start);
         } else {
-            QueryResultIterator<Document> findIterable = queryConverter.run(mongoDatabase);
-            ret = Lists.newArrayList(findIterable);
+            ret = drain(() -> queryConverter.run(mongoDatabase));
         }
         return (T) ret;
     }
+
+    /**
+     * Read every result of a query, the query is sent when its cursor is opened.
+     *
+     * @param run opens the cursor of the query
+     * @return the results
+     */
+    private static <T> List<T> drain(Supplier<QueryResultIterator<T>> run) {
+        long start = System.nanoTime();
+        QueryResultIterator<T> iterator = run.get();
+        start = QueryTrace.record(QueryTrace.Stage.ROUND_TRIP, start);
+        List<T> results = Lists.newArrayList(iterator);
+        QueryTrace.record(QueryTrace.Stage.DRAIN, start);
+        return results;
+    }
+
+    /**
+     * @param queryConverter a select of documents
+     * @param mongoDatabase  the database to run the select against, its codec registry has a codec for the class
+     * @param documentClass  the class the documents are decoded into
+     * @return the documents
+     */
+    public static <T> List<T> select(QueryConverter queryConverter, MongoDatabase mongoDatabase, Class<T> documentClass) {
+        try (QueryTrace trace = QueryTrace.start()) {
+            trace.setQuery(queryConverter);
+            List<T> results = drain(() -> queryConverter.run(mongoDatabase, documentClass));
+            trace.setResult(results);
+            return results;
+        }
+    }
+
+    /**
+     * Run a select and hand out its rows while the cursor is read, instead of reading them all into a list first.
+     * Only one batch of the cursor is held in memory. The cursor is closed when the last row has been read or when
+     * the iterator is closed, so close it when not every row is read. The {@link QueryTrace} of the select ends then
+     * too, with the time spent reading the cursor and mapping the rows.
+     *
+     * @param queryConverter the select
+     * @param mongoDatabase  the database to run the select against
+     * @return the rows, shaped like the rows of {@link #select(QueryConverter, MongoDatabase)}
+     */
+    public static CloseableIterator<Map> iterate(QueryConverter queryConverter, MongoDatabase mongoDatabase) {
+        final MongoDBQueryHolder mongoDBQueryHolder = queryConverter.getMongoQuery();
+        if (!SQLCommandType.SELECT.equals(mongoDBQueryHolder.getSqlCommandType()) || mongoDBQueryHolder.isCountAll()
+                || queryConverter.isExplain()) {
+            throw new IllegalArgumentException("only the rows of a select can be streamed");
+        }
+        QueryTrace trace = QueryTrace.start().setQuery(queryConverter);
+        try {
+            long start = System.nanoTime();
+            if (mongoDBQueryHolder.isDistinct()) {
+                QueryResultIterator<String> distinctIterable = queryConverter.run(mongoDatabase);
+                QueryTrace.record(QueryTrace.Stage.ROUND_TRIP, start);
+                final String clumon = mongoDBQueryHolder.getProjection().keySet().toArray()[0].toString();
+                return new TracedIterator<>(distinctIterable, value -> distinctRow(value, clumon), trace.detachStream());
+            } else if (mongoDBQueryHolder.getGroupBys().size() > 0 && !isShaped(mongoDBQueryHolder)) {
+                QueryResultIterator<Document> groupIterable = queryConverter.run(mongoDatabase);
+                QueryTrace.record(QueryTrace.Stage.ROUND_TRIP, start);
+                return new TracedIterator<>(groupIterable, doc -> groupRow(doc, mongoDBQueryHolder.getProjection()), trace.detachStream());
+            }
+            QueryResultIterator<Document> iterable = queryConverter.run(mongoDatabase);
+            QueryTrace.record(QueryTrace.Stage.ROUND_TRIP, start);
+            return new TracedIterator<>(iterable, doc -> doc, trace.detachStream());
+        } catch (RuntimeException e) {
+            trace.close();
+            throw e;
+        }
+    }
+
+    /**
+     * The rows of a cursor, which ends the {@link QueryTrace} of its query when the last row has been read or when
+     * it is closed.
+     */
+    private static class TracedIterator<T> extends AbstractCloseableIterator<Map> {
+        private final QueryResultIterator<T> cursor;
+        private final Function<? super T, ? extends Map> toRow;
+        private final QueryTrace trace;
+        private long rows;
+        private boolean ended;
+
+        private TracedIterator(QueryResultIterator<T> cursor, Function<? super T, ? extends Map> toRow, QueryTrace trace) {
+            this.cursor = cursor;
+            this.toRow = toRow;
+            this.trace = trace;
+        }
+
+        @Override
+        protected Map computeNext() {
+            long start = System.nanoTime();
+            boolean hasNext;
+            T next = null;
+            try {
+                hasNext = cursor.hasNext();
+                if (hasNext) {
+                    next = cursor.next();
+                }
+                start = QueryTrace.record(trace, QueryTrace.Stage.DRAIN, start);
+            } catch (RuntimeException e) {
+                end();
+                throw e;
+            }
+            if (!hasNext) {
+                end();
+                return endOfData();
+            }
+            Map row = toRow.apply(next);
+            QueryTrace.record(trace, QueryTrace.Stage.MAP, start);
+            rows++;
+            return row;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                cursor.close();
+            } finally {
+                end();
+            }
+        }
+
+        private void end() {
+            if (!ended) {
+                ended = true;
+                trace.setRows(rows).close();
+            }
+        }
+    }
+
+    /**
+     * Whether a select or a count has a matching document, reading one _id instead of counting, see
+     * {@link CountEngine#exists}.
+     *
+     * @param queryConverter a select or a count
+     * @param mongoDatabase  the database to run it against
+     * @return true when a document matches the where clause
+     */
+    public static boolean exists(QueryConverter queryConverter, MongoDatabase mongoDatabase) {
+        MongoDBQueryHolder mongoDBQueryHolder = queryConverter.getMongoQuery();
+        if (!SQLCommandType.SELECT.equals(mongoDBQueryHolder.getSqlCommandType())) {
+            throw new IllegalArgumentException("only a select can be probed");
+        }
+        try (QueryTrace trace = QueryTrace.start()) {
+            trace.setQuery(queryConverter);
+            MongoCollection<Document> mongoCollection = mongoDBQueryHolder.getOptions()
+                    .apply(mongoDatabase.getCollection(mongoDBQueryHolder.getCollection()));
+            long start = System.nanoTime();
+            boolean exists = CountEngine.exists(mongoCollection, mongoDBQueryHolder.getQuery());
+            QueryTrace.record(QueryTrace.Stage.ROUND_TRIP, start);
+            return exists;
+        }
+    }
+
+    /**
+     * The rows of {@link #iterate(QueryConverter, MongoDatabase)} as a sequential stream, closing the stream closes
+     * the cursor.
+     *
+     * @param queryConverter the select
+     * @param mongoDatabase  the database to run the select against
+     * @return the rows, to be closed when not every row is read
+     */
+    public static Stream<Map> stream(QueryConverter queryConverter, MongoDatabase mongoDatabase) {
+        final CloseableIterator<Map> iterator = iterate(queryConverter, mongoDatabase);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() -> {
+                    try {
+                        iterator.close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
+    /**
+     * @param values the distinct values
+     * @param clumon the distinct column
+     * @return one row per value
+     */
+    public static List<Map> distinctRows(List values, final String clumon) {
+        List<Map> list = Lists.newArrayList();
+        for (int i = 0; i < values.size(); i++) {
+            list.add(distinctRow(values.get(i), clumon));
+        }
+        return list;
+    }
+
+    static Map distinctRow(Object val, String clumon) {
+        Map row = new HashMap(2);
+        row.put(clumon, val);
+        return row;
+    }
+
+    /**
+     * @param mongoDBQueryHolder a group by query
+     * @return true when the $project stage of the query makes the rows on the server, see
+     * {@link MongoDBQueryHolder#getAliseProjection()}
+     */
+    static boolean isShaped(MongoDBQueryHolder mongoDBQueryHolder) {
+        return mongoDBQueryHolder.getAliseProjection() != null && mongoDBQueryHolder.getAliseProjection().size() > 0;
+    }
+
+    /**
+     * Shape the documents of a $group stage without a $project stage.
+     *
+     * @param results    the documents returned by the $group stage
+     * @param projection the $group stage
+     * @return one row per group with the group by columns and the count
+     */
+    public static List<Map> groupRows(List<Document> results, Document projection) {
+        List<Map> list = Lists.newArrayList();
+        for (int i = 0; i < results.size(); i++) {
+            list.add(groupRow(results.get(i), projection));
+        }
+        return list;
+    }
+
+    static Map groupRow(Document doc, Document projection) {
+        if (Document.class.isInstance(doc.get("_id"))) {
+            Map val = (Map) doc.get("_id");
+            val.put("count", doc.get("count"));
+            return val;
+        }
+        String cloumn = projection.get("_id").toString().replace("$", "");
+        Map val = Maps.newHashMap();
+        val.put(cloumn, doc.get("_id"));
+        val.put("count", doc.get("count"));
+        return val;
+    }
 }
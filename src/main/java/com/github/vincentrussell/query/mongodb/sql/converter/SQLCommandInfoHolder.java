@@ -31,9 +31,24 @@ public class SQLCommandInfoHolder {
     private final List<Join> joins;
     private final List<String> groupBys;
     private final List<OrderByElement> orderByElements;
+    private final List<String> timeFunctionItems;
+    private final String explainVerbosity;
 
     public SQLCommandInfoHolder(SQLCommandType sqlCommandType, Expression whereClause,
                                 boolean isDistinct, boolean isCountAll, String table, long limit, long offset, List<SelectItem> selectItems, List<Join> joins, List<String> groupBys, List<OrderByElement> orderByElements, Document items) {
+        this(sqlCommandType, whereClause, isDistinct, isCountAll, table, limit, offset, selectItems, joins, groupBys,
+                orderByElements, items, new ArrayList<String>());
+    }
+
+    public SQLCommandInfoHolder(SQLCommandType sqlCommandType, Expression whereClause,
+                                boolean isDistinct, boolean isCountAll, String table, long limit, long offset, List<SelectItem> selectItems, List<Join> joins, List<String> groupBys, List<OrderByElement> orderByElements, Document items, List<String> timeFunctionItems) {
+        this(sqlCommandType, whereClause, isDistinct, isCountAll, table, limit, offset, selectItems, joins, groupBys,
+                orderByElements, items, timeFunctionItems, null);
+    }
+
+    public SQLCommandInfoHolder(SQLCommandType sqlCommandType, Expression whereClause,
+                                boolean isDistinct, boolean isCountAll, String table, long limit, long offset, List<SelectItem> selectItems, List<Join> joins, List<String> groupBys, List<OrderByElement> orderByElements, Document items, List<String> timeFunctionItems,
+                                String explainVerbosity) {
         this.sqlCommandType = sqlCommandType;
         this.whereClause = whereClause;
         this.isDistinct = isDistinct;
@@ -46,6 +61,8 @@ public class SQLCommandInfoHolder {
         this.groupBys = groupBys;
         this.orderByElements = orderByElements;
         this.items = items;
+        this.timeFunctionItems = timeFunctionItems;
+        this.explainVerbosity = explainVerbosity;
     }
 
     public boolean isDistinct() {
@@ -96,6 +113,22 @@ public class SQLCommandInfoHolder {
         return sqlCommandType;
     }
 
+    /**
+     * @return the insert/update columns whose value comes from a time function such as now(),
+     * these have to be evaluated again every time the statement is executed.
+     */
+    public List<String> getTimeFunctionItems() {
+        return timeFunctionItems;
+    }
+
+    /**
+     * @return {@link ExplainResult#QUERY_PLANNER} for an <code>EXPLAIN</code> statement,
+     * {@link ExplainResult#EXECUTION_STATS} for an <code>EXPLAIN ANALYZE</code> statement, null for any other statement
+     */
+    public String getExplainVerbosity() {
+        return explainVerbosity;
+    }
+
     public static class Builder {
         private final FieldType defaultFieldType;
         private final Map<String, FieldType> fieldNameToFieldTypeMapping;
@@ -111,6 +144,8 @@ public class SQLCommandInfoHolder {
         private List<Join> joins = new ArrayList<>();
         private List<String> groupBys = new ArrayList<>();
         private List<OrderByElement> orderByElements1 = new ArrayList<>();
+        private List<String> timeFunctionItems = new ArrayList<>();
+        private String explainVerbosity;
 
 
         private Builder(FieldType defaultFieldType, Map<String, FieldType> fieldNameToFieldTypeMapping) {
@@ -119,6 +154,15 @@ public class SQLCommandInfoHolder {
         }
 
         public Builder setJSqlParser(CCJSqlParser jSqlParser) throws com.github.vincentrussell.query.mongodb.sql.converter.ParseException, ParseException {
+            // jsqlparser has no explain statement, the words before the statement are read here
+            if ("explain".equalsIgnoreCase(jSqlParser.getToken(1).image)) {
+                jSqlParser.getNextToken();
+                explainVerbosity = ExplainResult.QUERY_PLANNER;
+                if ("analyze".equalsIgnoreCase(jSqlParser.getToken(1).image)) {
+                    jSqlParser.getNextToken();
+                    explainVerbosity = ExplainResult.EXECUTION_STATS;
+                }
+            }
             final Statement statement = jSqlParser.Statement();
             if (Select.class.isAssignableFrom(statement.getClass())) {
                 sqlCommandType = SQLCommandType.SELECT;
@@ -151,7 +195,11 @@ public class SQLCommandInfoHolder {
                 List<Column> columns = insert.getColumns();
                 List<Expression> expressions = ((ExpressionList) insert.getItemsList()).getExpressions();
                 for (int i = 0; i < columns.size(); i++) {
-                    map.put(columns.get(i).getColumnName().replaceAll("`", ""), SqlUtils.getValue(expressions.get(i)));
+                    String column = columns.get(i).getColumnName().replaceAll("`", "");
+                    map.put(column, SqlUtils.getValue(expressions.get(i)));
+                    if (SqlUtils.isTimeFunction(expressions.get(i))) {
+                        timeFunctionItems.add(column);
+                    }
                 }
                 items = new Document(map);
             } else if (Update.class.isAssignableFrom(statement.getClass())) {
@@ -162,7 +210,11 @@ public class SQLCommandInfoHolder {
                 List<Column> columns = update.getColumns();
                 List<Expression> expressions = update.getExpressions();
                 for (int i = 0; i < columns.size(); i++) {
-                    map.put(columns.get(i).getColumnName().replaceAll("`", ""), SqlUtils.getValue(expressions.get(i)));
+                    String column = columns.get(i).getColumnName().replaceAll("`", "");
+                    map.put(column, SqlUtils.getValue(expressions.get(i)));
+                    if (SqlUtils.isTimeFunction(expressions.get(i))) {
+                        timeFunctionItems.add(column);
+                    }
                 }
                 items = new Document(map);
                 whereClause = update.getWhere();
@@ -172,7 +224,8 @@ public class SQLCommandInfoHolder {
 
         public SQLCommandInfoHolder build() {
             return new SQLCommandInfoHolder(sqlCommandType, whereClause,
-                    isDistinct, isCountAll, table, limit, offset, selectItems, joins, groupBys, orderByElements1, items);
+                    isDistinct, isCountAll, table, limit, offset, selectItems, joins, groupBys, orderByElements1, items,
+                    timeFunctionItems, explainVerbosity);
         }
 
         public static Builder create(FieldType defaultFieldType, Map<String, FieldType> fieldNameToFieldTypeMapping) {
@@ -0,0 +1,168 @@
+package com.github.vincentrussell.query.mongodb.sql.converter;
+
+import org.bson.types.Decimal128;
+import org.bson.types.ObjectId;
+
+import java.lang.reflect.Array;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Writes bson values as indented json for the mongo shell statements built by {@link QueryConverter#write},
+ * straight from the documents, dates are written as ISODate(..) and object ids as ObjectId(..).
+ */
+public class ShellJsonWriter {
+    private static final String INDENT = "  ";
+    private static final DateTimeFormatter ISO_DATE = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'")
+            .withZone(ZoneOffset.UTC);
+
+    private final StringBuilder builder;
+
+    public ShellJsonWriter(StringBuilder builder) {
+        this.builder = builder;
+    }
+
+    public ShellJsonWriter write(String text) {
+        builder.append(text);
+        return this;
+    }
+
+    public ShellJsonWriter writeJson(Object value) {
+        writeValue(value, 0);
+        return this;
+    }
+
+    private void writeValue(Object value, int level) {
+        if (value == null) {
+            builder.append("null");
+        } else if (value instanceof Map) {
+            writeMap((Map<?, ?>) value, level);
+        } else if (value instanceof Iterable) {
+            writeIterator(((Iterable<?>) value).iterator(), level);
+        } else if (value.getClass().isArray()) {
+            writeIterator(new ArrayIterator(value), level);
+        } else if (value instanceof String) {
+            writeString((String) value);
+        } else if (value instanceof Number && !(value instanceof Decimal128) || value instanceof Boolean) {
+            builder.append(value);
+        } else if (value instanceof Date) {
+            builder.append("ISODate(\"").append(ISO_DATE.format(((Date) value).toInstant())).append("\")");
+        } else if (value instanceof ObjectId) {
+            builder.append("ObjectId(\"").append(((ObjectId) value).toHexString()).append("\")");
+        } else if (value instanceof Decimal128) {
+            builder.append("NumberDecimal(\"").append(value).append("\")");
+        } else if (value instanceof BindParameter) {
+            builder.append(value);
+        } else {
+            writeString(value.toString());
+        }
+    }
+
+    private void writeMap(Map<?, ?> map, int level) {
+        if (map.isEmpty()) {
+            builder.append("{}");
+            return;
+        }
+        builder.append("{");
+        boolean first = true;
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            builder.append(first ? "\n" : ",\n");
+            first = false;
+            indent(level + 1);
+            writeString(String.valueOf(entry.getKey()));
+            builder.append(": ");
+            writeValue(entry.getValue(), level + 1);
+        }
+        builder.append("\n");
+        indent(level);
+        builder.append("}");
+    }
+
+    private void writeIterator(Iterator<?> iterator, int level) {
+        if (!iterator.hasNext()) {
+            builder.append("[]");
+            return;
+        }
+        builder.append("[");
+        boolean first = true;
+        while (iterator.hasNext()) {
+            builder.append(first ? "\n" : ",\n");
+            first = false;
+            indent(level + 1);
+            writeValue(iterator.next(), level + 1);
+        }
+        builder.append("\n");
+        indent(level);
+        builder.append("]");
+    }
+
+    private void writeString(String value) {
+        builder.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    builder.append("\\\"");
+                    break;
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                case '\b':
+                    builder.append("\\b");
+                    break;
+                case '\f':
+                    builder.append("\\f");
+                    break;
+                default:
+                    if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                        builder.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        builder.append(c);
+                    }
+            }
+        }
+        builder.append('"');
+    }
+
+    @Override
+    public String toString() {
+        return builder.toString();
+    }
+
+    private void indent(int level) {
+        for (int i = 0; i < level; i++) {
+            builder.append(INDENT);
+        }
+    }
+
+    private static class ArrayIterator implements Iterator<Object> {
+        private final Object array;
+        private int index = 0;
+
+        private ArrayIterator(Object array) {
+            this.array = array;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return index < Array.getLength(array);
+        }
+
+        @Override
+        public Object next() {
+            return Array.get(array, index++);
+        }
+    }
+}
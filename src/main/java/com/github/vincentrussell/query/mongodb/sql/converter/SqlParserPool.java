@@ -0,0 +1,91 @@
+package com.github.vincentrussell.query.mongodb.sql.converter;
+
+import net.sf.jsqlparser.parser.CCJSqlParser;
+import net.sf.jsqlparser.parser.Provider;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A few {@link CCJSqlParser}s shared by every thread, reset with {@link CCJSqlParser#ReInit(Provider)} for every
+ * statement so their char buffers and token managers are not allocated again. The pool is not per thread, so the
+ * virtual threads of {@link qeorm.MongoFanOut} reuse the parsers too. A thread that finds the pool empty parses with
+ * a new parser, which is kept when the pool has room for it.
+ * <p>
+ * The buffers of a parser grow with the statements it reads. A parser that read a statement longer than
+ * {@link #MAX_POOLED_CHARS} is dropped, so one very large statement does not keep its buffers reachable.
+ * <p>
+ * ReInit does not reset the counter that numbers the ? parameters, the translation does not use their index.
+ */
+class SqlParserPool {
+    static final int MAX_POOLED_CHARS = 16 * 1024;
+    private static final BlockingQueue<CCJSqlParser> PARSERS =
+            new ArrayBlockingQueue<>(Math.max(2, Runtime.getRuntime().availableProcessors() * 2));
+
+    private SqlParserPool() {
+    }
+
+    /**
+     * @param provider the sql statement
+     * @return a parser of the pool reset to read the provider, a new parser when the pool is empty
+     */
+    static PooledParser acquire(Provider provider) {
+        CountingProvider counting = new CountingProvider(provider);
+        CCJSqlParser parser = PARSERS.poll();
+        if (parser == null) {
+            return new PooledParser(new CCJSqlParser(counting), counting);
+        }
+        parser.ReInit(counting);
+        return new PooledParser(parser, counting);
+    }
+
+    /**
+     * A parser taken from the pool, with the number of chars it has read.
+     */
+    static class PooledParser {
+        private final CCJSqlParser parser;
+        private final CountingProvider provider;
+
+        private PooledParser(CCJSqlParser parser, CountingProvider provider) {
+            this.parser = parser;
+            this.provider = provider;
+        }
+
+        CCJSqlParser getParser() {
+            return parser;
+        }
+
+        /**
+         * Give the parser back when it is done reading its statement, it is dropped after a statement that was too long.
+         */
+        void release() {
+            if (provider.chars <= MAX_POOLED_CHARS) {
+                PARSERS.offer(parser);
+            }
+        }
+    }
+
+    private static class CountingProvider implements Provider {
+        private final Provider provider;
+        private long chars;
+
+        private CountingProvider(Provider provider) {
+            this.provider = provider;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int len) throws IOException {
+            int read = provider.read(buffer, offset, len);
+            if (read > 0) {
+                chars += read;
+            }
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            provider.close();
+        }
+    }
+}
@@ -1,9 +1,10 @@
 package com.github.vincentrussell.query.mongodb.sql.converter;
 
-import com.github.vincentrussell.query.mongodb.sql.converter.util.DateFunction;
+import com.github.vincentrussell.query.mongodb.sql.converter.util.LiteralClassifier;
 import com.github.vincentrussell.query.mongodb.sql.converter.util.ObjectIdFunction;
 import com.github.vincentrussell.query.mongodb.sql.converter.util.RegexFunction;
 import com.github.vincentrussell.query.mongodb.sql.converter.util.SqlUtils;
+import com.google.common.base.MoreObjects;
 import com.google.common.collect.Lists;
 import net.sf.jsqlparser.expression.*;
 import net.sf.jsqlparser.expression.operators.conditional.AndExpression;
@@ -30,7 +31,6 @@ public class WhereCauseProcessor {
     public Object parseExpression(Document query, Expression incomingExpression, Expression otherSide) throws ParseException {
         if (ComparisonOperator.class.isInstance(incomingExpression)) {
             RegexFunction regexFunction = SqlUtils.isRegexFunction(incomingExpression);
-            DateFunction dateFunction = SqlUtils.isDateFunction(incomingExpression);
             ObjectIdFunction objectIdFunction = SqlUtils.isObjectIdFunction(this, incomingExpression);
             if (regexFunction != null) {
                 Document regexDocument = new Document("$regex", regexFunction.getRegex());
@@ -38,9 +38,6 @@ public class WhereCauseProcessor {
                     regexDocument.append("$options", regexFunction.getOptions());
                 }
                 query.put(regexFunction.getColumn(), regexDocument);
-            } else if (dateFunction!=null) {
-                query.put(dateFunction.getColumn(),
-                    new Document(dateFunction.getComparisonExpression(), dateFunction.getDate()));
             } else if (objectIdFunction != null) {
                 query.put(objectIdFunction.getColumn(), objectIdFunction.toDocument());
             } else if (EqualsTo.class.isInstance(incomingExpression)) {
@@ -48,10 +45,10 @@ public class WhereCauseProcessor {
                 final Expression rightExpression = ((EqualsTo) incomingExpression).getRightExpression();
                 if (Function.class.isInstance(leftExpression)) {
                     query.put("$eq", new Document("arg1", parseExpression(new Document(), leftExpression, rightExpression))
-                    .append("arg2", parseExpression(new Document(), rightExpression, leftExpression)));
+                    .append("arg2", parseValue(rightExpression, leftExpression)));
                 } else {
                     query.put(parseExpression(new Document(), leftExpression, rightExpression).toString(),
-                        parseExpression(new Document(), rightExpression, leftExpression));
+                        parseEqualityValue(rightExpression, leftExpression));
                 }
             } else if (NotEqualsTo.class.isInstance(incomingExpression)) {
                 final Expression leftExpression = ((NotEqualsTo) incomingExpression).getLeftExpression();
@@ -59,28 +56,28 @@ public class WhereCauseProcessor {
 
                 if (Function.class.isInstance(leftExpression)) {
                     query.put("$ne", new Document("arg1", parseExpression(new Document(), leftExpression, rightExpression))
-                        .append("arg2", parseExpression(new Document(), rightExpression, leftExpression)));
+                        .append("arg2", parseValue(rightExpression, leftExpression)));
                 } else {
-                    query.put(SqlUtils.getStringValue(leftExpression), new Document("$ne", parseExpression(new Document(), rightExpression, leftExpression)));
+                    query.put(SqlUtils.getStringValue(leftExpression), new Document("$ne", parseEqualityValue(rightExpression, leftExpression)));
 
                 }
 
             } else if (GreaterThan.class.isInstance(incomingExpression)) {
                 final Expression leftExpression = ((GreaterThan) incomingExpression).getLeftExpression();
                 final Expression rightExpression = ((GreaterThan) incomingExpression).getRightExpression();
-                query.put(leftExpression.toString(),new Document("$gt",parseExpression(new Document(), rightExpression, leftExpression)));
+                query.put(leftExpression.toString(),new Document("$gt",parseValue(rightExpression, leftExpression)));
             } else if (MinorThan.class.isInstance(incomingExpression)) {
                 final Expression leftExpression = ((MinorThan) incomingExpression).getLeftExpression();
                 final Expression rightExpression = ((MinorThan) incomingExpression).getRightExpression();
-                query.put(leftExpression.toString(),new Document("$lt", parseExpression(new Document(), rightExpression, leftExpression)));
+                query.put(leftExpression.toString(),new Document("$lt", parseValue(rightExpression, leftExpression)));
             } else if (GreaterThanEquals.class.isInstance(incomingExpression)) {
                 final Expression leftExpression = ((GreaterThanEquals) incomingExpression).getLeftExpression();
                 final Expression rightExpression = ((GreaterThanEquals) incomingExpression).getRightExpression();
-                query.put(leftExpression.toString(),new Document("$gte",parseExpression(new Document(), rightExpression, leftExpression)));
+                query.put(leftExpression.toString(),new Document("$gte",parseValue(rightExpression, leftExpression)));
             } else if (MinorThanEquals.class.isInstance(incomingExpression)) {
                 final Expression leftExpression = ((MinorThanEquals) incomingExpression).getLeftExpression();
                 final Expression rightExpression = ((MinorThanEquals) incomingExpression).getRightExpression();
-                query.put(leftExpression.toString(),new Document("$lte", parseExpression(new Document(), rightExpression, leftExpression)));
+                query.put(leftExpression.toString(),new Document("$lte", parseValue(rightExpression, leftExpression)));
             }
         } else if(LikeExpression.class.isInstance(incomingExpression)
                 && Column.class.isInstance(((LikeExpression)incomingExpression).getLeftExpression())
@@ -97,6 +94,15 @@ public class WhereCauseProcessor {
                 document = new Document(stringValueLeftSide,document);
             }
             query.putAll(document);
+        } else if(LikeExpression.class.isInstance(incomingExpression)
+                && Column.class.isInstance(((LikeExpression)incomingExpression).getLeftExpression())
+                && JdbcNamedParameter.class.isInstance(((LikeExpression)incomingExpression).getRightExpression())) {
+            LikeExpression likeExpression = (LikeExpression)incomingExpression;
+            if (likeExpression.isNot()) {
+                throw new ParseException("NOT LIKE queries not supported");
+            }
+            query.put(SqlUtils.getStringValue(likeExpression.getLeftExpression()), new Document("$regex",
+                    BindParameter.like(((JdbcNamedParameter) likeExpression.getRightExpression()).getName())));
         } else if(IsNullExpression.class.isInstance(incomingExpression)) {
             IsNullExpression isNullExpression = (IsNullExpression) incomingExpression;
             query.put(SqlUtils.getStringValue(isNullExpression.getLeftExpression()),new Document("$exists",isNullExpression.isNot()));
@@ -114,8 +120,7 @@ public class WhereCauseProcessor {
                         new com.google.common.base.Function<Expression, Object>() {
                             @Override public Object apply(Expression expression) {
                                 try {
-                                    return parseExpression(new Document(), expression,
-                                        leftExpression);
+                                    return parseEqualityValue(expression, leftExpression);
                                 } catch (ParseException e) {
                                     throw new RuntimeException(e);
                                 }
@@ -167,6 +172,39 @@ public class WhereCauseProcessor {
         return query;
     }
 
+    /**
+     * Parse the value side of a comparison, literals are converted straight away without a document to put them in,
+     * to the type mapped to the field. A literal of a field without a type that looks like a date becomes a date,
+     * unless it is not a real date.
+     */
+    private Object parseValue(Expression expression, Expression otherSide) throws ParseException {
+        if (otherSide != null && (StringValue.class.isInstance(expression) || LongValue.class.isInstance(expression)
+                || SignedExpression.class.isInstance(expression) || JdbcNamedParameter.class.isInstance(expression)
+                || Column.class.isInstance(expression))) {
+            return SqlUtils.getValue(expression, otherSide, defaultFieldType, fieldNameToFieldTypeMapping);
+        }
+        return parseExpression(new Document(), expression, otherSide);
+    }
+
+    /**
+     * Parse the value of an = or != comparison or an item of an IN list, so that v='x' and v IN ('x') give the same
+     * value. A string literal is only read as a date when the field is mapped to DATE, these values are usually codes
+     * and a code that looks like a date must not reach the date parser.
+     */
+    private Object parseEqualityValue(Expression expression, Expression leftExpression) throws ParseException {
+        FieldType fieldType = MoreObjects.firstNonNull(
+                fieldNameToFieldTypeMapping.get(SqlUtils.getStringValue(leftExpression)), defaultFieldType);
+        if (StringValue.class.isInstance(expression) && !FieldType.DATE.equals(fieldType)) {
+            String text = ((StringValue) expression).getValue();
+            if (FieldType.UNKNOWN.equals(fieldType)) {
+                Boolean bool = LiteralClassifier.toBoolean(text);
+                return bool != null ? bool : text;
+            }
+            return SqlUtils.normalizeValue(text, fieldType);
+        }
+        return parseValue(expression, leftExpression);
+    }
+
     private void handleAndOr(String key, BinaryExpression incomingExpression, Document query) throws ParseException {
         final Expression leftExpression = incomingExpression.getLeftExpression();
         final Expression rightExpression = incomingExpression.getRightExpression();
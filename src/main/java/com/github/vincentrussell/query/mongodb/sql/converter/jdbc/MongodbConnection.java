@@ -22,23 +22,30 @@ public class MongodbConnection implements Connection {
 
     public MongoClient getClient() {
         if (client == null) {
-            StringBuilder builder = new StringBuilder();
-            builder.append("mongodb://").append(mongoConfig.getUsername()).append(":").append(mongoConfig.getPassword())
-                    .append("@").append(mongoConfig.getUrl().substring(10))
-                    .append("/").append(mongoConfig.getDatabase()).append("?")
-                    .append("maxPoolSize=").append(mongoConfig.getMaxPoolSize())
-                    .append("&").append("waitQueueMultiple=").append(mongoConfig.getWaitQueueMultiple())
-                    .append("&").append("readPreference=").append(mongoConfig.getReadPreference())
-                    .append("&").append("safe=").append(mongoConfig.getSafe())
-                    .append("&").append("connectTimeoutMS=").append(mongoConfig.getConnectTimeout())
-                    .append("&").append("waitQueueTimeoutMS=").append(mongoConfig.getServerSelectionTimeout())
-                    .append("&").append("serverSelectionTimeoutMS=").append(mongoConfig.getServerSelectionTimeout())
-                    .append("&").append("authMechanism=").append(mongoConfig.getAuthMechanism());
-            client = MongoClients.create(builder.toString());
+            client = MongoClients.create(getConnectionString());
         }
         return client;
     }
 
+    /**
+     * @return the connection string of the data source, also used by the reactive client
+     */
+    public String getConnectionString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("mongodb://").append(mongoConfig.getUsername()).append(":").append(mongoConfig.getPassword())
+                .append("@").append(mongoConfig.getUrl().substring(10))
+                .append("/").append(mongoConfig.getDatabase()).append("?")
+                .append("maxPoolSize=").append(mongoConfig.getMaxPoolSize())
+                .append("&").append("waitQueueMultiple=").append(mongoConfig.getWaitQueueMultiple())
+                .append("&").append("readPreference=").append(mongoConfig.getReadPreference())
+                .append("&").append("safe=").append(mongoConfig.getSafe())
+                .append("&").append("connectTimeoutMS=").append(mongoConfig.getConnectTimeout())
+                .append("&").append("waitQueueTimeoutMS=").append(mongoConfig.getServerSelectionTimeout())
+                .append("&").append("serverSelectionTimeoutMS=").append(mongoConfig.getServerSelectionTimeout())
+                .append("&").append("authMechanism=").append(mongoConfig.getAuthMechanism());
+        return builder.toString();
+    }
+
     public MongoDatabase getDataBase() {
         if (mongoDatabase == null) {
             mongoDatabase = getClient().getDatabase(mongoConfig.getDatabase());
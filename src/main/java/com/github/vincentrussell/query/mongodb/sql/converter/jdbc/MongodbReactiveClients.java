@@ -0,0 +1,35 @@
+package com.github.vincentrussell.query.mongodb.sql.converter.jdbc;
+
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import com.mongodb.reactivestreams.client.MongoDatabase;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * One reactive streams client per data source, created the first time the data source runs a query asynchronously.
+ * The reactive streams driver is an optional dependency, it is only needed when this class is used.
+ */
+public class MongodbReactiveClients {
+    private static final ConcurrentMap<String, MongoClient> CLIENTS = new ConcurrentHashMap<>();
+
+    private MongodbReactiveClients() {
+    }
+
+    /**
+     * @param connection the connection of the data source
+     * @return the database of the data source on the reactive streams client
+     */
+    public static MongoDatabase getDataBase(MongodbConnection connection) {
+        MongoClient client = CLIENTS.computeIfAbsent(connection.getConnectionString(), MongoClients::create);
+        return client.getDatabase(connection.getDataBase().getName());
+    }
+
+    public static void closeAll() {
+        for (MongoClient client : CLIENTS.values()) {
+            client.close();
+        }
+        CLIENTS.clear();
+    }
+}
@@ -22,6 +22,11 @@ public class DateFunction {
         this.column = column;
     }
 
+    public DateFunction(Date date, String column) {
+        this.date = date;
+        this.column = column;
+    }
+
 
     public Date getDate() {
         return date;
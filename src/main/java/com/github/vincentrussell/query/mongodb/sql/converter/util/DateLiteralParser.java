@@ -0,0 +1,145 @@
+package com.github.vincentrussell.query.mongodb.sql.converter.util;
+
+import com.joestelmach.natty.DateGroup;
+import com.joestelmach.natty.Parser;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.time.format.ResolverStyle;
+import java.time.format.SignStyle;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Parses the date literals found in sql statements: yyyy-MM-dd[ HH:mm:ss[.SSS]], iso 8601 and yyyyMMdd.
+ * Literals without an offset are read in the zone from the {@link #D_DATE_ZONE} system property,
+ * the system default zone when it is not set.
+ * <p>
+ * Natural language dates ("45 days ago") go through natty, one parser per thread.
+ */
+public class DateLiteralParser {
+    public static final String D_DATE_ZONE = "sqlDateZone";
+    /**
+     * when true, date literals that none of the formatters understand are given to natty
+     */
+    public static final String D_NATURAL_LANGUAGE_FALLBACK = "naturalLanguageDateFallback";
+
+    private static final DateTimeFormatter LOCAL_DATE_TIME = new DateTimeFormatterBuilder()
+            .appendValue(ChronoField.YEAR, 4)
+            .appendLiteral('-')
+            .appendValue(ChronoField.MONTH_OF_YEAR, 1, 2, SignStyle.NOT_NEGATIVE)
+            .appendLiteral('-')
+            .appendValue(ChronoField.DAY_OF_MONTH, 1, 2, SignStyle.NOT_NEGATIVE)
+            .optionalStart()
+            .appendLiteral(' ')
+            .appendValue(ChronoField.HOUR_OF_DAY, 1, 2, SignStyle.NOT_NEGATIVE)
+            .appendLiteral(':')
+            .appendValue(ChronoField.MINUTE_OF_HOUR, 1, 2, SignStyle.NOT_NEGATIVE)
+            .appendLiteral(':')
+            .appendValue(ChronoField.SECOND_OF_MINUTE, 1, 2, SignStyle.NOT_NEGATIVE)
+            .optionalStart()
+            .appendFraction(ChronoField.NANO_OF_SECOND, 1, 9, true)
+            .optionalEnd()
+            .optionalEnd()
+            .parseDefaulting(ChronoField.HOUR_OF_DAY, 0)
+            .parseDefaulting(ChronoField.MINUTE_OF_HOUR, 0)
+            .parseDefaulting(ChronoField.SECOND_OF_MINUTE, 0)
+            .toFormatter()
+            .withResolverStyle(ResolverStyle.STRICT);
+
+    private static final ThreadLocal<Parser> NATURAL_LANGUAGE_PARSER = ThreadLocal.withInitial(Parser::new);
+
+    private static volatile ZoneId zone = System.getProperty(D_DATE_ZONE) != null
+            ? ZoneId.of(System.getProperty(D_DATE_ZONE)) : ZoneId.systemDefault();
+
+    private DateLiteralParser() {
+    }
+
+    public static ZoneId getZone() {
+        return zone;
+    }
+
+    public static void setZone(ZoneId zone) {
+        DateLiteralParser.zone = zone;
+    }
+
+    /**
+     * @param text the date literal
+     * @return the date, null when the literal is not in one of the supported formats
+     */
+    public static Date parse(String text) {
+        int length = text.length();
+        try {
+            if (length == 8 && isDigits(text)) {
+                return toDate(LocalDate.parse(text, DateTimeFormatter.BASIC_ISO_DATE).atStartOfDay());
+            }
+            if (length >= 8 && text.charAt(4) == '-') {
+                if (length > 10 && text.charAt(10) == 'T') {
+                    TemporalAccessor temporal = DateTimeFormatter.ISO_DATE_TIME.parse(text);
+                    if (temporal.isSupported(ChronoField.OFFSET_SECONDS)) {
+                        return Date.from(Instant.from(temporal));
+                    }
+                    return toDate(LocalDateTime.from(temporal));
+                }
+                return toDate(LocalDateTime.parse(text, LOCAL_DATE_TIME));
+            }
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+        return null;
+    }
+
+    /**
+     * Parse a date literal, natty is only tried when the {@link #D_NATURAL_LANGUAGE_FALLBACK} system property is true.
+     *
+     * @param text the date literal
+     * @return the date
+     * @throws IllegalArgumentException when the literal cannot be parsed
+     */
+    public static Date parseLiteral(String text) {
+        Date date = parse(text);
+        if (date != null) {
+            return date;
+        }
+        if (Boolean.getBoolean(D_NATURAL_LANGUAGE_FALLBACK)) {
+            return parseNaturalLanguage(text);
+        }
+        throw new IllegalArgumentException("could not parse date: " + text);
+    }
+
+    /**
+     * @param text a date in natural language, like "45 days ago"
+     * @return the date
+     * @throws IllegalArgumentException when natty does not find a date in the text
+     */
+    public static Date parseNaturalLanguage(String text) {
+        List<DateGroup> groups = NATURAL_LANGUAGE_PARSER.get().parse(text);
+        for (DateGroup group : groups) {
+            List<Date> dates = group.getDates();
+            if (dates.size() > 0) {
+                return dates.get(0);
+            }
+        }
+        throw new IllegalArgumentException("could not natural language date: " + text);
+    }
+
+    private static Date toDate(LocalDateTime localDateTime) {
+        return Date.from(localDateTime.atZone(zone).toInstant());
+    }
+
+    private static boolean isDigits(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (!Character.isDigit(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
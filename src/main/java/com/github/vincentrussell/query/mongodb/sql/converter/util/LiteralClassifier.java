@@ -0,0 +1,119 @@
+package com.github.vincentrussell.query.mongodb.sql.converter.util;
+
+import com.github.vincentrussell.query.mongodb.sql.converter.FieldType;
+import com.github.vincentrussell.query.mongodb.sql.converter.ParseException;
+
+import java.math.BigInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Decides the bson type of a literal from the sql statement, once, while the statement is translated:
+ * the type mapped to the field when there is one, otherwise booleans and date literals are recognized
+ * and everything else stays a string.
+ */
+public class LiteralClassifier {
+    private static final Pattern DATE_LITERAL = Pattern.compile(
+            "^\\d{4}-\\d{1,2}-\\d{1,2}(\\s\\d{1,2}:\\d{1,2}:\\d{1,2}(\\.\\d{1,5})?)?$");
+    private static final Pattern INTEGER = Pattern.compile("^[+-]?\\d+$");
+    private static final Pattern DECIMAL = Pattern.compile(
+            "^[+-]?(NaN|Infinity|(\\d+\\.?\\d*|\\.\\d+)([eE][+-]?\\d+)?[fFdD]?)$");
+    private static final int MAX_LONG_DIGITS = 18;
+
+    private LiteralClassifier() {
+    }
+
+    /**
+     * @param value the literal, a string or a value that was already typed by the sql parser
+     * @param fieldType the type of the field the literal is compared with
+     * @return the bson value
+     * @throws ParseException when the literal cannot be converted to the field type
+     */
+    public static Object classify(Object value, FieldType fieldType) throws ParseException {
+        if (fieldType == null || FieldType.UNKNOWN.equals(fieldType)) {
+            if (!(value instanceof String)) {
+                Object bool = toBoolean(value.toString());
+                return bool != null ? bool : value;
+            }
+            String text = (String) value;
+            Object bool = toBoolean(text);
+            if (bool != null) {
+                return bool;
+            }
+            return toDateOrString(text);
+        }
+        if (FieldType.STRING.equals(fieldType)) {
+            return SqlUtils.fixDoubleSingleQuotes(SqlUtils.forceString(value));
+        }
+        if (FieldType.NUMBER.equals(fieldType)) {
+            return value instanceof String ? toNumber((String) value) : value;
+        }
+        if (FieldType.DATE.equals(fieldType)) {
+            return SqlUtils.forceDate(value);
+        }
+        if (FieldType.BOOLEAN.equals(fieldType)) {
+            return Boolean.valueOf(value.toString());
+        }
+        throw new ParseException("could not normalize value:" + value);
+    }
+
+    /**
+     * @param text a string literal
+     * @return true when the literal looks like yyyy-MM-dd[ HH:mm:ss[.SSS]]
+     */
+    public static boolean isDateLiteral(String text) {
+        return text.length() >= 8 && text.charAt(4) == '-' && DATE_LITERAL.matcher(text).matches();
+    }
+
+    /**
+     * @param text a string literal
+     * @return the date when the literal looks like yyyy-MM-dd[ HH:mm:ss[.SSS]] and is a real date,
+     * otherwise the literal itself
+     */
+    public static Object toDateOrString(String text) {
+        if (!isDateLiteral(text)) {
+            return text;
+        }
+        try {
+            return DateLiteralParser.parseLiteral(text);
+        } catch (IllegalArgumentException e) {
+            return text;
+        }
+    }
+
+    /**
+     * @param text the literal
+     * @return the literal as a boolean, null when it is neither true nor false
+     */
+    public static Boolean toBoolean(String text) {
+        if (text.equalsIgnoreCase("true")) {
+            return Boolean.TRUE;
+        }
+        if (text.equalsIgnoreCase("false")) {
+            return Boolean.FALSE;
+        }
+        return null;
+    }
+
+    /**
+     * @param text the literal
+     * @return a Long when the literal is an integer that fits a long, otherwise a Double
+     * @throws ParseException when the literal is not a number
+     */
+    public static Number toNumber(String text) throws ParseException {
+        if (INTEGER.matcher(text).matches()) {
+            int digits = Character.isDigit(text.charAt(0)) ? text.length() : text.length() - 1;
+            if (digits <= MAX_LONG_DIGITS) {
+                return Long.parseLong(text);
+            }
+            BigInteger bigInteger = new BigInteger(text);
+            if (bigInteger.bitLength() < Long.SIZE) {
+                return bigInteger.longValue();
+            }
+            return Double.parseDouble(text);
+        }
+        if (DECIMAL.matcher(text).matches()) {
+            return Double.parseDouble(text);
+        }
+        throw new ParseException("could not convert " + text + " to number");
+    }
+}
@@ -1,22 +1,17 @@
 package com.github.vincentrussell.query.mongodb.sql.converter.util;
 
 import com.alibaba.fastjson.JSON;
+import com.github.vincentrussell.query.mongodb.sql.converter.BindParameter;
 import com.github.vincentrussell.query.mongodb.sql.converter.FieldType;
 import com.github.vincentrussell.query.mongodb.sql.converter.ParseException;
 import com.github.vincentrussell.query.mongodb.sql.converter.Token;
 import com.github.vincentrussell.query.mongodb.sql.converter.WhereCauseProcessor;
 import com.google.common.collect.Lists;
-import com.joestelmach.natty.DateGroup;
-import com.joestelmach.natty.Parser;
 import net.sf.jsqlparser.expression.*;
 import net.sf.jsqlparser.expression.operators.relational.*;
 import net.sf.jsqlparser.schema.Column;
 import net.sf.jsqlparser.statement.select.*;
 import org.bson.Document;
-import org.joda.time.DateTime;
-import org.joda.time.format.DateTimeFormat;
-import org.joda.time.format.DateTimeFormatter;
-import org.joda.time.format.ISODateTimeFormat;
 
 import java.math.BigInteger;
 import java.util.*;
@@ -34,14 +29,6 @@ public class SqlUtils {
     private static final List<String> SPECIALTY_FUNCTIONS = Arrays.asList(REGEXMATCH_FUNCTION, OBJECTID_FUNCTION);
     private static final String LINE_SEPARATOR = System.getProperty("line.separator");
 
-    private static final DateTimeFormatter YY_MM_DDFORMATTER = DateTimeFormat.forPattern("yyyy-MM-dd");
-    private static final DateTimeFormatter YYMMDDFORMATTER = DateTimeFormat.forPattern("yyyyMMdd");
-
-    private static final Collection<DateTimeFormatter> FORMATTERS = Collections.unmodifiableList(Arrays.asList(
-            ISODateTimeFormat.dateTime(),
-            YY_MM_DDFORMATTER,
-            YYMMDDFORMATTER));
-
     private SqlUtils() {
     }
 
@@ -63,22 +50,31 @@ public class SqlUtils {
             String val = value.getValue();
             if (val.startsWith("[") || val.startsWith("{"))
                 return JSON.parse(val);
-            if (val.matches("^\\d{4}-\\d{1,2}-\\d{1,2}(\\s\\d{1,2}:\\d{1,2}:\\d{1,2}(.\\d{1,5})?)?$")) {
-                if (val.indexOf(" ") == -1) {
-                    val = val + " 00:00:00";
-                }
-                return parseNaturalLanguageDate(val);
-            }
-            return val;
-        }
-        if (expression instanceof Function) {
-            Function function = (Function) expression;
-            if (function.getName().equals("now"))
-                return new Date();
+            return getDateOrString(val);
         }
+        if (expression instanceof JdbcNamedParameter)
+            return new BindParameter(((JdbcNamedParameter) expression).getName(), FieldType.UNKNOWN);
+        if (isTimeFunction(expression))
+            return new Date();
         return expression.toString();
     }
 
+    /**
+     * @param expression the value expression
+     * @return true when the value depends on the time the statement is run, like now()
+     */
+    public static boolean isTimeFunction(Expression expression) {
+        return expression instanceof Function && ((Function) expression).getName().equals("now");
+    }
+
+    /**
+     * @param val a string literal
+     * @return the date when the literal looks like yyyy-MM-dd[ HH:mm:ss] and is a real date, otherwise the literal itself
+     */
+    public static Object getDateOrString(String val) {
+        return LiteralClassifier.toDateOrString(val);
+    }
+
     public static String getStringValue(Expression expression) {
         if (StringValue.class.isInstance(expression)) {
             return ((StringValue) expression).getValue();
@@ -106,6 +102,8 @@ public class SqlUtils {
             return normalizeValue((((StringValue) incomingExpression).getValue()), fieldType);
         } else if (Column.class.isInstance(incomingExpression)) {
             return normalizeValue(getStringValue(incomingExpression), fieldType);
+        } else if (JdbcNamedParameter.class.isInstance(incomingExpression)) {
+            return new BindParameter(((JdbcNamedParameter) incomingExpression).getName(), fieldType);
         } else {
             throw new ParseException("can not parseNaturalLanguageDate: " + incomingExpression.toString());
         }
@@ -138,7 +136,9 @@ public class SqlUtils {
         if (parameters == null) {
             return null;
         } else if (parameters.getExpressions().size() == 1) {
-            return getStringValue(parameters.getExpressions().get(0));
+            Expression expression = parameters.getExpressions().get(0);
+            return StringValue.class.isInstance(expression)
+                    ? getDateOrString(((StringValue) expression).getValue()) : getStringValue(expression);
         } else {
             return Lists.newArrayList(Lists.transform(parameters.getExpressions(),
                     new com.google.common.base.Function<Expression, Object>() {
@@ -157,30 +157,13 @@ public class SqlUtils {
 
 
     public static Object normalizeValue(Object value, FieldType fieldType) throws ParseException {
-        if (fieldType == null || FieldType.UNKNOWN.equals(fieldType)) {
-            Object bool = forceBool(value);
-            return (bool != null) ? bool : value;
-        } else {
-            if (FieldType.STRING.equals(fieldType)) {
-                return fixDoubleSingleQuotes(forceString(value));
-            }
-            if (FieldType.NUMBER.equals(fieldType)) {
-                return forceNumber(value);
-            }
-            if (FieldType.DATE.equals(fieldType)) {
-                return forceDate(value);
-            }
-            if (FieldType.BOOLEAN.equals(fieldType)) {
-                return Boolean.valueOf(value.toString());
-            }
-        }
-        throw new ParseException("could not normalize value:" + value);
+        return LiteralClassifier.classify(value, fieldType);
     }
 
     public static long getLimit(Limit limit) throws ParseException {
         if (limit != null && limit.getRowCount() != null) {
             String rowCountString = SqlUtils.getStringValue(limit.getRowCount());
-            BigInteger bigInt = new BigInteger(rowCountString);
+            BigInteger bigInt = toBigInteger(rowCountString);
             isFalse(bigInt.compareTo(BigInteger.valueOf(Integer.MAX_VALUE)) > 0, rowCountString + ": value is too large");
             return bigInt.longValue();
         }
@@ -190,15 +173,23 @@ public class SqlUtils {
     public static long getOffset(Limit limit) throws ParseException {
         if (limit != null && limit.getOffset() != null) {
             String rowCountString = SqlUtils.getStringValue(limit.getOffset());
-            BigInteger bigInt = new BigInteger(rowCountString);
+            BigInteger bigInt = toBigInteger(rowCountString);
             isFalse(bigInt.compareTo(BigInteger.valueOf(Integer.MAX_VALUE)) > 0, rowCountString + ": value is too large");
             return bigInt.longValue();
         }
         return -1;
     }
 
+    private static BigInteger toBigInteger(String value) throws ParseException {
+        try {
+            return new BigInteger(value);
+        } catch (NumberFormatException e) {
+            throw new ParseException(value + ": value is not a number");
+        }
+    }
+
     public static String fixDoubleSingleQuotes(final String regex) {
-        return regex.replaceAll("''", "'");
+        return regex.replace("''", "'");
     }
 
     public static boolean isSelectAll(List<SelectItem> selectItems) {
@@ -227,22 +218,11 @@ public class SqlUtils {
     }
 
     public static Object forceBool(Object value) {
-        if (value.toString().equalsIgnoreCase("true") || value.toString().equalsIgnoreCase("false")) {
-            return Boolean.valueOf(value.toString());
-        }
-        return null;
+        return LiteralClassifier.toBoolean(value.toString());
     }
 
     public static Object forceDate(Object value) throws ParseException {
         if (String.class.isInstance(value)) {
-            for (DateTimeFormatter formatter : FORMATTERS) {
-                try {
-                    DateTime dt = formatter.parseDateTime((String) value);
-                    return dt.toDate();
-                } catch (Exception e) {
-                    //noop
-                }
-            }
             try {
                 return parseNaturalLanguageDate((String) value);
             } catch (Exception e) {
@@ -253,33 +233,18 @@ public class SqlUtils {
         throw new ParseException("could not convert " + value + " to a date");
     }
 
+    /**
+     * @param text a date literal or a date in natural language, like "45 days ago"
+     * @return the date
+     */
     public static Date parseNaturalLanguageDate(String text) {
-        Parser parser = new Parser();
-        List<DateGroup> groups = parser.parse(text);
-        for (DateGroup group : groups) {
-            List<Date> dates = group.getDates();
-            if (dates.size() > 0) {
-                return dates.get(0);
-            }
-        }
-        throw new IllegalArgumentException("could not natural language date: " + text);
+        Date date = DateLiteralParser.parse(text);
+        return date != null ? date : DateLiteralParser.parseNaturalLanguage(text);
     }
 
     public static Object forceNumber(Object value) throws ParseException {
         if (String.class.isInstance(value)) {
-            try {
-                return Long.parseLong((String) value);
-            } catch (NumberFormatException e1) {
-                try {
-                    return Double.parseDouble((String) value);
-                } catch (NumberFormatException e2) {
-                    try {
-                        return Float.parseFloat((String) value);
-                    } catch (NumberFormatException e3) {
-                        throw new ParseException("could not convert " + value + " to number");
-                    }
-                }
-            }
+            return LiteralClassifier.toNumber((String) value);
         } else {
             return value;
         }
@@ -393,50 +358,6 @@ public class SqlUtils {
         return null;
     }
 
-    public static DateFunction isDateFunction(Expression incomingExpression) throws ParseException {
-        if (ComparisonOperator.class.isInstance(incomingExpression)) {
-            ComparisonOperator comparisonOperator = (ComparisonOperator) incomingExpression;
-            String rightExpression = getStringValue(comparisonOperator.getRightExpression());
-            if (rightExpression.matches("^\\d{4}-\\d{1,2}-\\d{1,2}(\\s\\d{1,2}:\\d{1,2}:\\d{1,2}(.\\d{1,5})?)?$")) {
-                if (rightExpression.indexOf(" ") == -1) {
-                    rightExpression = rightExpression + " 00:00:00";
-                }
-                String column = ((Column)comparisonOperator.getLeftExpression()).getColumnName();
-                DateFunction dateFunction = null;
-                try {
-                    String format = "natural";
-                    dateFunction = new DateFunction(format, rightExpression, column);
-                    dateFunction.setComparisonFunction(comparisonOperator);
-                } catch (IllegalArgumentException e) {
-                    throw new ParseException(e.getMessage());
-                }
-                return dateFunction;
-            }
-//            if (Function.class.isInstance(comparisonOperator.getLeftExpression())) {
-//                Function function = ((Function) comparisonOperator.getLeftExpression());
-//                if ("date".equals(function.getName().toLowerCase())
-////                        && (function.getParameters().getExpressions().size() == 2)
-////                        && StringValue.class.isInstance(function.getParameters().getExpressions().get(1))
-//                        ) {
-//                    String column = getStringValue(function.getParameters().getExpressions().get(0));
-//                    DateFunction dateFunction = null;
-//                    try {
-//                        String format = "natural";
-//                        if (function.getParameters().getExpressions().size() == 2)
-//                            format = ((StringValue) (function.getParameters().getExpressions().get(1))).getValue();
-//                        dateFunction = new DateFunction(format, rightExpression, column);
-//                        dateFunction.setComparisonFunction(comparisonOperator);
-//                    } catch (IllegalArgumentException e) {
-//                        throw new ParseException(e.getMessage());
-//                    }
-//                    return dateFunction;
-//                }
-//
-//            }
-        }
-        return null;
-    }
-
     public static RegexFunction isRegexFunction(Expression incomingExpression) throws ParseException {
         if (EqualsTo.class.isInstance(incomingExpression)) {
             EqualsTo equalsTo = (EqualsTo) incomingExpression;
@@ -0,0 +1,20 @@
+package qeorm;
+
+/**
+ * The page of a select read by keyset ({@link MongoDbExecutor#KEYSET_TOKEN}), with the token that reads the page after
+ * it. A keyset page has no offset, so the caller passes the token of this page to read the next one.
+ */
+public class KeysetPage<T> extends Page<T> {
+    private final String nextKeysetToken;
+
+    public KeysetPage(String nextKeysetToken) {
+        this.nextKeysetToken = nextKeysetToken;
+    }
+
+    /**
+     * @return the value of {@link MongoDbExecutor#KEYSET_TOKEN} for the page after this one, null when this page is the last one
+     */
+    public String getNextKeysetToken() {
+        return nextKeysetToken;
+    }
+}
@@ -0,0 +1,288 @@
+package qeorm;
+
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.BsonTypeClassMap;
+import org.bson.codecs.BsonTypeCodecMap;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.configuration.CodecConfigurationException;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.types.Decimal128;
+import org.bson.types.ObjectId;
+import qeorm.utils.JsonUtils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Reads documents straight into a model class and writes models straight into documents, without a Document or a
+ * Map in between. The columns are those of {@link ModelProjection}, the fields are read and written through method
+ * handles that are looked up once per class. Columns the model does not map are skipped, numbers are converted to
+ * the number type of the field, and a date, a sub-document or an array read into a String field is written the way
+ * qeorm writes it, with {@link JsonUtils#toJson(Object)}.
+ * <p>
+ * A model with a field this codec cannot fill, like a nested model, is not {@link #isDecodable(Class) decodable} and
+ * is read through a Map instead. A column the codec cannot convert fails the decoding with a
+ * {@link CodecConfigurationException}.
+ *
+ * @param <T> the model class
+ */
+public class ModelCodec<T> implements Codec<T> {
+    private static final MethodType GETTER = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType SETTER = MethodType.methodType(void.class, Object.class, Object.class);
+    private static final MethodType CONSTRUCTOR = MethodType.methodType(Object.class);
+    private static final ConcurrentMap<Class<?>, Model> MODELS = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<Class<?>, Boolean> DECODABLE = new ConcurrentHashMap<>();
+    private static final Set<Class<?>> VALUE_TYPES = new HashSet<>(Arrays.asList(String.class, Integer.class,
+            Long.class, Double.class, Float.class, Short.class, Byte.class, Boolean.class, BigDecimal.class, Date.class,
+            ObjectId.class, Object.class));
+
+    private final Class<T> klass;
+    private final Model model;
+    private final CodecRegistry registry;
+    private final BsonTypeCodecMap bsonTypeCodecMap;
+
+    public ModelCodec(Class<T> klass, CodecRegistry registry) {
+        this.klass = klass;
+        this.model = MODELS.computeIfAbsent(klass, Model::new);
+        this.registry = registry;
+        this.bsonTypeCodecMap = new BsonTypeCodecMap(new BsonTypeClassMap(), registry);
+    }
+
+    /**
+     * @param klass a model class
+     * @return true when every field of the model is a value, a map or a list of values that this codec can fill
+     */
+    public static boolean isDecodable(Class<?> klass) {
+        return DECODABLE.computeIfAbsent(klass, ModelCodec::hasDecodableFields);
+    }
+
+    private static boolean hasDecodableFields(Class<?> klass) {
+        try {
+            klass.getDeclaredConstructor();
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+        for (Field field : ModelProjection.columns(klass).values()) {
+            Class<?> type = wrap(field.getType());
+            if (VALUE_TYPES.contains(type)) {
+                continue;
+            }
+            if (!Map.class.isAssignableFrom(type) && !Collection.class.isAssignableFrom(type)) {
+                return false;
+            }
+            if (field.getGenericType() instanceof ParameterizedType) {
+                for (Type argument : ((ParameterizedType) field.getGenericType()).getActualTypeArguments()) {
+                    if (!(argument instanceof WildcardType) && !VALUE_TYPES.contains(argument)
+                            && !(argument instanceof Class && Map.class.isAssignableFrom((Class<?>) argument))) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public T decode(BsonReader reader, DecoderContext decoderContext) {
+        T instance = model.newInstance(klass);
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            Property property = model.properties.get(reader.readName());
+            if (property == null) {
+                reader.skipValue();
+            } else if (reader.getCurrentBsonType() == BsonType.NULL) {
+                reader.readNull();
+            } else {
+                Object value = bsonTypeCodecMap.get(reader.getCurrentBsonType()).decode(reader, decoderContext);
+                property.set(instance, value);
+            }
+        }
+        reader.readEndDocument();
+        return instance;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void encode(BsonWriter writer, T value, EncoderContext encoderContext) {
+        writer.writeStartDocument();
+        for (Property property : model.list) {
+            Object fieldValue = property.get(value);
+            if (fieldValue != null) {
+                writer.writeName(property.column);
+                Codec codec = registry.get(fieldValue.getClass());
+                encoderContext.encodeWithChildContext(codec, writer, fieldValue);
+            }
+        }
+        writer.writeEndDocument();
+    }
+
+    @Override
+    public Class<T> getEncoderClass() {
+        return klass;
+    }
+
+    private static class Model {
+        private final MethodHandle constructor;
+        private final Map<String, Property> properties = new HashMap<>();
+        private final List<Property> list = new ArrayList<>();
+
+        private Model(Class<?> klass) {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            try {
+                Constructor<?> declaredConstructor = klass.getDeclaredConstructor();
+                declaredConstructor.setAccessible(true);
+                constructor = lookup.unreflectConstructor(declaredConstructor).asType(CONSTRUCTOR);
+                for (Map.Entry<String, Field> entry : ModelProjection.columns(klass).entrySet()) {
+                    Field field = entry.getValue();
+                    field.setAccessible(true);
+                    Property property = new Property(entry.getKey(), field.getName(), wrap(field.getType()),
+                            lookup.unreflectGetter(field).asType(GETTER), lookup.unreflectSetter(field).asType(SETTER));
+                    properties.put(property.column, property);
+                    list.add(property);
+                }
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                throw new CodecConfigurationException("cannot read and write the model " + klass.getName() + ": " + e, e);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private <T> T newInstance(Class<T> klass) {
+            try {
+                return (T) (Object) constructor.invokeExact();
+            } catch (Throwable e) {
+                throw new CodecConfigurationException("cannot create the model " + klass.getName(), e);
+            }
+        }
+    }
+
+    private static class Property {
+        private final String column;
+        private final String fieldName;
+        private final Class<?> type;
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+
+        private Property(String column, String fieldName, Class<?> type, MethodHandle getter, MethodHandle setter) {
+            this.column = column;
+            this.fieldName = fieldName;
+            this.type = type;
+            this.getter = getter;
+            this.setter = setter;
+        }
+
+        private Object get(Object instance) {
+            try {
+                return (Object) getter.invokeExact(instance);
+            } catch (Throwable e) {
+                throw new CodecConfigurationException("cannot read the field " + fieldName, e);
+            }
+        }
+
+        private void set(Object instance, Object value) {
+            Object converted = convert(value);
+            try {
+                setter.invokeExact(instance, converted);
+            } catch (Throwable e) {
+                throw new CodecConfigurationException("cannot write the column " + column + " to the field " + fieldName, e);
+            }
+        }
+
+        private Object convert(Object value) {
+            if (value instanceof Decimal128) {
+                value = toBigDecimal((Decimal128) value);
+            }
+            if (type.isInstance(value)) {
+                return value;
+            } else if (value instanceof Number) {
+                Number number = (Number) value;
+                if (type == Integer.class) {
+                    return number.intValue();
+                } else if (type == Long.class) {
+                    return number.longValue();
+                } else if (type == Double.class) {
+                    return number.doubleValue();
+                } else if (type == Float.class) {
+                    return number.floatValue();
+                } else if (type == Short.class) {
+                    return number.shortValue();
+                } else if (type == Byte.class) {
+                    return number.byteValue();
+                } else if (type == BigDecimal.class) {
+                    return new BigDecimal(number.toString());
+                } else if (type == Boolean.class) {
+                    return number.intValue() == 1;
+                }
+            }
+            if (type == String.class) {
+                return asString(value);
+            }
+            throw new CodecConfigurationException("the column " + column + " is a " + value.getClass().getName()
+                    + ", the field " + fieldName + " is a " + type.getName());
+        }
+
+        private Object toBigDecimal(Decimal128 decimal128) {
+            try {
+                return decimal128.bigDecimalValue();
+            } catch (ArithmeticException e) {
+                throw new CodecConfigurationException("the column " + column + " is " + decimal128
+                        + ", the field " + fieldName + " is a " + type.getName(), e);
+            }
+        }
+    }
+
+    /**
+     * @return the value as qeorm writes it in a String: a date without its quotes, documents and arrays as json
+     */
+    private static String asString(Object value) {
+        if (value instanceof Date) {
+            return JsonUtils.toJson(value).replaceAll("\"", "");
+        } else if (value instanceof Map || value instanceof Collection) {
+            return JsonUtils.toJson(value);
+        }
+        return String.valueOf(value);
+    }
+
+    private static Class<?> wrap(Class<?> type) {
+        if (!type.isPrimitive()) {
+            return type;
+        }
+        if (type == int.class) {
+            return Integer.class;
+        } else if (type == long.class) {
+            return Long.class;
+        } else if (type == double.class) {
+            return Double.class;
+        } else if (type == float.class) {
+            return Float.class;
+        } else if (type == short.class) {
+            return Short.class;
+        } else if (type == boolean.class) {
+            return Boolean.class;
+        } else if (type == byte.class) {
+            return Byte.class;
+        }
+        return Character.class;
+    }
+}
@@ -0,0 +1,27 @@
+package qeorm;
+
+import com.mongodb.MongoClientSettings;
+import org.bson.codecs.Codec;
+import org.bson.codecs.configuration.CodecProvider;
+import org.bson.codecs.configuration.CodecRegistries;
+import org.bson.codecs.configuration.CodecRegistry;
+
+/**
+ * Gives a {@link ModelCodec} for every {@link MongodbModelBase} subclass.
+ */
+public class ModelCodecProvider implements CodecProvider {
+    /**
+     * the default codecs of the driver and the model codecs
+     */
+    public static final CodecRegistry CODEC_REGISTRY = CodecRegistries.fromRegistries(
+            CodecRegistries.fromProviders(new ModelCodecProvider()), MongoClientSettings.getDefaultCodecRegistry());
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> Codec<T> get(Class<T> clazz, CodecRegistry registry) {
+        if (MongodbModelBase.class.isAssignableFrom(clazz)) {
+            return new ModelCodec<>(clazz, registry);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,69 @@
+package qeorm;
+
+import org.bson.Document;
+import qeorm.annotation.Column;
+import qeorm.annotation.Transient;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The projection of the columns a model class maps: the {@link Column} name of every field, or the field name when
+ * it has no {@link Column}, without the {@link Transient}, static and transient fields. A select * that is read into
+ * a model then only reads the columns the model binds.
+ */
+public class ModelProjection {
+    private static final ConcurrentMap<Class<?>, Document> PROJECTIONS = new ConcurrentHashMap<>();
+
+    private ModelProjection() {
+    }
+
+    /**
+     * @param klass the class the rows are read into
+     * @return the projection of the columns of the model, null when the class is not a model; not to be changed
+     */
+    public static Document of(Class<?> klass) {
+        if (klass == null || !ModelBase.class.isAssignableFrom(klass)) {
+            return null;
+        }
+        return PROJECTIONS.computeIfAbsent(klass, ModelProjection::create);
+    }
+
+    private static Document create(Class<?> klass) {
+        Document projection = new Document();
+        for (String column : columns(klass).keySet()) {
+            projection.put(column, 1);
+        }
+        return projection;
+    }
+
+    /**
+     * @param klass a model class
+     * @return the fields of the model by their column name, the fields of the superclasses first
+     */
+    static Map<String, Field> columns(Class<?> klass) {
+        List<Class<?>> types = new ArrayList<>();
+        for (Class<?> type = klass; type != null && type != ModelBase.class && type != Object.class; type = type.getSuperclass()) {
+            types.add(0, type);
+        }
+        Map<String, Field> columns = new LinkedHashMap<>();
+        for (Class<?> type : types) {
+            for (Field field : type.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()
+                        || field.isAnnotationPresent(Transient.class)) {
+                    continue;
+                }
+                Column column = field.getAnnotation(Column.class);
+                columns.put(column != null && !column.value().isEmpty() ? column.value() : field.getName(), field);
+            }
+        }
+        return columns;
+    }
+}
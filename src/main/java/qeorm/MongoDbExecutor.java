@@ -1,13 +1,29 @@
 package qeorm;
 
+import com.github.vincentrussell.query.mongodb.sql.converter.FacetPage;
+import com.github.vincentrussell.query.mongodb.sql.converter.Keyset;
+import com.github.vincentrussell.query.mongodb.sql.converter.MongoDBQueryHolder;
+import com.github.vincentrussell.query.mongodb.sql.converter.ParseException;
 import com.github.vincentrussell.query.mongodb.sql.converter.Query;
+import com.github.vincentrussell.query.mongodb.sql.converter.QueryConverter;
+import com.github.vincentrussell.query.mongodb.sql.converter.QueryPlanCache;
+import com.github.vincentrussell.query.mongodb.sql.converter.QueryTrace;
+import com.github.vincentrussell.query.mongodb.sql.converter.ReactiveResultUtils;
 import com.github.vincentrussell.query.mongodb.sql.converter.ResultUtils;
+import com.github.vincentrussell.query.mongodb.sql.converter.SQLCommandType;
 import com.github.vincentrussell.query.mongodb.sql.converter.jdbc.MongodbConnection;
 import com.github.vincentrussell.query.mongodb.sql.converter.jdbc.MongodbDataSource;
+import com.github.vincentrussell.query.mongodb.sql.converter.jdbc.MongodbReactiveClients;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.mongodb.client.MongoDatabase;
 import org.bson.Document;
+import org.bson.codecs.configuration.CodecConfigurationException;
+import org.calrissian.mango.collect.CloseableIterator;
+import org.reactivestreams.Publisher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeanUtils;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcDaoSupport;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcOperations;
 import qeorm.utils.FlatMaps;
@@ -19,12 +35,40 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.regex.Matcher;
+import java.util.stream.Stream;
 
 /**
  * Created by ashen on 2017-2-4.
  */
 public class MongoDbExecutor extends SqlResultExecutor {
+    public static final String D_PREPARED_TEMPLATE = "mongoPreparedTemplate";
+    /**
+     * when true, a select * that is read into a model class only reads the columns of the model, see {@link ModelProjection}
+     */
+    public static final String D_MODEL_PROJECTION = "mongoModelProjection";
+    /**
+     * when true, a select of documents that is read into a model class is decoded straight into the model, see {@link ModelCodec}
+     */
+    public static final String D_MODEL_CODEC = "mongoModelCodec";
+    /**
+     * The parameter that reads the page by keyset instead of skipping the rows of the pages before, see
+     * {@link Keyset}. Its value is the token of the page before, {@link KeysetPage#getNextKeysetToken()}, empty for the
+     * first page. The rows of such a select are returned in a {@link KeysetPage}.
+     */
+    public static final String KEYSET_TOKEN = "keysetToken";
+    /**
+     * The parameter that reads the page and the total of a paged select in one aggregation when it is true, see
+     * {@link FacetPage}. The rows are returned in a {@link Page} that has the total, {@link #dealQePage()} keeps it. The
+     * rows of such a page are read through a Map even when {@link #D_MODEL_CODEC} is true.
+     */
+    public static final String FACET_PAGE = "facetPage";
+    private static final Cache<String, Boolean> UNPREPARABLE_TEMPLATES = CacheBuilder.newBuilder().maximumSize(1000).build();
+    private static final Cache<Class<?>, Boolean> UNDECODABLE_MODELS = CacheBuilder.newBuilder().maximumSize(1000).build();
+    private static volatile Executor asyncExecutor = ForkJoinPool.commonPool();
     private Logger logger = LoggerFactory.getLogger(MongoDbExecutor.class);
 
     @Override
@@ -35,15 +79,41 @@ public class MongoDbExecutor extends SqlResultExecutor {
 
     @Override
     public <T> T exec(Map<String, Object> map) {
-        String sql = createSql(map);
-        sql = sql.replace("where 1=1 ", " ");
-        logger.info("要在数据库{}上执行的sql：{} , 参数为：{}", getResult().getSqlConfig().getDbName(), sql, JsonUtils.toJson(map));
-
-        try {
-            NamedParameterJdbcDaoSupport jdbc = SqlSession.instance.getSupport(getResult().getSqlConfig().getDbName());
-            MongodbDataSource dataSource = (MongodbDataSource) jdbc.getDataSource();
-            MongodbConnection connection = (MongodbConnection) dataSource.getConnection();
-            Object ret = ResultUtils.exec(connection, sql);
+        try (QueryTrace trace = QueryTrace.start()) {
+            MongodbConnection connection = connection();
+            QueryConverter queryConverter = plan(map, trace);
+            if (queryConverter.isExplain()) {
+                return ResultUtils.exec(connection.getDataBase(), queryConverter);
+            }
+            if (!map.containsKey(KEYSET_TOKEN)) {
+                if (Boolean.parseBoolean(String.valueOf(map.get(FACET_PAGE)))) {
+                    FacetPage facetPage = FacetPage.read(queryConverter, connection.getDataBase());
+                    Page page = new Page();
+                    page.setTotal(Long.valueOf(facetPage.getTotal()).intValue());
+                    page.addAll(facetPage.getRows());
+                    return (T) page;
+                }
+                if (isModelSelect(queryConverter)) {
+                    Class<?> klass = getResult().getSqlConfig().getKlass();
+                    MongoDatabase database = connection.getDataBase().withCodecRegistry(ModelCodecProvider.CODEC_REGISTRY);
+                    try {
+                        return (T) ResultUtils.select(queryConverter, database, klass);
+                    } catch (CodecConfigurationException e) {
+                        // the model is read through a Map from now on
+                        UNDECODABLE_MODELS.put(klass, Boolean.TRUE);
+                        logger.warn("不能直接解码为{}，改为通过Map读取：{}", klass.getName(), e.getMessage());
+                    }
+                }
+                return ResultUtils.exec(connection.getDataBase(), queryConverter);
+            }
+            QueryConverter page = Keyset.seek(queryConverter, (String) map.get(KEYSET_TOKEN));
+            Object ret = ResultUtils.exec(connection.getDataBase(), page);
+            if (ret instanceof List) {
+                KeysetPage keysetPage = new KeysetPage(Keyset.nextToken(page, (List<? extends Map>) ret));
+                Keyset.removeSortColumns(queryConverter, page, (List<? extends Map>) ret);
+                keysetPage.addAll((List) ret);
+                return (T) keysetPage;
+            }
             return (T) ret;
         } catch (Exception e) {
             logger.error(e.getMessage(), e);
@@ -51,8 +121,214 @@ public class MongoDbExecutor extends SqlResultExecutor {
         }
     }
 
+    /**
+     * Run the select and read its rows while the cursor is read, for callers that handle one row at a time and
+     * do not need every row in memory at once.
+     *
+     * @param map the parameters
+     * @return the rows, to be closed when not every row is read
+     */
+    public CloseableIterator<Map> iterate(Map<String, Object> map) {
+        try (QueryTrace trace = QueryTrace.start()) {
+            MongodbConnection connection = connection();
+            return ResultUtils.iterate(plan(map, trace), connection.getDataBase());
+        } catch (Exception e) {
+            logger.error(e.getMessage(), e);
+            throw new RuntimeException(e.getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * @param map the parameters
+     * @return true when a document matches the where clause of the select, read without counting
+     */
+    public boolean exists(Map<String, Object> map) {
+        try (QueryTrace trace = QueryTrace.start()) {
+            MongodbConnection connection = connection();
+            return ResultUtils.exists(plan(map, trace), connection.getDataBase());
+        } catch (Exception e) {
+            logger.error(e.getMessage(), e);
+            throw new RuntimeException(e.getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * @param map the parameters
+     * @return the rows of {@link #iterate(Map)} as a stream, closing the stream closes the cursor
+     */
+    public Stream<Map> stream(Map<String, Object> map) {
+        try (QueryTrace trace = QueryTrace.start()) {
+            MongodbConnection connection = connection();
+            return ResultUtils.stream(plan(map, trace), connection.getDataBase());
+        } catch (Exception e) {
+            logger.error(e.getMessage(), e);
+            throw new RuntimeException(e.getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * Run the query on the reactive streams driver, the calling thread does not wait for the server.
+     *
+     * @param map the parameters
+     * @return the result that {@link #exec(Map)} returns, completed on the executor of {@link #setAsyncExecutor}
+     */
+    public <T> CompletableFuture<T> execAsync(Map<String, Object> map) {
+        return execAsync(map, asyncExecutor);
+    }
+
+    /**
+     * @param map      the parameters
+     * @param executor completes the future
+     * @return the result that {@link #exec(Map)} returns
+     */
+    public <T> CompletableFuture<T> execAsync(Map<String, Object> map, Executor executor) {
+        try (QueryTrace trace = QueryTrace.start()) {
+            return ReactiveResultUtils.exec(MongodbReactiveClients.getDataBase(connection()), plan(map, trace), executor);
+        } catch (Exception e) {
+            logger.error(e.getMessage(), e);
+            CompletableFuture<T> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+    }
+
+    /**
+     * @param map the parameters
+     * @return the rows of the select, read from the server as the subscriber requests them
+     */
+    public Publisher<Map> streamAsync(Map<String, Object> map) {
+        try (QueryTrace trace = QueryTrace.start()) {
+            return ReactiveResultUtils.stream(MongodbReactiveClients.getDataBase(connection()), plan(map, trace));
+        } catch (Exception e) {
+            logger.error(e.getMessage(), e);
+            throw new RuntimeException(e.getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * @param executor completes the futures of {@link #execAsync(Map)}, the common fork join pool by default
+     */
+    public static void setAsyncExecutor(Executor executor) {
+        asyncExecutor = executor;
+    }
+
+    /**
+     * Run independent queries of one data source at the same time, see {@link MongoFanOut}.
+     *
+     * @param dbName the data source
+     * @param calls  the queries with their parameters
+     * @return the result of every query, in the order of the queries
+     */
+    public static List<Object> execAll(String dbName, List<MongoFanOut.Call> calls) {
+        return MongoFanOut.execAll(dbName, calls);
+    }
+
+    private MongodbConnection connection() throws SQLException {
+        NamedParameterJdbcDaoSupport jdbc = SqlSession.instance.getSupport(getResult().getSqlConfig().getDbName());
+        MongodbDataSource dataSource = (MongodbDataSource) jdbc.getDataSource();
+        return (MongodbConnection) dataSource.getConnection();
+    }
+
+    /**
+     * Translate the query, the sql and its parameters go to the trace and are only rendered when the trace is logged.
+     * The query takes the trace over when its rows are read after it returns, see {@link QueryTrace#detach()}.
+     */
+    private QueryConverter plan(Map<String, Object> map, QueryTrace trace) throws ParseException {
+        trace.setDbName(getResult().getSqlConfig().getDbName());
+        QueryConverter prepared = prepare(map);
+        if (prepared != null) {
+            trace.setSql(getResult().getSql(), () -> JsonUtils.toJson(map));
+            return pushDownProjection(prepared);
+        }
+        long start = System.nanoTime();
+        String sql = toTemplateSql(createSql(map));
+        start = QueryTrace.record(trace, QueryTrace.Stage.BIND, start);
+        trace.setSql(sql, () -> JsonUtils.toJson(map));
+        QueryConverter queryConverter = pushDownProjection(QueryPlanCache.get(sql));
+        QueryTrace.record(trace, QueryTrace.Stage.TRANSLATE, start);
+        return queryConverter;
+    }
+
+    private boolean isModelSelect(QueryConverter queryConverter) {
+        if (!Boolean.getBoolean(D_MODEL_CODEC)) {
+            return false;
+        }
+        Class<?> klass = getResult().getSqlConfig().getKlass();
+        MongoDBQueryHolder mongoQuery = queryConverter.getMongoQuery();
+        return klass != null && MongodbModelBase.class.isAssignableFrom(klass) && ModelCodec.isDecodable(klass)
+                && UNDECODABLE_MODELS.getIfPresent(klass) == null
+                && SQLCommandType.SELECT.equals(mongoQuery.getSqlCommandType()) && !mongoQuery.isDistinct()
+                && !mongoQuery.isCountAll() && mongoQuery.getGroupBys().isEmpty();
+    }
+
+    private QueryConverter pushDownProjection(QueryConverter queryConverter) {
+        if (!Boolean.getBoolean(D_MODEL_PROJECTION)) {
+            return queryConverter;
+        }
+        return queryConverter.withProjection(ModelProjection.of(getResult().getSqlConfig().getKlass()));
+    }
+
+    /**
+     * Translate the sql template once and bind the parameter values straight into the mongo documents,
+     * only when the {@link #D_PREPARED_TEMPLATE} system property is true.
+     *
+     * @param map the parameters
+     * @return the bound query, null when the template has to be run through {@link #createSql(Map)}
+     * @throws ParseException when a parameter value does not fit its field
+     */
+    public QueryConverter prepare(Map<String, Object> map) throws ParseException {
+        if (!Boolean.getBoolean(D_PREPARED_TEMPLATE)) {
+            return null;
+        }
+        long start = System.nanoTime();
+        QueryConverter template = getTemplate(toTemplateSql(getResult().getSql()));
+        start = QueryTrace.record(QueryTrace.Stage.TRANSLATE, start);
+        if (template == null) {
+            return null;
+        }
+        Wrap wrap = Wrap.getWrap(map);
+        QueryConverter bound = template.bind(wrap::getValue);
+        QueryTrace.record(QueryTrace.Stage.BIND, start);
+        return bound;
+    }
+
+    /**
+     * @param sql the sql of qeorm
+     * @return the sql that is translated, without the "where 1=1" qeorm leaves when no condition is set
+     */
+    public static String toTemplateSql(String sql) {
+        return sql.replace("where 1=1 ", " ");
+    }
+
+    /**
+     * @param sql the sql template
+     * @return the cached translation of the template, null when it cannot be prepared
+     */
+    public static QueryConverter getTemplate(String sql) {
+        if (UNPREPARABLE_TEMPLATES.getIfPresent(sql) != null) {
+            return null;
+        }
+        try {
+            return QueryPlanCache.getTemplate(sql);
+        } catch (ParseException | RuntimeException e) {
+            LoggerFactory.getLogger(MongoDbExecutor.class).debug("sql模板不能预编译，使用拼接sql执行：{}", e.getMessage());
+            UNPREPARABLE_TEMPLATES.put(sql, Boolean.TRUE);
+            return null;
+        }
+    }
+
     public String createSql(Map<String, Object> map) {
-        String sql = getResult().getSql();
+        return createSql(getResult().getSql(), map);
+    }
+
+    /**
+     * Put the parameter values in place of the named parameters (:name) of a sql template.
+     *
+     * @param sql the sql template
+     * @param map the parameters
+     * @return the sql to translate
+     */
+    public static String createSql(String sql, Map<String, Object> map) {
         Wrap wrap = Wrap.getWrap(map);
         sql = StringFormat.format(sql, new AbstractRegexOperator() {
             @Override
@@ -111,10 +387,20 @@ public class MongoDbExecutor extends SqlResultExecutor {
         return Query.update(table.getMasterDbName(), table.getTableName(), new Document(key, json.get(key)), json);
     }
 
+    /**
+     * A page read by keyset ({@link #KEYSET_TOKEN}) has no offset, it is the {@link KeysetPage} returned by
+     * {@link #exec(Map)} with the token of the page after it. A page read with {@link #FACET_PAGE} came with its total,
+     * it is kept and no count query is run for it. The page number, page size and the rest of the page asked for are
+     * copied to these pages.
+     */
     @Override
     public void dealQePage() {
         Object ret = result.getResult();
-        if (ret instanceof List) {
+        if (ret instanceof KeysetPage) {
+            BeanUtils.copyProperties(qePage, ret);
+        } else if (ret instanceof Page) {
+            BeanUtils.copyProperties(qePage, ret, "total");
+        } else if (ret instanceof List) {
             qePage.addAll((List) ret);
             result.setResult(qePage);
         }
@@ -0,0 +1,195 @@
+package qeorm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs independent queries at the same time, so a report that needs several queries waits about as long as its
+ * slowest query instead of the sum of all of them.
+ * <p>
+ * The queries run on virtual threads when the jdk has them (looked up by reflection, this library is built for
+ * java 8), otherwise on a bounded pool of {@link #D_FAN_OUT_THREADS} threads. At most {@link #D_FAN_OUT_PERMITS}
+ * queries of one data source run at the same time.
+ */
+public class MongoFanOut {
+    public static final String D_FAN_OUT_THREADS = "mongoFanOutThreads";
+    public static final String D_FAN_OUT_PERMITS = "mongoFanOutPermits";
+    private static final int DEFAULT_THREADS = 32;
+    private static final int DEFAULT_PERMITS = 16;
+    private static final Logger logger = LoggerFactory.getLogger(MongoFanOut.class);
+    private static final ConcurrentMap<String, Semaphore> PERMITS = new ConcurrentHashMap<>();
+
+    private MongoFanOut() {
+    }
+
+    /**
+     * @param dbName the data source the queries run on
+     * @param calls  the queries
+     * @return the result of every query, in the order of the queries
+     */
+    public static List<Object> execAll(final String dbName, List<Call> calls) {
+        List<Callable<Object>> tasks = new ArrayList<>(calls.size());
+        for (final Call call : calls) {
+            tasks.add(() -> call.isList() ? SqlExecutor.execSql(call.getSql(), call.getParams(), call.getKlass(), dbName)
+                    : SqlExecutor.execSqlForObject(call.getSql(), call.getParams(), call.getKlass(), dbName));
+        }
+        return run(dbName, tasks);
+    }
+
+    /**
+     * Run tasks that query one data source at the same time and wait for all of them.
+     *
+     * @param dbName the data source the tasks query
+     * @param tasks  the tasks
+     * @param <T>    the result type
+     * @return the result of every task, in the order of the tasks
+     * @throws RuntimeException with the failure of the first task that failed, the other tasks are cancelled as soon
+     *                          as it fails
+     */
+    public static <T> List<T> run(String dbName, List<? extends Callable<T>> tasks) {
+        final Semaphore permits = PERMITS.computeIfAbsent(dbName,
+                name -> new Semaphore(Integer.getInteger(D_FAN_OUT_PERMITS, DEFAULT_PERMITS), true));
+        // the results are taken as the tasks end, so the first task that fails cancels the others straight away
+        CompletionService<T> completionService = new ExecutorCompletionService<>(ExecutorHolder.EXECUTOR);
+        Map<Future<T>, Integer> futures = new IdentityHashMap<>(tasks.size());
+        for (final Callable<T> task : tasks) {
+            futures.put(completionService.submit(() -> {
+                permits.acquire();
+                try {
+                    return task.call();
+                } finally {
+                    permits.release();
+                }
+            }), futures.size());
+        }
+        List<T> results = new ArrayList<>(Collections.<T>nCopies(tasks.size(), null));
+        try {
+            for (int i = 0; i < tasks.size(); i++) {
+                Future<T> future = completionService.take();
+                results.set(futures.get(future), future.get());
+            }
+        } catch (InterruptedException e) {
+            cancel(futures.keySet());
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("interrupted while waiting for the queries", e);
+        } catch (ExecutionException e) {
+            cancel(futures.keySet());
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause.getMessage(), cause);
+        }
+        return results;
+    }
+
+    private static void cancel(Collection<? extends Future<?>> futures) {
+        for (Future<?> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    /**
+     * @return true when the queries run on virtual threads
+     */
+    public static boolean isVirtual() {
+        return ExecutorHolder.VIRTUAL;
+    }
+
+    private static class ExecutorHolder {
+        private static final boolean VIRTUAL;
+        private static final ExecutorService EXECUTOR;
+
+        static {
+            ExecutorService virtual = null;
+            try {
+                virtual = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                logger.debug("没有虚拟线程，使用线程池：{}", e.toString());
+            }
+            VIRTUAL = virtual != null;
+            EXECUTOR = virtual != null ? virtual : newBoundedPool();
+        }
+
+        private static ExecutorService newBoundedPool() {
+            int threads = Integer.getInteger(D_FAN_OUT_THREADS, DEFAULT_THREADS);
+            final AtomicInteger count = new AtomicInteger();
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), runnable -> {
+                Thread thread = new Thread(runnable, "mongo-fan-out-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            pool.allowCoreThreadTimeOut(true);
+            return pool;
+        }
+    }
+
+    /**
+     * One query of {@link #execAll(String, List)}.
+     */
+    public static class Call {
+        private final String sql;
+        private final Map params;
+        private final Class<?> klass;
+        private final boolean list;
+
+        private Call(String sql, Map params, Class<?> klass, boolean list) {
+            this.sql = sql;
+            this.params = params;
+            this.klass = klass;
+            this.list = list;
+        }
+
+        /**
+         * @return a query run with {@link SqlExecutor#execSql}
+         */
+        public static Call list(String sql, Map params, Class<?> klass) {
+            return new Call(sql, params, klass, true);
+        }
+
+        /**
+         * @return a query run with {@link SqlExecutor#execSqlForObject}
+         */
+        public static Call object(String sql, Map params, Class<?> klass) {
+            return new Call(sql, params, klass, false);
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public Map getParams() {
+            return params;
+        }
+
+        public Class<?> getKlass() {
+            return klass;
+        }
+
+        public boolean isList() {
+            return list;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package qeorm;
+
+import com.github.vincentrussell.query.mongodb.sql.converter.BulkTranslator;
+import com.github.vincentrussell.query.mongodb.sql.converter.jdbc.MongodbConnection;
+import com.github.vincentrussell.query.mongodb.sql.converter.jdbc.MongodbDataSource;
+import com.github.vincentrussell.query.mongodb.sql.converter.util.DateLiteralParser;
+import com.mongodb.MongoClientSettings;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.core.type.filter.AssignableTypeFilter;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcDaoSupport;
+import org.springframework.util.ClassUtils;
+import qeorm.annotation.Table;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Translates the common sql shapes of the where templates of every {@link MongodbModelBase} subclass up front and
+ * connects to their databases, so the first requests after a deploy do not pay for parsing, class loading and
+ * connecting.
+ * <p>
+ * The translations of the templates are only cached when the templates are prepared
+ * ({@link MongoDbExecutor#D_PREPARED_TEMPLATE}). Otherwise every request translates its sql with the parameter values
+ * in it, which no warm-up can know, so the templates are only checked and the translation code loaded.
+ * <p>
+ * Opt-in: register it as a bean, it runs once when the context is refreshed, or call {@link #warmUp()}.
+ * The packages to scan are in the {@link #D_WARM_UP_PACKAGES} system property, comma separated.
+ */
+public class MongoWarmUp implements ApplicationListener<ContextRefreshedEvent> {
+    public static final String D_WARM_UP_PACKAGES = "mongoWarmUpPackages";
+    private static final Pattern PARAMETER = Pattern.compile("%?\\{([\\.a-zA-Z\\d_]+)\\}%?");
+    private static final Pattern AND = Pattern.compile("\\s+and\\s+", Pattern.CASE_INSENSITIVE);
+
+    private final Logger logger = LoggerFactory.getLogger(MongoWarmUp.class);
+    private final AtomicBoolean done = new AtomicBoolean();
+    private final List<String> basePackages;
+
+    public MongoWarmUp() {
+        this(System.getProperty(D_WARM_UP_PACKAGES, "").split(","));
+    }
+
+    public MongoWarmUp(String... basePackages) {
+        this.basePackages = new ArrayList<>();
+        for (String basePackage : basePackages) {
+            if (!basePackage.trim().isEmpty()) {
+                this.basePackages.add(basePackage.trim());
+            }
+        }
+    }
+
+    @Override
+    public void onApplicationEvent(ContextRefreshedEvent event) {
+        warmUp();
+    }
+
+    /**
+     * Warm up once, later calls do nothing.
+     */
+    public void warmUp() {
+        if (basePackages.isEmpty() || !done.compareAndSet(false, true)) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        List<Class<?>> models = findModels();
+        Set<String> sqls = new LinkedHashSet<>();
+        Set<String> dbNames = new LinkedHashSet<>();
+        for (Class<?> model : models) {
+            Table table = model.getAnnotation(Table.class);
+            if (table == null) {
+                continue;
+            }
+            sqls.addAll(shapes(table.tableName(), table.where()));
+            dbNames.add(table.masterDbName());
+            dbNames.add(table.slaveDbName());
+        }
+        warmUpParsers();
+        boolean prepared = Boolean.getBoolean(MongoDbExecutor.D_PREPARED_TEMPLATE);
+        for (BulkTranslator.Translation translation : new BulkTranslator(ForkJoinPool.commonPool(), prepared).translate(sqls)) {
+            if (!translation.isSuccess()) {
+                logger.warn("sql模板不能翻译：{} , {}", translation.getSql(), translation.getException().getMessage());
+            }
+            if (prepared) {
+                // the lookup MongoDbExecutor.prepare makes, it marks the templates that cannot be prepared
+                MongoDbExecutor.getTemplate(translation.getSql());
+            }
+        }
+        warmUpCodecs();
+        for (String dbName : dbNames) {
+            ping(dbName);
+        }
+        logger.info("预热了{}个model的{}个sql模板，耗时{}ms", models.size(), sqls.size(), System.currentTimeMillis() - start);
+    }
+
+    private List<Class<?>> findModels() {
+        ClassPathScanningCandidateComponentProvider provider = new ClassPathScanningCandidateComponentProvider(false);
+        provider.addIncludeFilter(new AssignableTypeFilter(MongodbModelBase.class));
+        List<Class<?>> models = new ArrayList<>();
+        for (String basePackage : basePackages) {
+            for (BeanDefinition beanDefinition : provider.findCandidateComponents(basePackage)) {
+                try {
+                    models.add(ClassUtils.forName(beanDefinition.getBeanClassName(), MongoWarmUp.class.getClassLoader()));
+                } catch (ClassNotFoundException | LinkageError e) {
+                    logger.warn("不能加载model：{}", beanDefinition.getBeanClassName(), e);
+                }
+            }
+        }
+        return models;
+    }
+
+    /**
+     * The sql templates MongoDbExecutor runs for a where template: without a where clause, with every single
+     * condition and with all of them, for a select and a count. qeorm puts a named parameter in place of each
+     * {name} with the % around it, and the templates go through {@link MongoDbExecutor#toTemplateSql(String)} like
+     * the sql of qeorm does, so they are the keys {@link MongoDbExecutor#getTemplate(String)} looks up.
+     *
+     * @param tableName the collection
+     * @param where     the where template, like "data_id={dataId} and trace_id like {traceId}%"
+     * @return the sql templates with named parameters
+     */
+    public static List<String> shapes(String tableName, String where) {
+        List<String> conditions = new ArrayList<>();
+        if (where != null && !where.trim().isEmpty()) {
+            for (String condition : AND.split(where.trim())) {
+                Matcher matcher = PARAMETER.matcher(condition.trim());
+                conditions.add(matcher.replaceAll(":$1"));
+            }
+        }
+        List<List<String>> wheres = new ArrayList<>();
+        wheres.add(new ArrayList<String>());
+        for (String condition : conditions) {
+            wheres.add(Arrays.asList(condition));
+        }
+        if (conditions.size() > 1) {
+            wheres.add(conditions);
+        }
+        List<String> shapes = new ArrayList<>();
+        for (String select : Arrays.asList("select * from ", "select count(*) from ")) {
+            for (List<String> shape : wheres) {
+                shapes.add(MongoDbExecutor.toTemplateSql(
+                        select + tableName + (shape.isEmpty() ? "" : " where " + String.join(" and ", shape))));
+            }
+        }
+        return shapes;
+    }
+
+    private void warmUpParsers() {
+        DateLiteralParser.parse("2019-09-03 00:00:00");
+        try {
+            DateLiteralParser.parseNaturalLanguage("today");
+        } catch (IllegalArgumentException e) {
+            //noop
+        }
+    }
+
+    private void warmUpCodecs() {
+        Codec<Document> codec = MongoClientSettings.getDefaultCodecRegistry().get(Document.class);
+        Document document = new Document("_id", new ObjectId()).append("date", new Date()).append("long", 1L)
+                .append("double", 1D).append("list", Arrays.asList("a", "b")).append("document", new Document("a", true));
+        RawBsonDocument raw = new RawBsonDocument(document, codec);
+        codec.decode(raw.asBsonReader(), DecoderContext.builder().build());
+    }
+
+    private void ping(String dbName) {
+        if (dbName == null || dbName.isEmpty()) {
+            return;
+        }
+        try {
+            NamedParameterJdbcDaoSupport jdbc = SqlSession.instance.getSupport(dbName);
+            MongodbConnection connection = (MongodbConnection) ((MongodbDataSource) jdbc.getDataSource()).getConnection();
+            connection.getDataBase().runCommand(new Document("ping", 1));
+        } catch (Exception e) {
+            logger.warn("不能连接数据库{}：{}", dbName, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.github.vincentrussell.query.mongodb.sql.converter;
+
+import org.bson.Document;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class BulkTranslatorTest {
+
+    @Test
+    public void translationsAreInInputOrder() {
+        List<String> sqls = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            sqls.add(i % 50 == 0 ? "select * from my_table where key == 'value" + i + "'"
+                    : "select * from table_" + i + " where value=" + i + " and create_at > '2019-09-03 00:00:00'");
+        }
+        ForkJoinPool pool = new ForkJoinPool(4);
+        List<BulkTranslator.Translation> translations = new BulkTranslator(pool, false).translate(sqls);
+        pool.shutdown();
+        assertEquals(sqls.size(), translations.size());
+        for (int i = 0; i < sqls.size(); i++) {
+            BulkTranslator.Translation translation = translations.get(i);
+            assertEquals(sqls.get(i), translation.getSql());
+            if (i % 50 == 0) {
+                assertFalse(translation.isSuccess());
+                assertNotNull(translation.getException());
+            } else {
+                assertTrue(translation.isSuccess());
+                MongoDBQueryHolder mongoQuery = translation.getQueryConverter().getMongoQuery();
+                assertEquals("table_" + i, mongoQuery.getCollection());
+                List<Document> and = (List<Document>) mongoQuery.getQuery().get("$and");
+                assertEquals(new Document("value", (long) i), and.get(0));
+                assertTrue(((Document) and.get(1).get("create_at")).get("$gt") instanceof Date);
+            }
+        }
+    }
+
+    @Test
+    public void failures() {
+        List<BulkTranslator.Translation> failures = new BulkTranslator().failures(Arrays.asList(
+                "select * from my_table where value=1", "select * from my_table where key == 'value1'"));
+        assertEquals(1, failures.size());
+        assertEquals("select * from my_table where key == 'value1'", failures.get(0).getSql());
+    }
+
+    @Test
+    public void stream() {
+        List<BulkTranslator.Translation> translations = new BulkTranslator()
+                .translate(Stream.of("select * from a where value=1", "select * from b where value=2"));
+        assertEquals("a", translations.get(0).getQueryConverter().getMongoQuery().getCollection());
+        assertEquals("b", translations.get(1).getQueryConverter().getMongoQuery().getCollection());
+    }
+}
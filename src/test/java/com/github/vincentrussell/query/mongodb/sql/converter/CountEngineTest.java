@@ -0,0 +1,60 @@
+package com.github.vincentrussell.query.mongodb.sql.converter;
+
+import com.mongodb.ReadPreference;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CountEngineTest {
+
+    @After
+    public void after() {
+        CountEngine.invalidateAll();
+    }
+
+    @Test
+    public void estimatedWithoutFilter() {
+        assertTrue(CountEngine.isEstimated(new BsonDocument()));
+        assertFalse(CountEngine.isEstimated(new BsonDocument("status", new BsonString("2"))));
+    }
+
+    @Test
+    public void approximateCountsAreKept() throws ParseException {
+        CountEngine.Key key = CountEngine.key("test.rpc_logs", ReadPreference.primary(), new BsonDocument("status", new BsonString("2")));
+        QueryOptions approximate = new QueryConverter("select /*+ approximateCount */ count(*) from rpc_logs where status='2'")
+                .getMongoQuery().getOptions();
+        assertTrue(approximate.isApproximateCount());
+        CountEngine.put(key, 42);
+        assertEquals(Long.valueOf(42), CountEngine.getIfPresent(key, approximate));
+        assertEquals(Long.valueOf(42), CountEngine.getIfPresent(key, QueryOptions.NONE));
+        assertNull(CountEngine.getIfPresent(CountEngine.key("test.rpc_logs", ReadPreference.primary(), new BsonDocument("status", new BsonString("3"))), approximate));
+    }
+
+    @Test
+    public void writesDropTheKeptCounts() {
+        QueryOptions approximate = QueryOptions.Builder.create().setApproximateCount(true).build();
+        CountEngine.Key key = CountEngine.key("test.rpc_logs", ReadPreference.primary(), new BsonDocument("status", new BsonString("2")));
+        CountEngine.Key other = CountEngine.key("test.rpc_logs_2019", ReadPreference.primary(), new BsonDocument("status", new BsonString("2")));
+        CountEngine.put(key, 42);
+        CountEngine.put(other, 7);
+        CountEngine.invalidate("test.rpc_logs");
+        assertNull(CountEngine.getIfPresent(key, approximate));
+        assertEquals(Long.valueOf(7), CountEngine.getIfPresent(other, approximate));
+        CountEngine.Key next = CountEngine.key("test.rpc_logs", ReadPreference.primary(), new BsonDocument("status", new BsonString("2")));
+        assertNull(CountEngine.getIfPresent(next, approximate));
+        CountEngine.put(next, 43);
+        assertEquals(Long.valueOf(43), CountEngine.getIfPresent(next, approximate));
+    }
+
+    @Test
+    public void countsAreKeptPerReadPreference() {
+        BsonDocument filter = new BsonDocument("status", new BsonString("2"));
+        CountEngine.put(CountEngine.key("test.rpc_logs", ReadPreference.secondaryPreferred(), filter), 41);
+        assertNull(CountEngine.getIfPresent(CountEngine.key("test.rpc_logs", ReadPreference.primary(), filter), QueryOptions.NONE));
+        assertEquals(Long.valueOf(41), CountEngine.getIfPresent(
+                CountEngine.key("test.rpc_logs", ReadPreference.secondaryPreferred(), filter), QueryOptions.NONE));
+    }
+}
@@ -1,5 +1,6 @@
 package com.github.vincentrussell.query.mongodb.sql.converter;
 
+import com.github.vincentrussell.query.mongodb.sql.converter.util.DateLiteralParser;
 import com.github.vincentrussell.query.mongodb.sql.converter.util.SqlUtils;
 import org.joda.time.DateTime;
 import org.joda.time.format.DateTimeFormat;
@@ -10,11 +11,16 @@ import qeorm.StringFormat;
 import qeorm.utils.JsonUtils;
 import qeorm.utils.Wrap;
 
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.regex.Matcher;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
 public class DateTimeTest {
     @Test
     public void format() {
@@ -28,6 +34,22 @@ public class DateTimeTest {
         System.out.println(dateTime);
     }
 
+    @Test
+    public void dateLiterals() {
+        ZoneId zone = DateLiteralParser.getZone();
+        assertEquals(Date.from(LocalDateTime.of(2019, 10, 28, 0, 0).atZone(zone).toInstant()),
+                DateLiteralParser.parse("2019-10-28"));
+        assertEquals(Date.from(LocalDateTime.of(2019, 1, 2, 3, 4, 5).atZone(zone).toInstant()),
+                DateLiteralParser.parse("2019-1-2 3:4:5"));
+        assertEquals(Date.from(LocalDateTime.of(2019, 10, 28, 10, 22, 22, 123000000).atZone(zone).toInstant()),
+                DateLiteralParser.parse("2019-10-28 10:22:22.123"));
+        assertEquals(new Date(1572258142000L), DateLiteralParser.parse("2019-10-28T10:22:22Z"));
+        assertEquals(Date.from(LocalDateTime.of(2019, 10, 28, 0, 0).atZone(zone).toInstant()),
+                DateLiteralParser.parse("20191028"));
+        assertNull(DateLiteralParser.parse("2019-02-30"));
+        assertNull(DateLiteralParser.parse("45 days ago"));
+    }
+
     @Test
     public void testJson() {
         Map map = new HashMap() {{
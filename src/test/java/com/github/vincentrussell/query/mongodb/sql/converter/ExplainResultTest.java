@@ -0,0 +1,71 @@
+package com.github.vincentrussell.query.mongodb.sql.converter;
+
+import org.bson.Document;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class ExplainResultTest {
+
+    @Test
+    public void explainSelect() throws ParseException {
+        QueryConverter queryConverter = new QueryConverter("explain select type from rpc_logs where type='a' order by create_at desc limit 10");
+        assertTrue(queryConverter.isExplain());
+        assertEquals(SQLCommandType.SELECT, queryConverter.getMongoQuery().getSqlCommandType());
+        assertEquals(new Document("explain", new Document("find", "rpc_logs").append("filter", new Document("type", "a"))
+                        .append("projection", new Document("_id", 0).append("type", 1))
+                        .append("sort", new Document("create_at", -1)).append("limit", 10L))
+                        .append("verbosity", "queryPlanner"),
+                queryConverter.getExplainCommand(queryConverter.getExplainVerbosity()));
+        assertEquals("db.rpc_logs.explain(\"queryPlanner\").find({\n  \"type\": \"a\"\n} , {\n  \"_id\": 0,\n  \"type\": 1\n})"
+                + ".sort({\n  \"create_at\": -1\n}).limit(10)", queryConverter.getShellStatement());
+        assertFalse(new QueryConverter("select * from rpc_logs").isExplain());
+    }
+
+    @Test
+    public void explainAnalyze() throws ParseException {
+        QueryConverter queryConverter = new QueryConverter("EXPLAIN ANALYZE /*+ hint(idx_type) */ select count(*) from rpc_logs where type='a'");
+        assertEquals(new Document("explain", new Document("count", "rpc_logs").append("query", new Document("type", "a"))
+                        .append("hint", "idx_type")).append("verbosity", "executionStats"),
+                queryConverter.getExplainCommand(queryConverter.getExplainVerbosity()));
+
+        queryConverter = new QueryConverter("explain analyze delete from rpc_logs where type='a'");
+        assertEquals(new Document("delete", "rpc_logs").append("deletes",
+                Collections.singletonList(new Document("q", new Document("type", "a")).append("limit", 0))),
+                queryConverter.getExplainCommand(queryConverter.getExplainVerbosity()).get("explain"));
+    }
+
+    @Test(expected = ParseException.class)
+    public void explainInsert() throws ParseException {
+        new QueryConverter("explain insert into rpc_logs (type) values ('a')");
+    }
+
+    @Test
+    public void result() {
+        Document winningPlan = new Document("stage", "FETCH").append("inputStage",
+                new Document("stage", "IXSCAN").append("keyPattern", new Document("type", 1)).append("indexName", "idx_type"));
+        ExplainResult result = new ExplainResult(new Document("queryPlanner", new Document("winningPlan", winningPlan)
+                .append("rejectedPlans", Collections.emptyList()))
+                .append("executionStats", new Document("nReturned", 5).append("executionTimeMillis", 2)
+                        .append("totalKeysExamined", 5).append("totalDocsExamined", 5L)));
+        assertEquals("FETCH", result.getStage());
+        assertEquals(Collections.singletonList("idx_type"), result.getIndexNames());
+        assertFalse(result.isCollectionScan());
+        assertEquals(Long.valueOf(5), result.getReturned());
+        assertEquals(Long.valueOf(5), result.getKeysExamined());
+        assertEquals(Long.valueOf(5), result.getDocsExamined());
+        assertEquals(Long.valueOf(2), result.getExecutionTimeMillis());
+
+        // an aggregation reads the collection in its first stage
+        result = new ExplainResult(new Document("stages", Arrays.asList(
+                new Document("$cursor", new Document("queryPlanner", new Document("winningPlan", new Document("stage", "COLLSCAN")))),
+                new Document("$group", new Document("_id", "$type")))));
+        assertEquals("COLLSCAN", result.getStage());
+        assertTrue(result.isCollectionScan());
+        assertNull(result.getIndexName());
+        assertNull(result.getReturned());
+    }
+}
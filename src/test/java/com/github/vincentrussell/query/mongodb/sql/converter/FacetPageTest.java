@@ -0,0 +1,43 @@
+package com.github.vincentrussell.query.mongodb.sql.converter;
+
+import org.bson.Document;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FacetPageTest {
+
+    @Test
+    public void pipeline() throws ParseException {
+        QueryConverter queryConverter = new QueryConverter("select trace_id from rpc_logs where status='2' order by create_at desc limit 20,10");
+        List<Document> pipeline = FacetPage.getPipeline(queryConverter.getMongoQuery());
+        assertEquals(Arrays.asList(new Document("$match", new Document("status", "2")),
+                new Document("$sort", new Document("create_at", -1)),
+                new Document("$facet", new Document("total", Collections.singletonList(new Document("$count", "total")))
+                        .append("rows", Arrays.asList(new Document("$skip", 20L), new Document("$limit", 10L),
+                                new Document("$project", new Document("_id", 0).append("trace_id", 1)))))),
+                pipeline);
+    }
+
+    @Test
+    public void withoutWhereClause() throws ParseException {
+        List<Document> pipeline = FacetPage.getPipeline(new QueryConverter("select * from rpc_logs limit 10").getMongoQuery());
+        assertEquals(1, pipeline.size());
+        assertTrue(pipeline.get(0).containsKey("$facet"));
+    }
+
+    @Test
+    public void toPage() {
+        FacetPage page = FacetPage.toPage(new Document("total", Collections.singletonList(new Document("total", 42)))
+                .append("rows", Arrays.asList(new Document("trace_id", "a"), new Document("trace_id", "b"))));
+        assertEquals(42, page.getTotal());
+        assertEquals(2, page.getRows().size());
+        FacetPage empty = FacetPage.toPage(new Document("total", Collections.emptyList()).append("rows", Collections.emptyList()));
+        assertEquals(0, empty.getTotal());
+        assertTrue(empty.getRows().isEmpty());
+    }
+}
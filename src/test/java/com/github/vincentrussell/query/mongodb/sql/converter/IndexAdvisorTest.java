@@ -0,0 +1,73 @@
+package com.github.vincentrussell.query.mongodb.sql.converter;
+
+import org.bson.Document;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class IndexAdvisorTest {
+    private static final List<Document> INDEXES = Arrays.asList(
+            index("_id_", new Document("_id", 1)),
+            index("idx_type_create_at", new Document("type", 1).append("create_at", -1)));
+
+    private static Document index(String name, Document keys) {
+        return new Document("v", 2).append("key", keys).append("name", name);
+    }
+
+    private static IndexAdvisor.Advice advise(String sql, List<Document> indexes) throws ParseException {
+        return IndexAdvisor.advise(new QueryConverter(sql).getMongoQuery(), indexes);
+    }
+
+    @Test
+    public void servedByIndex() throws ParseException {
+        IndexAdvisor.Advice advice = advise("select type, create_at from rpc_logs where type='a' order by create_at", INDEXES);
+        assertEquals("idx_type_create_at", advice.getIndexName());
+        assertFalse(advice.isCollscanRisk());
+        assertFalse(advice.isInMemorySort());
+        assertTrue(advice.isCovered());
+        assertNull(advice.getSuggestedIndex());
+        assertFalse(advise("select * from rpc_logs where type='a'", INDEXES).isCovered());
+
+        assertTrue(advise("select count(*) from rpc_logs where type='a'", INDEXES).isCovered());
+    }
+
+    @Test
+    public void collscanRisk() throws ParseException {
+        IndexAdvisor.Advice advice = advise("select * from rpc_logs where cost > 100 and app='x' order by create_at desc", INDEXES);
+        assertNull(advice.getIndexName());
+        assertTrue(advice.isCollscanRisk());
+        assertTrue(advice.isInMemorySort());
+        assertEquals(new Document("app", 1).append("create_at", -1).append("cost", 1), advice.getSuggestedIndex());
+
+        assertTrue(advise("select * from rpc_logs where type='a' or app='x'", INDEXES).isCollscanRisk());
+        assertFalse(advise("select * from rpc_logs where type='a' or _id='x'", INDEXES).isCollscanRisk());
+        assertFalse(advise("select * from rpc_logs", Collections.<Document>emptyList()).isCollscanRisk());
+    }
+
+    @Test
+    public void inMemorySort() throws ParseException {
+        IndexAdvisor.Advice advice = advise("select * from rpc_logs where type='a' order by cost", INDEXES);
+        assertEquals("idx_type_create_at", advice.getIndexName());
+        assertFalse(advice.isCollscanRisk());
+        assertTrue(advice.isInMemorySort());
+        assertEquals(new Document("type", 1).append("cost", 1), advice.getSuggestedIndex());
+    }
+
+    @Test
+    public void toSql() {
+        assertEquals("select * from rpc_logs", IndexAdvisor.toSql(" select * from rpc_logs; "));
+        assertNull(IndexAdvisor.toSql("-- select * from rpc_logs"));
+        assertNull(IndexAdvisor.toSql(""));
+        assertEquals("select * from rpc_logs where type='a'",
+                IndexAdvisor.toSql("要在数据库log的sql[1f]：select * from rpc_logs where type='a' , 参数为：{}"));
+        assertEquals("select * from rpc_logs where type='a'",
+                IndexAdvisor.toSql("在数据库log上执行的sql[1f]：select * from rpc_logs where type='a' , 集合：rpc_logs , 返回3行"
+                        + " , 耗时(ms)：翻译0.1 , 语句：db.rpc_logs.find({\"type\": \"a\"})"));
+        assertEquals("select * from rpc_logs",
+                IndexAdvisor.toSql("在数据库log上执行的sql：select * from rpc_logs , 耗时(ms)：翻译0.1"));
+    }
+}
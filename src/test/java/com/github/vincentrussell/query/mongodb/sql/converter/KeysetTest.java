@@ -0,0 +1,84 @@
+package com.github.vincentrussell.query.mongodb.sql.converter;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class KeysetTest {
+
+    @Test
+    public void firstPage() throws ParseException {
+        QueryConverter page = Keyset.seek(new QueryConverter("select * from rpc_logs where status='2' order by create_at desc limit 10000,10"), null);
+        MongoDBQueryHolder mongoQuery = page.getMongoQuery();
+        assertEquals(new Document("status", "2"), mongoQuery.getQuery());
+        assertEquals(new Document("create_at", -1).append("_id", 1), mongoQuery.getSort());
+        assertEquals(-1, mongoQuery.getOffset());
+        assertEquals(10, mongoQuery.getLimit());
+    }
+
+    @Test
+    public void nextPage() throws ParseException {
+        QueryConverter queryConverter = new QueryConverter("select trace_id from rpc_logs where status='2' order by create_at desc limit 10000,2");
+        QueryConverter page = Keyset.seek(queryConverter, "");
+        assertEquals(new Document("trace_id", 1).append("create_at", 1).append("_id", 1), page.getMongoQuery().getProjection());
+        Date createAt = new Date(1567440000000L);
+        ObjectId id = new ObjectId();
+        List<Document> rows = Arrays.asList(new Document("_id", new ObjectId()).append("create_at", new Date()),
+                new Document("_id", id).append("create_at", createAt));
+        String token = Keyset.nextToken(page, rows);
+        assertNotNull(token);
+        MongoDBQueryHolder next = Keyset.seek(queryConverter, token).getMongoQuery();
+        assertEquals(new Document("$and", Arrays.asList(new Document("status", "2"),
+                new Document("$or", Arrays.asList(new Document("create_at", new Document("$lt", createAt)),
+                        new Document("create_at", createAt).append("_id", new Document("$gt", id)))))), next.getQuery());
+        assertFalse(queryConverter.getMongoQuery().getQuery().containsKey("$and"));
+    }
+
+    @Test
+    public void removeSortColumns() throws ParseException {
+        QueryConverter queryConverter = new QueryConverter("select trace_id from rpc_logs order by create_at limit 1");
+        QueryConverter page = Keyset.seek(queryConverter, null);
+        List<Document> rows = Collections.singletonList(new Document("_id", new ObjectId()).append("trace_id", "a")
+                .append("create_at", new Date()));
+        Keyset.removeSortColumns(queryConverter, page, rows);
+        assertEquals(new Document("trace_id", "a"), rows.get(0));
+
+        queryConverter = new QueryConverter("select * from rpc_logs order by create_at limit 1");
+        Document row = new Document("_id", new ObjectId()).append("trace_id", "a").append("create_at", new Date());
+        rows = Collections.singletonList(new Document(row));
+        Keyset.removeSortColumns(queryConverter, Keyset.seek(queryConverter, null), rows);
+        assertEquals(row, rows.get(0));
+    }
+
+    @Test
+    public void lastPage() throws ParseException {
+        QueryConverter page = Keyset.seek(new QueryConverter("select * from rpc_logs order by create_at limit 10"), null);
+        assertNull(Keyset.nextToken(page, Collections.singletonList(new Document("_id", new ObjectId()))));
+        assertNull(Keyset.nextToken(page, Collections.<Document>emptyList()));
+    }
+
+    @Test
+    public void tokenOfAnotherSort() throws ParseException {
+        QueryConverter page = Keyset.seek(new QueryConverter("select * from rpc_logs order by create_at limit 1"), null);
+        String token = Keyset.nextToken(page, Collections.singletonList(new Document("_id", new ObjectId()).append("create_at", new Date())));
+        try {
+            Keyset.seek(new QueryConverter("select * from rpc_logs order by trace_id limit 1"), token);
+            fail();
+        } catch (ParseException e) {
+            //expected
+        }
+        try {
+            Keyset.seek(new QueryConverter("select count(*) from rpc_logs"), null);
+            fail();
+        } catch (ParseException e) {
+            //expected
+        }
+    }
+}
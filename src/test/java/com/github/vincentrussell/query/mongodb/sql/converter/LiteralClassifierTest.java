@@ -0,0 +1,52 @@
+package com.github.vincentrussell.query.mongodb.sql.converter;
+
+import com.github.vincentrussell.query.mongodb.sql.converter.util.DateLiteralParser;
+import com.github.vincentrussell.query.mongodb.sql.converter.util.LiteralClassifier;
+import com.github.vincentrussell.query.mongodb.sql.converter.util.SqlUtils;
+import org.junit.Test;
+
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+
+public class LiteralClassifierTest {
+
+    @Test
+    public void unknownFieldType() throws ParseException {
+        assertEquals(true, LiteralClassifier.classify("TRUE", FieldType.UNKNOWN));
+        assertEquals(DateLiteralParser.parse("2019-10-28"), LiteralClassifier.classify("2019-10-28", FieldType.UNKNOWN));
+        assertEquals("20191028", LiteralClassifier.classify("20191028", FieldType.UNKNOWN));
+        assertEquals(12L, LiteralClassifier.classify(12L, FieldType.UNKNOWN));
+        assertEquals("abc", LiteralClassifier.classify("abc", null));
+    }
+
+    @Test
+    public void invalidDateStaysString() throws ParseException {
+        assertEquals("2019-02-30", LiteralClassifier.classify("2019-02-30", FieldType.UNKNOWN));
+        assertEquals("2019-10-28 10:00:00x5", LiteralClassifier.classify("2019-10-28 10:00:00x5", FieldType.UNKNOWN));
+        assertEquals("2019-02-30", SqlUtils.getDateOrString("2019-02-30"));
+    }
+
+    @Test
+    public void mappedFieldType() throws ParseException {
+        assertEquals("2019-10-28", LiteralClassifier.classify("2019-10-28", FieldType.STRING));
+        assertEquals("it's", LiteralClassifier.classify("it''s", FieldType.STRING));
+        assertEquals(false, LiteralClassifier.classify("false", FieldType.BOOLEAN));
+        assertEquals(Date.class, LiteralClassifier.classify("2019-10-28", FieldType.DATE).getClass());
+    }
+
+    @Test
+    public void numbers() throws ParseException {
+        assertEquals(-12L, LiteralClassifier.toNumber("-12"));
+        assertEquals(Long.MAX_VALUE, LiteralClassifier.toNumber("9223372036854775807"));
+        assertEquals(9223372036854775808D, LiteralClassifier.toNumber("9223372036854775808"));
+        assertEquals(1.5D, LiteralClassifier.toNumber("1.5"));
+        assertEquals(1000D, LiteralClassifier.toNumber("1e3"));
+        assertEquals(.5D, LiteralClassifier.toNumber(".5"));
+    }
+
+    @Test(expected = ParseException.class)
+    public void notANumber() throws ParseException {
+        LiteralClassifier.toNumber("12abc");
+    }
+}
@@ -0,0 +1,82 @@
+package com.github.vincentrussell.query.mongodb.sql.converter;
+
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.types.Decimal128;
+import org.bson.types.ObjectId;
+import org.junit.Test;
+import qeorm.ModelCodec;
+import qeorm.ModelCodecProvider;
+import qeorm.MongodbModelBase;
+import qeorm.utils.JsonUtils;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ModelCodecTest {
+    private final Codec<RpcLog> codec = ModelCodecProvider.CODEC_REGISTRY.get(RpcLog.class);
+
+    @Test
+    public void decode() {
+        Date createAt = new Date(1567440000000L);
+        Document document = new Document("_id", new ObjectId()).append("data_id", "d1").append("trace_id", "t1")
+                .append("status", "2").append("retry", 3L).append("handle_len", 12)
+                .append("request_data", new Document("a", 1)).append("create_at", createAt)
+                .append("error_msg", null).append("not_mapped", "x").append("beginTime", createAt);
+        RawBsonDocument raw = new RawBsonDocument(document, ModelCodecProvider.CODEC_REGISTRY.get(Document.class));
+        RpcLog rpcLog = codec.decode(raw.asBsonReader(), DecoderContext.builder().build());
+        assertEquals("d1", rpcLog.getDataId());
+        assertEquals("t1", rpcLog.getTraceId());
+        assertEquals("2", rpcLog.getStatus());
+        assertEquals(Integer.valueOf(3), rpcLog.getRetry());
+        assertEquals(Long.valueOf(12), rpcLog.getHandleLen());
+        assertEquals(1, rpcLog.getRequestData().get("a"));
+        assertEquals(createAt, rpcLog.getCreateAt());
+        assertNull(rpcLog.getErrorMsg());
+        assertNull(rpcLog.getBeginTime());
+    }
+
+    @Test
+    public void decodeConvertsLikeQeorm() {
+        Date createAt = new Date(1567440000000L);
+        Document document = new Document("handle_len", new Decimal128(new BigDecimal("12")))
+                .append("status", createAt).append("url", new Document("a", 1)).append("retry", 3.0D);
+        RawBsonDocument raw = new RawBsonDocument(document, ModelCodecProvider.CODEC_REGISTRY.get(Document.class));
+        RpcLog rpcLog = codec.decode(raw.asBsonReader(), DecoderContext.builder().build());
+        assertEquals(Long.valueOf(12), rpcLog.getHandleLen());
+        assertEquals(JsonUtils.toJson(createAt).replaceAll("\"", ""), rpcLog.getStatus());
+        assertEquals(JsonUtils.toJson(new Document("a", 1)), rpcLog.getUrl());
+        assertEquals(Integer.valueOf(3), rpcLog.getRetry());
+    }
+
+    @Test
+    public void nestedModelsAreNotDecodable() {
+        assertTrue(ModelCodec.isDecodable(RpcLog.class));
+        assertFalse(ModelCodec.isDecodable(RpcLogs.class));
+    }
+
+    public static class RpcLogs extends MongodbModelBase {
+        private RpcLog last;
+        private List<RpcLog> logs;
+    }
+
+    @Test
+    public void encode() {
+        RpcLog rpcLog = new RpcLog();
+        rpcLog.setDataId("d1");
+        rpcLog.setHandleLen(12L);
+        rpcLog.setBeginTime(new Date());
+        BsonDocument document = new RawBsonDocument(rpcLog, codec).toBsonDocument(BsonDocument.class, ModelCodecProvider.CODEC_REGISTRY);
+        assertEquals("d1", document.getString("data_id").getValue());
+        assertEquals(12L, document.getInt64("handle_len").getValue());
+        assertEquals(0, document.getInt32("retry").getValue());
+        assertFalse(document.containsKey("beginTime"));
+        assertFalse(document.containsKey("trace_id"));
+    }
+}
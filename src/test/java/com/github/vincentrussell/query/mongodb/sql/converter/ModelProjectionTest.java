@@ -0,0 +1,36 @@
+package com.github.vincentrussell.query.mongodb.sql.converter;
+
+import org.bson.Document;
+import org.junit.Test;
+import qeorm.ModelProjection;
+
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ModelProjectionTest {
+
+    @Test
+    public void columnsOfTheModel() {
+        Document projection = ModelProjection.of(RpcLog.class);
+        assertEquals(Integer.valueOf(1), projection.get("data_id"));
+        assertEquals(Integer.valueOf(1), projection.get("create_at"));
+        assertEquals(Integer.valueOf(1), projection.get("status"));
+        assertFalse(projection.containsKey("createAt"));
+        assertFalse(projection.containsKey("beginTime"));
+        assertFalse(projection.containsKey("reqValue"));
+        assertNull(ModelProjection.of(Map.class));
+    }
+
+    @Test
+    public void onlySelectStarIsNarrowed() throws ParseException {
+        Document projection = ModelProjection.of(RpcLog.class);
+        QueryConverter selectStar = new QueryConverter("select * from rpc_logs where status='2'").withProjection(projection);
+        assertEquals(projection, selectStar.getMongoQuery().getProjection());
+        assertTrue(selectStar.getShellStatement().contains("\"trace_id\": 1"));
+        QueryConverter columns = new QueryConverter("select trace_id from rpc_logs");
+        assertSame(columns, columns.withProjection(projection));
+        QueryConverter count = new QueryConverter("select count(*) from rpc_logs");
+        assertSame(count, count.withProjection(projection));
+    }
+}
@@ -0,0 +1,84 @@
+package com.github.vincentrussell.query.mongodb.sql.converter;
+
+import org.junit.Test;
+import qeorm.MongoFanOut;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class MongoFanOutTest {
+
+    @Test
+    public void resultsInInputOrderWithinThePermits() {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            final int index = i;
+            tasks.add(() -> {
+                int now = running.incrementAndGet();
+                maxRunning.accumulateAndGet(now, Math::max);
+                Thread.sleep(40 - index);
+                running.decrementAndGet();
+                return index;
+            });
+        }
+        List<Integer> results = MongoFanOut.run("fan-out-test", tasks);
+        for (int i = 0; i < 40; i++) {
+            assertEquals(Integer.valueOf(i), results.get(i));
+        }
+        assertTrue(maxRunning.get() > 1);
+        assertTrue(maxRunning.get() <= Integer.getInteger(MongoFanOut.D_FAN_OUT_PERMITS, 16));
+    }
+
+    @Test
+    public void firstFailureIsThrown() {
+        List<Callable<String>> tasks = new ArrayList<>();
+        tasks.add(() -> "ok");
+        tasks.add(() -> {
+            throw new IllegalStateException("broken");
+        });
+        try {
+            MongoFanOut.run("fan-out-test", tasks);
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("broken", e.getMessage());
+        }
+    }
+
+    @Test
+    public void failureCancelsTheTasksBeforeIt() throws InterruptedException {
+        final CountDownLatch never = new CountDownLatch(1);
+        final CountDownLatch ended = new CountDownLatch(1);
+        final AtomicBoolean interrupted = new AtomicBoolean();
+        List<Callable<String>> tasks = new ArrayList<>();
+        tasks.add(() -> {
+            try {
+                never.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                interrupted.set(true);
+            } finally {
+                ended.countDown();
+            }
+            return "slow";
+        });
+        tasks.add(() -> {
+            throw new IllegalStateException("broken");
+        });
+        try {
+            MongoFanOut.run("fan-out-test", tasks);
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("broken", e.getMessage());
+        }
+        ended.await();
+        assertTrue(interrupted.get());
+    }
+}
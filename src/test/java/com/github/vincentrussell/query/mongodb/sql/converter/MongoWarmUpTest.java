@@ -0,0 +1,48 @@
+package com.github.vincentrussell.query.mongodb.sql.converter;
+
+import org.junit.Test;
+import qeorm.MongoDbExecutor;
+import qeorm.MongoWarmUp;
+import qeorm.annotation.Table;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MongoWarmUpTest {
+
+    @Test
+    public void shapesOfRpcLog() throws ParseException {
+        Table table = RpcLog.class.getAnnotation(Table.class);
+        List<String> shapes = MongoWarmUp.shapes(table.tableName(), table.where());
+        assertEquals(2 * (1 + 10 + 1), shapes.size());
+        assertEquals("select * from rpc_logs", shapes.get(0));
+        assertEquals("select * from rpc_logs where data_id=:dataId", shapes.get(1));
+        assertEquals("select * from rpc_logs where error_msg like :errorMsg", shapes.get(10));
+        assertEquals("select count(*) from rpc_logs", shapes.get(12));
+        assertTrue(new BulkTranslator().failures(shapes).isEmpty());
+        for (String shape : shapes) {
+            assertNotNull(shape, QueryPlanCache.getTemplate(shape));
+        }
+    }
+
+    @Test
+    public void warmedTemplatesAreTheKeysOfThePreparedPath() {
+        Table table = RpcLog.class.getAnnotation(Table.class);
+        for (String shape : MongoWarmUp.shapes(table.tableName(), table.where())) {
+            assertNotNull(shape, MongoDbExecutor.getTemplate(shape));
+        }
+        long size = QueryPlanCache.size();
+        long hits = QueryPlanCache.stats().hitCount();
+        // the sql of qeorm without a condition and with one, looked up as MongoDbExecutor.prepare does
+        assertNotNull(MongoDbExecutor.getTemplate(MongoDbExecutor.toTemplateSql("select * from rpc_logs where 1=1 ")));
+        assertNotNull(MongoDbExecutor.getTemplate(MongoDbExecutor.toTemplateSql("select  *  from rpc_logs where data_id=:dataId ")));
+        assertEquals(size, QueryPlanCache.size());
+        assertEquals(hits + 2, QueryPlanCache.stats().hitCount());
+    }
+
+    @Test
+    public void shapesWithoutWhere() {
+        assertEquals(2, MongoWarmUp.shapes("my_table", "").size());
+    }
+}
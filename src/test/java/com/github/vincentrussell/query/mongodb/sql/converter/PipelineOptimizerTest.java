@@ -0,0 +1,47 @@
+package com.github.vincentrussell.query.mongodb.sql.converter;
+
+import org.bson.Document;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PipelineOptimizerTest {
+
+    @Test
+    public void pagedGroupBy() throws ParseException {
+        QueryConverter queryConverter = new QueryConverter("select agent_code, sum(advance_amount) from orders "
+                + "where status='2' group by agent_code order by sum(advance_amount) desc limit 20,10");
+        List<Document> pipeline = queryConverter.getGroupPipeline();
+        assertEquals(Arrays.asList(new Document("$match", new Document("status", "2")),
+                new Document("$project", new Document("agent_code", 1).append("advance_amount", 1).append("_id", 0)),
+                new Document("$group", queryConverter.getMongoQuery().getProjection()),
+                new Document("$sort", new Document("sum_advance_amount", -1)),
+                new Document("$limit", 30L),
+                new Document("$skip", 20L),
+                new Document("$project", queryConverter.getMongoQuery().getAliseProjection())), pipeline);
+    }
+
+    @Test
+    public void mergeAdjacentStages() {
+        List<Document> pipeline = PipelineOptimizer.optimize(Arrays.asList(new Document("$match", new Document()),
+                new Document("$match", new Document("a", 1)), new Document("$match", new Document("b", 2)),
+                new Document("$skip", 0), new Document("$limit", 10), new Document("$limit", 5),
+                new Document("$skip", 2), new Document("$skip", 3)));
+        assertEquals(Arrays.asList(new Document("$match", new Document("$and", Arrays.asList(new Document("a", 1), new Document("b", 2)))),
+                new Document("$limit", 5L), new Document("$skip", 5L)), pipeline);
+    }
+
+    @Test
+    public void groupProjection() {
+        assertEquals(new Document("a", 1).append("c", 1).append("_id", 0),
+                PipelineOptimizer.getGroupProjection(new Document("_id", new Document("a", "$a").append("b", "$a.b"))
+                        .append("sum_c", new Document("$sum", "$c")).append("count", new Document("$sum", 1))));
+        assertEquals(new Document("a", 1).append("_id", 1),
+                PipelineOptimizer.getGroupProjection(new Document("_id", "$a").append("first", new Document("$first", "$_id"))));
+        assertNull(PipelineOptimizer.getGroupProjection(new Document("_id", null).append("count", new Document("$sum", 1))));
+        assertNull(PipelineOptimizer.getGroupProjection(new Document("_id", "$$ROOT.a")));
+    }
+}
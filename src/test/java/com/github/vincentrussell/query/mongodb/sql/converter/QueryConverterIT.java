@@ -29,6 +29,7 @@ import java.io.*;
 import java.net.ServerSocket;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.stream.Stream;
 
 import static org.junit.Assert.assertEquals;
 
@@ -136,6 +137,17 @@ public class QueryConverterIT {
         System.out.println(list);
     }
 
+    @Test
+    public void testStream() throws ParseException, IOException {
+        String sql = "select * from rpc_logs where  create_at>='2019-03-19 0:00:00' and create_at<'2019-03-20 0:00:00' ";
+        try (Stream<Map> rows = ResultUtils.stream(QueryPlanCache.get(sql), mongoDatabase)) {
+            rows.limit(5).forEach(System.out::println);
+        }
+        sql = "select status,count(*) from rpc_logs where  create_at>='2019-03-19 0:00:00' and create_at<'2019-03-20 0:00:00' group by status ";
+        List<Map> groups = Lists.newArrayList(ResultUtils.iterate(QueryPlanCache.get(sql), mongoDatabase));
+        assertEquals(ResultUtils.<List>exec(mongoDatabase, sql).size(), groups.size());
+    }
+
     @Test
     public void testDelete() throws ParseException, IOException {
         String sql = "delete from rpc_logs where  trace_id='wAPshdPJEZPqMv3fHHe' ";
@@ -296,22 +308,22 @@ public class QueryConverterIT {
         List<Document> results = Lists.newArrayList(distinctIterable);
         assertEquals(6, results.size());
         assertEquals("[{\n" +
-                "\t\"_id\" : \"Missing\",\n" +
+                "\t\"borough\" : \"Missing\",\n" +
                 "\t\"count\" : 51\n" +
                 "},{\n" +
-                "\t\"_id\" : \"Staten Island\",\n" +
+                "\t\"borough\" : \"Staten Island\",\n" +
                 "\t\"count\" : 969\n" +
                 "},{\n" +
-                "\t\"_id\" : \"Manhattan\",\n" +
+                "\t\"borough\" : \"Manhattan\",\n" +
                 "\t\"count\" : 10259\n" +
                 "},{\n" +
-                "\t\"_id\" : \"Bronx\",\n" +
+                "\t\"borough\" : \"Bronx\",\n" +
                 "\t\"count\" : 2338\n" +
                 "},{\n" +
-                "\t\"_id\" : \"Queens\",\n" +
+                "\t\"borough\" : \"Queens\",\n" +
                 "\t\"count\" : 5656\n" +
                 "},{\n" +
-                "\t\"_id\" : \"Brooklyn\",\n" +
+                "\t\"borough\" : \"Brooklyn\",\n" +
                 "\t\"count\" : 6086\n" +
                 "}]", toJson(results));
     }
@@ -324,22 +336,22 @@ public class QueryConverterIT {
         List<Document> results = Lists.newArrayList(distinctIterable);
         assertEquals(6, results.size());
         assertEquals("[{\n" +
-                "\t\"_id\" : \"Manhattan\",\n" +
+                "\t\"borough\" : \"Manhattan\",\n" +
                 "\t\"count\" : 10259\n" +
                 "},{\n" +
-                "\t\"_id\" : \"Brooklyn\",\n" +
+                "\t\"borough\" : \"Brooklyn\",\n" +
                 "\t\"count\" : 6086\n" +
                 "},{\n" +
-                "\t\"_id\" : \"Queens\",\n" +
+                "\t\"borough\" : \"Queens\",\n" +
                 "\t\"count\" : 5656\n" +
                 "},{\n" +
-                "\t\"_id\" : \"Bronx\",\n" +
+                "\t\"borough\" : \"Bronx\",\n" +
                 "\t\"count\" : 2338\n" +
                 "},{\n" +
-                "\t\"_id\" : \"Staten Island\",\n" +
+                "\t\"borough\" : \"Staten Island\",\n" +
                 "\t\"count\" : 969\n" +
                 "},{\n" +
-                "\t\"_id\" : \"Missing\",\n" +
+                "\t\"borough\" : \"Missing\",\n" +
                 "\t\"count\" : 51\n" +
                 "}]", toJson(results));
     }
@@ -350,8 +362,8 @@ public class QueryConverterIT {
         QueryResultIterator<Document> distinctIterable = queryConverter.run(mongoDatabase);
         List<Document> results = Lists.newArrayList(distinctIterable);
         assertEquals(2, results.size());
-        assertEquals(Arrays.asList(new Document("_id", "Missing").append("count", 51),
-                new Document("_id", "Staten Island").append("count", 969)
+        assertEquals(Arrays.asList(new Document("borough", "Missing").append("count", 51),
+                new Document("borough", "Staten Island").append("count", 969)
         ), results);
     }
 
@@ -370,52 +382,36 @@ public class QueryConverterIT {
         }));
 
         assertEquals("[{\n" +
-                "\t\"_id\" : {\n" +
-                "\t\t\"borough\" : \"Manhattan\",\n" +
-                "\t\t\"cuisine\" : \"Chinese\"\n" +
-                "\t},\n" +
+                "\t\"borough\" : \"Manhattan\",\n" +
+                "\t\"cuisine\" : \"Chinese\",\n" +
                 "\t\"count\" : 510\n" +
                 "},{\n" +
-                "\t\"_id\" : {\n" +
-                "\t\t\"borough\" : \"Queens\",\n" +
-                "\t\t\"cuisine\" : \"American \"\n" +
-                "\t},\n" +
+                "\t\"borough\" : \"Queens\",\n" +
+                "\t\"cuisine\" : \"American \",\n" +
                 "\t\"count\" : 1040\n" +
                 "},{\n" +
-                "\t\"_id\" : {\n" +
-                "\t\t\"borough\" : \"Manhattan\",\n" +
-                "\t\t\"cuisine\" : \"Café/Coffee/Tea\"\n" +
-                "\t},\n" +
+                "\t\"borough\" : \"Manhattan\",\n" +
+                "\t\"cuisine\" : \"Café/Coffee/Tea\",\n" +
                 "\t\"count\" : 680\n" +
                 "},{\n" +
-                "\t\"_id\" : {\n" +
-                "\t\t\"borough\" : \"Manhattan\",\n" +
-                "\t\t\"cuisine\" : \"Italian\"\n" +
-                "\t},\n" +
+                "\t\"borough\" : \"Manhattan\",\n" +
+                "\t\"cuisine\" : \"Italian\",\n" +
                 "\t\"count\" : 621\n" +
                 "},{\n" +
-                "\t\"_id\" : {\n" +
-                "\t\t\"borough\" : \"Brooklyn\",\n" +
-                "\t\t\"cuisine\" : \"American \"\n" +
-                "\t},\n" +
+                "\t\"borough\" : \"Brooklyn\",\n" +
+                "\t\"cuisine\" : \"American \",\n" +
                 "\t\"count\" : 1273\n" +
                 "},{\n" +
-                "\t\"_id\" : {\n" +
-                "\t\t\"borough\" : \"Manhattan\",\n" +
-                "\t\t\"cuisine\" : \"American \"\n" +
-                "\t},\n" +
+                "\t\"borough\" : \"Manhattan\",\n" +
+                "\t\"cuisine\" : \"American \",\n" +
                 "\t\"count\" : 3205\n" +
                 "},{\n" +
-                "\t\"_id\" : {\n" +
-                "\t\t\"borough\" : \"Queens\",\n" +
-                "\t\t\"cuisine\" : \"Chinese\"\n" +
-                "\t},\n" +
+                "\t\"borough\" : \"Queens\",\n" +
+                "\t\"cuisine\" : \"Chinese\",\n" +
                 "\t\"count\" : 728\n" +
                 "},{\n" +
-                "\t\"_id\" : {\n" +
-                "\t\t\"borough\" : \"Brooklyn\",\n" +
-                "\t\t\"cuisine\" : \"Chinese\"\n" +
-                "\t},\n" +
+                "\t\"borough\" : \"Brooklyn\",\n" +
+                "\t\"cuisine\" : \"Chinese\",\n" +
                 "\t\"count\" : 763\n" +
                 "}]", toJson(filteredResults));
     }
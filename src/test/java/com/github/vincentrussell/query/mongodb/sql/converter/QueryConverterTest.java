@@ -13,10 +13,13 @@ import org.junit.rules.ExpectedException;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.StringReader;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import static org.hamcrest.CoreMatchers.containsString;
 import static org.junit.Assert.*;
@@ -42,6 +45,27 @@ public class QueryConverterTest {
         assertEquals(0,mongoDBQueryHolder.getQuery().size());
     }
 
+    @Test
+    public void selectFromReader() throws ParseException {
+        QueryConverter queryConverter = new QueryConverter(new StringReader("select column1 from my_table where value=1"));
+        MongoDBQueryHolder mongoDBQueryHolder = queryConverter.getMongoQuery();
+        assertEquals("my_table",mongoDBQueryHolder.getCollection());
+        assertEquals(new Document("value",1L),mongoDBQueryHolder.getQuery());
+    }
+
+    @Test
+    public void parserIsReusedAfterParseError() throws ParseException {
+        try {
+            new QueryConverter("select * from my_table where key == 'value1'");
+            fail("expected ParseException");
+        } catch (ParseException e) {
+            //expected
+        }
+        QueryConverter queryConverter = new QueryConverter("select * from other_table where value=1");
+        assertEquals("other_table",queryConverter.getMongoQuery().getCollection());
+        assertEquals(new Document("value",1L),queryConverter.getMongoQuery().getQuery());
+    }
+
     @Test
     public void selectAllFromTableWithoutWhereClauseLimit() throws ParseException {
         QueryConverter queryConverter = new QueryConverter("select * from my_table\n" +
@@ -635,6 +659,17 @@ public class QueryConverterTest {
         assertEquals(document("agent_code",document("$regex","^AW.{1}.*$")),mongoDBQueryHolder.getQuery());
     }
 
+    @Test
+    public void groupByAliasProjection() throws ParseException {
+        QueryConverter queryConverter = new QueryConverter("SELECT field_1, field_2 AS f2, COUNT(*) AS total, SUM(amount), AVG(amount) AS average \n" +
+                "FROM orders \n " +
+                "GROUP BY field_1, field_2");
+        MongoDBQueryHolder mongoDBQueryHolder = queryConverter.getMongoQuery();
+        assertEquals(document("_id",0).append("field_1","$_id.field_1").append("f2","$_id.field_2")
+                .append("total","$count").append("sum_amount","$sum_amount").append("average","$avg_amount"),
+                mongoDBQueryHolder.getAliseProjection());
+    }
+
     @Test
     public void selectAllFromTableWithSimpleWhereClauseString() throws ParseException {
         QueryConverter queryConverter = new QueryConverter("select * from my_table where value=\"theValue\"");
@@ -793,6 +828,37 @@ public class QueryConverterTest {
         assertEquals(document("value",document("$nin","theValue1","theValue2","theValue3")),mongoDBQueryHolder.getQuery());
     }
 
+    @Test
+    public void inClauseKeepsDateLikeStrings() throws ParseException {
+        QueryConverter queryConverter = new QueryConverter("select * from my_table where value IN ('2019-10-28','x')");
+        assertEquals(document("value",document("$in","2019-10-28","x")),queryConverter.getMongoQuery().getQuery());
+        queryConverter = new QueryConverter("select * from my_table where value IN ('2019-02-30','x')");
+        assertEquals(document("value",document("$in","2019-02-30","x")),queryConverter.getMongoQuery().getQuery());
+        queryConverter = new QueryConverter("select * from my_table where value IN ('2019-10-28')",
+                ImmutableMap.<String,FieldType>builder().put("value",FieldType.DATE).build(), FieldType.UNKNOWN);
+        assertTrue(((List) ((Document) queryConverter.getMongoQuery().getQuery().get("value")).get("$in")).get(0) instanceof Date);
+    }
+
+    @Test
+    public void comparisonKeepsDateLikeStringsOfStringFields() throws ParseException {
+        Map<String, FieldType> mapping = ImmutableMap.<String,FieldType>builder().put("value",FieldType.STRING).build();
+        QueryConverter queryConverter = new QueryConverter("select * from my_table where value = '2019-10-28'",
+                mapping, FieldType.UNKNOWN);
+        assertEquals(document("value","2019-10-28"),queryConverter.getMongoQuery().getQuery());
+        queryConverter = new QueryConverter("select * from my_table where value > '2019-10-28'", mapping, FieldType.UNKNOWN);
+        assertEquals(document("value",document("$gt","2019-10-28")),queryConverter.getMongoQuery().getQuery());
+        queryConverter = new QueryConverter("select * from my_table where value = '2019-10-28'");
+        assertEquals(document("value","2019-10-28"),queryConverter.getMongoQuery().getQuery());
+    }
+
+    @Test
+    public void comparisonKeepsInvalidDatesAsStrings() throws ParseException {
+        QueryConverter queryConverter = new QueryConverter("select * from my_table where value > '2019-02-30'");
+        assertEquals(document("value",document("$gt","2019-02-30")),queryConverter.getMongoQuery().getQuery());
+        queryConverter = new QueryConverter("select * from my_table where value > '2019-10-28'");
+        assertTrue(((Document) queryConverter.getMongoQuery().getQuery().get("value")).get("$gt") instanceof Date);
+    }
+
     @Test
     public void complicatedTest() throws ParseException {
         QueryConverter queryConverter = new QueryConverter("select * from my_table where (value=1 and  date(column,'YYYY-MM-DD') <= '2016-12-12' AND nullField IS NULL ) OR ((number > 5 OR number = 1) AND value2=\"theValue\")");
@@ -952,12 +1018,24 @@ public class QueryConverterTest {
                 "    }\n" +
                 "  }\n" +
                 "},{\n" +
+                "  \"$project\": {\n" +
+                "    \"agent_code\": 1,\n" +
+                "    \"advance_amount\": 1,\n" +
+                "    \"_id\": 0\n" +
+                "  }\n" +
+                "},{\n" +
                 "  \"$group\": {\n" +
                 "    \"_id\": \"$agent_code\",\n" +
                 "    \"sum_advance_amount\": {\n" +
                 "      \"$sum\": \"$advance_amount\"\n" +
                 "    }\n" +
                 "  }\n" +
+                "},{\n" +
+                "  \"$project\": {\n" +
+                "    \"_id\": 0,\n" +
+                "    \"agent_code\": \"$_id\",\n" +
+                "    \"sum_advance_amount\": \"$sum_advance_amount\"\n" +
+                "  }\n" +
                 "}])",byteArrayOutputStream.toString("UTF-8"));
     }
 
@@ -979,12 +1057,24 @@ public class QueryConverterTest {
                 "    }\n" +
                 "  }\n" +
                 "},{\n" +
+                "  \"$project\": {\n" +
+                "    \"agent_code\": 1,\n" +
+                "    \"advance_amount\": 1,\n" +
+                "    \"_id\": 0\n" +
+                "  }\n" +
+                "},{\n" +
                 "  \"$group\": {\n" +
                 "    \"_id\": \"$agent_code\",\n" +
                 "    \"sum_advance_amount\": {\n" +
                 "      \"$sum\": \"$advance_amount\"\n" +
                 "    }\n" +
                 "  }\n" +
+                "},{\n" +
+                "  \"$project\": {\n" +
+                "    \"_id\": 0,\n" +
+                "    \"agent_code\": \"$_id\",\n" +
+                "    \"sum_advance_amount\": \"$sum_advance_amount\"\n" +
+                "  }\n" +
                 "}],{\n" +
                 "  \"allowDiskUse\": true,\n" +
                 "  \"cursor\": {\n" +
@@ -1010,6 +1100,11 @@ public class QueryConverterTest {
                 "    }\n" +
                 "  }\n" +
                 "},{\n" +
+                "  \"$project\": {\n" +
+                "    \"agent_code\": 1,\n" +
+                "    \"_id\": 0\n" +
+                "  }\n" +
+                "},{\n" +
                 "  \"$group\": {\n" +
                 "    \"_id\": \"$agent_code\",\n" +
                 "    \"count\": {\n" +
@@ -1020,6 +1115,12 @@ public class QueryConverterTest {
                 "  \"$sort\": {\n" +
                 "    \"count\": -1\n" +
                 "  }\n" +
+                "},{\n" +
+                "  \"$project\": {\n" +
+                "    \"_id\": 0,\n" +
+                "    \"agent_code\": \"$_id\",\n" +
+                "    \"count\": \"$count\"\n" +
+                "  }\n" +
                 "}])",byteArrayOutputStream.toString("UTF-8"));
     }
 
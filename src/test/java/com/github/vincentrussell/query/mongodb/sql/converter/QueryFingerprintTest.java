@@ -0,0 +1,52 @@
+package com.github.vincentrussell.query.mongodb.sql.converter;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class QueryFingerprintTest {
+
+    @Test
+    public void literalsAreStripped() {
+        QueryFingerprint a = QueryFingerprint.of("select * from rpc_logs where type='a' and cost > 10");
+        QueryFingerprint b = QueryFingerprint.of("SELECT *\n FROM rpc_logs WHERE type = 'it''s' AND cost>-1.5e3;");
+        QueryFingerprint c = QueryFingerprint.of("select * from rpc_logs where type=:type and cost > :cost");
+        assertEquals("select * from rpc_logs where type = ? and cost > ?", a.getCanonical());
+        assertEquals(a, b);
+        assertEquals(a, c);
+        assertEquals(a.getHash(), b.getHash());
+        assertNotEquals(a, QueryFingerprint.of("select * from rpc_logs where type='a' or cost > 10"));
+        assertNotEquals(a, QueryFingerprint.of("select * from rpc_logs where kind='a' and cost > 10"));
+    }
+
+    @Test
+    public void inListsOfAnyLength() {
+        QueryFingerprint one = QueryFingerprint.of("select column1 from my_table where value IN ('theValue1')");
+        QueryFingerprint three = QueryFingerprint.of("select column1 from my_table where value in ('a', 'b',3)");
+        assertEquals("select column1 from my_table where value in (?+)", three.getCanonical());
+        assertEquals(one, three);
+        assertEquals("select * from a where b in (select c from d where e = ?)",
+                QueryFingerprint.canonical("select * from a where b in (select c from d where e = 1)"));
+    }
+
+    @Test
+    public void hashIsTheHashOfTheCanonicalText() {
+        String sql = "select * from my_table /* comment */ where OBJECTID('_id') IN ('53102b43bf1044ed8b0ba36b') -- end";
+        QueryFingerprint fingerprint = QueryFingerprint.of(sql);
+        assertEquals("select * from my_table where objectid (?) in (?+)", fingerprint.getCanonical());
+        long hash = 0xcbf29ce484222325L;
+        for (char c : fingerprint.getCanonical().toCharArray()) {
+            hash = (hash ^ c) * 0x100000001b3L;
+        }
+        assertEquals(hash, fingerprint.getHash());
+        assertEquals(16, fingerprint.getHex().length());
+    }
+
+    @Test
+    public void planKeepsTheFingerprint() throws ParseException {
+        QueryConverter template = QueryPlanCache.getTemplate("select * from rpc_logs where data_id=:dataId");
+        QueryConverter bound = template.bind(name -> "5d6e1b7a9b1e8a0001a1b2c3");
+        assertEquals(QueryFingerprint.of("select * from rpc_logs where data_id='x'"), bound.getFingerprint());
+        assertSame(template.getFingerprint(), template.copy().getFingerprint());
+    }
+}
@@ -0,0 +1,87 @@
+package com.github.vincentrussell.query.mongodb.sql.converter;
+
+import com.mongodb.ReadPreference;
+import org.bson.Document;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class QueryOptionsTest {
+
+    @Test
+    public void parseHint() throws ParseException {
+        QueryOptions options = QueryOptions.parseHint("/*+ batchSize(5000) maxTimeMS(200) readPref(secondary), hint('idx_create_at') allowDiskUse */");
+        assertEquals(Integer.valueOf(5000), options.getBatchSize());
+        assertEquals(Long.valueOf(200), options.getMaxTimeMS());
+        assertEquals(ReadPreference.secondary(), options.getReadPreference());
+        assertEquals("idx_create_at", options.getHint());
+        assertEquals(Boolean.TRUE, options.getAllowDiskUse());
+    }
+
+    @Test
+    public void badHints() {
+        for (String hint : new String[]{"/*+ batchSize(many) */", "/*+ readPref(somewhere) */", "/*+ fast(1) */", "/*+ hint() */"}) {
+            try {
+                QueryOptions.parseHint(hint);
+                fail(hint);
+            } catch (ParseException e) {
+                //expected
+            }
+        }
+    }
+
+    @Test
+    public void hintCommentOfTheStatement() throws ParseException {
+        QueryConverter queryConverter = new QueryConverter("select /*+ batchSize(50) readPref(secondaryPreferred) */ * from rpc_logs "
+                + "where status='2' /*+ maxTimeMS(100) */");
+        QueryOptions options = queryConverter.getMongoQuery().getOptions();
+        assertEquals(Integer.valueOf(50), options.getBatchSize());
+        assertEquals(Long.valueOf(100), options.getMaxTimeMS());
+        assertEquals(ReadPreference.secondaryPreferred(), options.getReadPreference());
+        assertTrue(new QueryConverter("select * from rpc_logs /* batchSize(50) */").getMongoQuery().getOptions().isEmpty());
+    }
+
+    @Test
+    public void aggregationPropertiesOfTheTranslation() throws ParseException {
+        System.setProperty(QueryConverter.D_AGGREGATION_BATCH_SIZE, "50");
+        QueryOptions options;
+        try {
+            options = new QueryConverter("select agent_code, count(*) from orders group by agent_code").getMongoQuery().getOptions();
+        } finally {
+            System.getProperties().remove(QueryConverter.D_AGGREGATION_BATCH_SIZE);
+        }
+        assertEquals(Integer.valueOf(50), options.getAggregationBatchSize());
+        assertNull(options.getAggregationAllowDiskUse());
+        assertNull(options.getBatchSize());
+    }
+
+    @Test
+    public void countWithoutTheIndexOfTheHint() throws ParseException {
+        QueryOptions options = QueryOptions.parseHint("/*+ hint(idx_create_at) */");
+        assertNull(options.toCountOptions((Document) null).getHint());
+        assertNull(options.toCountOptions((Document) null).getHintString());
+        assertEquals(new Document("create_at", 1), options.toCountOptions(new Document("create_at", 1)).getHint());
+    }
+
+    @Test
+    public void withOptions() throws ParseException, IOException {
+        QueryConverter queryConverter = new QueryConverter("select /*+ batchSize(50) maxTimeMS(100) */ agent_code, count(*) from orders group by agent_code");
+        QueryConverter tuned = queryConverter.withOptions(QueryOptions.Builder.create().setMaxTimeMS(20L).setAllowDiskUse(true).build());
+        assertEquals(Long.valueOf(100), queryConverter.getMongoQuery().getOptions().getMaxTimeMS());
+        QueryOptions options = tuned.getMongoQuery().getOptions();
+        assertEquals(Integer.valueOf(50), options.getBatchSize());
+        assertEquals(Long.valueOf(20), options.getMaxTimeMS());
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        tuned.write(byteArrayOutputStream);
+        assertTrue(byteArrayOutputStream.toString("UTF-8").endsWith("],{\n"
+                + "  \"allowDiskUse\": true,\n"
+                + "  \"cursor\": {\n"
+                + "    \"batchSize\": 50\n"
+                + "  },\n"
+                + "  \"maxTimeMS\": 20\n"
+                + "})"));
+    }
+}
@@ -0,0 +1,117 @@
+package com.github.vincentrussell.query.mongodb.sql.converter;
+
+import com.google.common.collect.ImmutableMap;
+import org.bson.Document;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class QueryPlanCacheTest {
+
+    @Before
+    public void before() {
+        QueryPlanCache.invalidateAll();
+    }
+
+    @Test
+    public void normalize() {
+        assertEquals("select * from my_table where value = 'a  b'",
+                QueryPlanCache.normalize("  select *\n from   my_table\twhere value = 'a  b' ;"));
+    }
+
+    @Test
+    public void sameSqlIsTranslatedOnce() throws ParseException {
+        long misses = QueryPlanCache.stats().missCount();
+        long hits = QueryPlanCache.stats().hitCount();
+        QueryPlanCache.get("select * from my_table where value=1");
+        QueryPlanCache.get("select *  from my_table\nwhere value=1");
+        assertEquals(misses + 1, QueryPlanCache.stats().missCount());
+        assertEquals(hits + 1, QueryPlanCache.stats().hitCount());
+    }
+
+    @Test
+    public void copiesAreIndependent() throws ParseException {
+        QueryConverter first = QueryPlanCache.get("select * from my_table where value=1");
+        first.getMongoQuery().getQuery().put("value", 2L);
+        QueryConverter second = QueryPlanCache.get("select * from my_table where value=1");
+        assertEquals(new Document("value", 1L), second.getMongoQuery().getQuery());
+    }
+
+    @Test
+    public void timeFunctionsAreEvaluatedPerCopy() throws ParseException, InterruptedException {
+        String sql = "update my_table set value=1, update_at=now() where key='a'";
+        Date first = QueryPlanCache.get(sql).getMongoQuery().getItems().get("update_at", Date.class);
+        Thread.sleep(5);
+        Date second = QueryPlanCache.get(sql).getMongoQuery().getItems().get("update_at", Date.class);
+        assertTrue(second.after(first));
+    }
+
+    @Test(expected = ParseException.class)
+    public void parseErrorsAreNotCached() throws ParseException {
+        QueryPlanCache.get("select * from my_table where key == 'value1'");
+    }
+
+    @Test
+    public void bindTemplate() throws ParseException {
+        QueryConverter template = QueryPlanCache.getTemplate(
+                "select * from rpc_logs where status=:status and type in (:types) and create_at>:beginTime and url like :url");
+        Date beginTime = new Date();
+        final Map<String, Object> params = ImmutableMap.<String, Object>of("status", "it's\nok",
+                "types", Arrays.asList("a", "b"), "beginTime", beginTime, "url", "http://%");
+        Document query = template.bind(params::get).getMongoQuery().getQuery();
+        assertEquals(new Document("$and", Arrays.asList(
+                new Document("status", "it's\nok"),
+                new Document("type", new Document("$in", Arrays.asList("a", "b"))),
+                new Document("create_at", new Document("$gt", beginTime)),
+                new Document("url", new Document("$regex", "^http://.*$")))), query);
+        assertEquals(4, template.getMongoQuery().getBindParameterCount());
+    }
+
+    @Test(expected = ParseException.class)
+    public void templateWithUnboundParameter() throws ParseException {
+        QueryPlanCache.getTemplate("select * from rpc_logs where status=:status limit :size");
+    }
+
+    @Test
+    public void shellStatementIsRenderedOncePerPlan() throws ParseException {
+        String sql = "select * from rpc_logs where create_at > '2019-09-03 00:00:00' and status='ok'";
+        String first = QueryPlanCache.get(sql).getShellStatement();
+        assertSame(first, QueryPlanCache.get(sql).getShellStatement());
+        assertTrue(first, first.contains("\"$gt\": ISODate(\""));
+    }
+
+    @Test
+    public void encodedQueryIsSharedByCopies() throws ParseException {
+        String sql = "select a, b from rpc_logs where create_at > '2019-09-03 00:00:00' and status in ('ok', 'failed') order by a desc";
+        QueryConverter converter = QueryPlanCache.get(sql);
+        EncodedQuery encoded = converter.getEncodedQuery();
+        assertSame(encoded, QueryPlanCache.get(sql).getEncodedQuery());
+        assertEquals(converter.getMongoQuery().getQuery().toJson(), encoded.getFilter().toJson());
+        assertEquals(converter.getMongoQuery().getProjection().toJson(), encoded.getProjection().toJson());
+        assertEquals(new Document("a", -1).toJson(), encoded.getSort().toJson());
+    }
+
+    @Test
+    public void changedCopiesAreEncodedAgain() throws ParseException {
+        String sql = "select * from rpc_logs where status = 'ok'";
+        EncodedQuery shared = QueryPlanCache.get(sql).getEncodedQuery();
+        QueryConverter changed = QueryPlanCache.get(sql);
+        changed.getMongoQuery().getQuery().put("status", "failed");
+        EncodedQuery encoded = changed.getEncodedQuery();
+        assertNotSame(shared, encoded);
+        assertEquals(new Document("status", "failed").toJson(), encoded.getFilter().toJson());
+        assertSame(shared, QueryPlanCache.get(sql).getEncodedQuery());
+    }
+
+    @Test
+    public void templatesAreNotEncoded() throws ParseException {
+        QueryConverter template = QueryPlanCache.getTemplate("select * from rpc_logs where status = :status");
+        assertNull(template.getEncodedQuery());
+        assertNull(template.bind(ImmutableMap.<String, Object>of("status", "ok")::get).getEncodedQuery());
+    }
+}
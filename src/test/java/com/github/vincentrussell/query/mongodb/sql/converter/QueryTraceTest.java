@@ -0,0 +1,99 @@
+package com.github.vincentrussell.query.mongodb.sql.converter;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class QueryTraceTest {
+
+    @Test
+    public void stages() {
+        try (QueryTrace trace = QueryTrace.start()) {
+            assertSame(trace, QueryTrace.current());
+            try (QueryTrace nested = QueryTrace.start()) {
+                assertSame(trace, nested);
+            }
+            assertSame(trace, QueryTrace.current());
+            QueryTrace.record(QueryTrace.Stage.ROUND_TRIP, System.nanoTime() - 2000000);
+            assertTrue(trace.getMillis(QueryTrace.Stage.ROUND_TRIP) >= 2);
+            assertEquals(0, trace.getMillis(QueryTrace.Stage.DRAIN), 0);
+            trace.setResult(Arrays.asList(1, 2, 3));
+            assertEquals(3, trace.getRows());
+        }
+        assertNull(QueryTrace.current());
+    }
+
+    @Test
+    public void detached() throws InterruptedException {
+        final QueryTrace trace;
+        try (QueryTrace outer = QueryTrace.start()) {
+            trace = QueryTrace.start().detach();
+            assertSame(outer, trace);
+            assertNull(QueryTrace.current());
+        }
+        Thread reader = new Thread(() -> QueryTrace.record(trace, QueryTrace.Stage.DRAIN, System.nanoTime() - 2000000));
+        reader.start();
+        reader.join();
+        assertTrue(trace.getMillis(QueryTrace.Stage.DRAIN) >= 2);
+        trace.setRows(5).close();
+        trace.close();
+        assertEquals(5, trace.getRows());
+        try (QueryTrace next = QueryTrace.start()) {
+            assertNotSame(trace, next);
+        }
+    }
+
+    @Test
+    public void streamIsTimedByItsStages() throws InterruptedException {
+        QueryTrace trace = QueryTrace.start().detachStream();
+        assertNull(QueryTrace.current());
+        QueryTrace.record(trace, QueryTrace.Stage.DRAIN, System.nanoTime() - 2000000);
+        // the caller reading slowly between the rows
+        Thread.sleep(50);
+        assertTrue(trace.getQueryMillis() >= 2);
+        assertTrue(trace.getQueryMillis() < 50);
+        trace.close();
+    }
+
+    @Test
+    public void forkPerSubscriber() {
+        QueryTrace first;
+        QueryTrace second;
+        try (QueryTrace statement = QueryTrace.start()) {
+            statement.setDbName("log").setSql("select * from rpc_logs", null);
+            QueryTrace.record(QueryTrace.Stage.TRANSLATE, System.nanoTime() - 2000000);
+            statement.handOver();
+            first = QueryTrace.fork(statement).detachStream();
+            second = QueryTrace.fork(statement).detachStream();
+        }
+        assertNull(QueryTrace.current());
+        assertNotSame(first, second);
+        assertTrue(first.getMillis(QueryTrace.Stage.TRANSLATE) >= 2);
+        QueryTrace.record(first, QueryTrace.Stage.DRAIN, System.nanoTime() - 2000000);
+        assertEquals(0, second.getMillis(QueryTrace.Stage.DRAIN), 0);
+        assertTrue(second.toString(), second.toString().startsWith("在数据库log上执行的sql"));
+        first.close();
+        second.close();
+    }
+
+    @Test
+    public void entry() throws ParseException {
+        final AtomicInteger rendered = new AtomicInteger();
+        QueryTrace trace = QueryTrace.start().detach();
+        assertNull(QueryTrace.current());
+        trace.setDbName("log").setQuery(new QueryConverter("select * from rpc_logs where type='a'"))
+                .setSql("select * from rpc_logs where type=:type", () -> {
+                    rendered.incrementAndGet();
+                    return "{\"type\":\"a\"}";
+                });
+        assertEquals(0, rendered.get());
+        String entry = trace.toString();
+        assertEquals(1, rendered.get());
+        assertTrue(entry, entry.startsWith("在数据库log上执行的sql[" + QueryFingerprint.of("select * from rpc_logs where type='a'").getHex()
+                + "]：select * from rpc_logs where type=:type , 参数为：{\"type\":\"a\"} , 集合：rpc_logs , 耗时(ms)：绑定参数0.0，"));
+        assertEquals("select * from rpc_logs where type=:type", IndexAdvisor.toSql("慢查询600ms，" + entry));
+    }
+}
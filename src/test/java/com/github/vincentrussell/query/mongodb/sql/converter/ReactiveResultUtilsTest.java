@@ -0,0 +1,105 @@
+package com.github.vincentrussell.query.mongodb.sql.converter;
+
+import com.mongodb.MongoTimeoutException;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import com.mongodb.reactivestreams.client.MongoDatabase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs against a server that is not there, the failures have to reach the future and the subscriber.
+ */
+public class ReactiveResultUtilsTest {
+    private MongoClient mongoClient;
+    private MongoDatabase mongoDatabase;
+    private ExecutorService executor;
+
+    @Before
+    public void before() {
+        mongoClient = MongoClients.create("mongodb://127.0.0.1:1/?serverSelectionTimeoutMS=200&connectTimeoutMS=100");
+        mongoDatabase = mongoClient.getDatabase("local");
+        executor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "reactive-test"));
+    }
+
+    @After
+    public void after() {
+        mongoClient.close();
+        executor.shutdown();
+    }
+
+    @Test
+    public void futureFailsOnTheExecutor() throws Exception {
+        AtomicReference<String> thread = new AtomicReference<>();
+        CompletableFuture<Object> future = ReactiveResultUtils.exec(mongoDatabase,
+                QueryPlanCache.get("select * from rpc_logs where status='2'"), executor);
+        assertFalse(future.isDone());
+        CompletableFuture<Object> handled = future.whenComplete((result, e) -> thread.set(Thread.currentThread().getName()));
+        try {
+            handled.get(10, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof MongoTimeoutException);
+        }
+        assertEquals("reactive-test", thread.get());
+    }
+
+    @Test
+    public void countFails() throws Exception {
+        try {
+            ReactiveResultUtils.exec(mongoDatabase, QueryPlanCache.get("select count(*) from rpc_logs"), executor).get(10, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof MongoTimeoutException);
+        }
+    }
+
+    @Test
+    public void streamFails() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        ReactiveResultUtils.stream(mongoDatabase, QueryPlanCache.get("select distinct status from rpc_logs"))
+                .subscribe(new Subscriber<Map>() {
+                    @Override
+                    public void onSubscribe(Subscription subscription) {
+                        subscription.request(10);
+                    }
+
+                    @Override
+                    public void onNext(Map map) {
+                    }
+
+                    @Override
+                    public void onError(Throwable throwable) {
+                        error.set(throwable);
+                        latch.countDown();
+                    }
+
+                    @Override
+                    public void onComplete() {
+                        latch.countDown();
+                    }
+                });
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertTrue(error.get() instanceof MongoTimeoutException);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void countCannotBeStreamed() throws ParseException {
+        ReactiveResultUtils.stream(mongoDatabase, QueryPlanCache.get("select count(*) from rpc_logs"));
+    }
+}
@@ -0,0 +1,165 @@
+package com.github.vincentrussell.query.mongodb.sql.converter.benchmark;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+import com.google.common.base.Charsets;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the benchmarks of this package with the gc profiler and compares them with the baseline of this machine,
+ * reporting the benchmarks that got slower or allocate more than the baseline allows. The exit code is 1 for a
+ * regression only with -DfailOnBenchmarkRegression=true, for a machine whose baseline was recorded with the same
+ * options.
+ * <p>
+ * Scores depend on the machine, so no baseline is shipped: the first run records it, by default in
+ * target/benchmark-baseline.json, -DbenchmarkBaseline=file to keep it elsewhere.
+ * <p>
+ * JMH command line options (-wi, -i, -f, a benchmark regex, ..) are passed on to JMH.
+ * With -DupdateBenchmarkBaseline=true the results are written to the baseline instead, replacing the entries of the
+ * benchmarks that were run.
+ */
+public class BenchmarkRunner {
+    public static final String D_BASELINE = "benchmarkBaseline";
+    public static final String D_UPDATE_BASELINE = "updateBenchmarkBaseline";
+    public static final String D_FAIL_ON_REGRESSION = "failOnBenchmarkRegression";
+    /**
+     * fraction a score may be worse than the baseline before it is reported, 0.2 when not set
+     */
+    public static final String D_TOLERANCE = "benchmarkTolerance";
+    private static final String DEFAULT_BASELINE = "target/benchmark-baseline.json";
+    private static final String ALLOCATION = "·gc.alloc.rate.norm";
+    /**
+     * bytes per operation an allocation may grow by without being reported, it is not exact for tiny allocations
+     */
+    private static final double ALLOCATION_SLACK = 64;
+
+    public static void main(String[] args) throws RunnerException, IOException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class);
+        if (commandLine.getIncludes().isEmpty()) {
+            options.include(BenchmarkRunner.class.getPackage().getName() + ".*Benchmark");
+        }
+        if (commandLine.getBenchModes().isEmpty()) {
+            options.mode(Mode.Throughput).mode(Mode.SampleTime);
+        }
+        if (!commandLine.getTimeUnit().hasValue()) {
+            options.timeUnit(TimeUnit.MICROSECONDS);
+        }
+        if (!commandLine.getWarmupIterations().hasValue()) {
+            options.warmupIterations(3);
+        }
+        if (!commandLine.getWarmupTime().hasValue()) {
+            options.warmupTime(TimeValue.seconds(1));
+        }
+        if (!commandLine.getMeasurementIterations().hasValue()) {
+            options.measurementIterations(5);
+        }
+        if (!commandLine.getMeasurementTime().hasValue()) {
+            options.measurementTime(TimeValue.seconds(1));
+        }
+        if (!commandLine.getForkCount().hasValue()) {
+            options.forks(1);
+        }
+        Map<String, JSONObject> results = toJson(new Runner(options.build()).run());
+
+        String baselinePath = System.getProperty(D_BASELINE);
+        File baselineFile = new File(baselinePath == null || baselinePath.isEmpty() ? DEFAULT_BASELINE : baselinePath);
+        if (Boolean.getBoolean(D_UPDATE_BASELINE) || !baselineFile.exists()) {
+            Map<String, Object> baseline = new TreeMap<>();
+            if (baselineFile.exists()) {
+                baseline.putAll(JSON.parseObject(FileUtils.readFileToString(baselineFile, Charsets.UTF_8)));
+            }
+            baseline.putAll(results);
+            FileUtils.write(baselineFile, JSON.toJSONString(baseline, SerializerFeature.PrettyFormat), Charsets.UTF_8);
+            System.out.println("baseline written to " + baselineFile);
+            return;
+        }
+        JSONObject baseline = JSON.parseObject(FileUtils.readFileToString(baselineFile, Charsets.UTF_8));
+        List<String> regressions = compare(baseline, results, Double.parseDouble(System.getProperty(D_TOLERANCE, "0.2")));
+        for (String regression : regressions) {
+            System.out.println("REGRESSION " + regression);
+        }
+        if (!regressions.isEmpty() && Boolean.getBoolean(D_FAIL_ON_REGRESSION)) {
+            System.exit(1);
+        }
+    }
+
+    static Map<String, JSONObject> toJson(Collection<RunResult> runResults) {
+        Map<String, JSONObject> results = new TreeMap<>();
+        for (RunResult runResult : runResults) {
+            BenchmarkParams params = runResult.getParams();
+            StringBuilder key = new StringBuilder(params.getBenchmark()
+                    .substring(BenchmarkRunner.class.getPackage().getName().length() + 1))
+                    .append(':').append(params.getMode().shortLabel());
+            for (String param : params.getParamsKeys()) {
+                key.append(':').append(param).append('=').append(params.getParam(param));
+            }
+            Result primary = runResult.getPrimaryResult();
+            JSONObject result = new JSONObject(true);
+            result.put("score", primary.getScore());
+            result.put("unit", primary.getScoreUnit());
+            if (params.getMode() == Mode.SampleTime) {
+                result.put("p0.50", primary.getStatistics().getPercentile(50));
+                result.put("p0.99", primary.getStatistics().getPercentile(99));
+            }
+            Result allocation = runResult.getSecondaryResults().get(ALLOCATION);
+            if (allocation != null) {
+                result.put("allocation", allocation.getScore());
+            }
+            results.put(key.toString(), result);
+        }
+        return results;
+    }
+
+    static List<String> compare(JSONObject baseline, Map<String, JSONObject> results, double tolerance) {
+        List<String> regressions = new ArrayList<>();
+        for (Map.Entry<String, JSONObject> entry : results.entrySet()) {
+            JSONObject expected = baseline.getJSONObject(entry.getKey());
+            if (expected == null) {
+                continue;
+            }
+            JSONObject actual = entry.getValue();
+            boolean higherIsBetter = entry.getKey().contains(":" + Mode.Throughput.shortLabel());
+            //the mean of the sampled latencies moves with every gc pause, the median does not
+            String metric = higherIsBetter ? "score" : "p0.50";
+            double score = actual.getDoubleValue(metric);
+            double expectedScore = expected.getDoubleValue(metric);
+            if (higherIsBetter ? score < expectedScore * (1 - tolerance) : score > expectedScore * (1 + tolerance)) {
+                regressions.add(entry.getKey() + " " + metric + " " + score + " " + actual.getString("unit")
+                        + ", baseline " + expectedScore);
+            }
+            if (actual.containsKey("allocation") && expected.containsKey("allocation")) {
+                double allocation = actual.getDoubleValue("allocation");
+                double expectedAllocation = expected.getDoubleValue("allocation");
+                if (allocation > expectedAllocation * (1 + tolerance) + ALLOCATION_SLACK) {
+                    regressions.add(entry.getKey() + " allocates " + allocation + " B/op, baseline " + expectedAllocation);
+                }
+            }
+        }
+        return regressions;
+    }
+}
@@ -0,0 +1,34 @@
+package com.github.vincentrussell.query.mongodb.sql.converter.benchmark;
+
+import com.github.vincentrussell.query.mongodb.sql.converter.util.DateLiteralParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Date;
+
+@State(Scope.Thread)
+public class DateLiteralBenchmark {
+
+    @Param({"0", "1", "2", "3"})
+    public int literal;
+
+    private String text;
+
+    @Setup
+    public void setup() {
+        text = SqlCorpus.DATE_LITERALS[literal];
+    }
+
+    @Benchmark
+    public Date formatter() {
+        return DateLiteralParser.parse(text);
+    }
+
+    @Benchmark
+    public Date naturalLanguage() {
+        return DateLiteralParser.parseNaturalLanguage(text);
+    }
+}
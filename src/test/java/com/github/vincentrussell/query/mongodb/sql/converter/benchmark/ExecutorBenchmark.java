@@ -0,0 +1,51 @@
+package com.github.vincentrussell.query.mongodb.sql.converter.benchmark;
+
+import com.github.vincentrussell.query.mongodb.sql.converter.ParseException;
+import com.github.vincentrussell.query.mongodb.sql.converter.QueryConverter;
+import com.github.vincentrussell.query.mongodb.sql.converter.QueryPlanCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import qeorm.MongoDbExecutor;
+
+/**
+ * The two ways MongoDbExecutor turns a sql template and its parameters into a query:
+ * formatting the values into the sql and translating it, or binding them into the cached template.
+ * The parameters do not change between invocations, so the formatted sql is a hit of the plan cache after the first
+ * one; createSqlAndTranslate translates it every time and createSqlAndCachedPlan measures the cache hit.
+ */
+@State(Scope.Thread)
+public class ExecutorBenchmark {
+
+    @Param({"0", "1", "2"})
+    public int template;
+
+    private String sql;
+
+    @Setup
+    public void setup() {
+        sql = SqlCorpus.TEMPLATES[template];
+    }
+
+    @Benchmark
+    public String createSql() {
+        return MongoDbExecutor.createSql(sql, SqlCorpus.PARAMETERS);
+    }
+
+    @Benchmark
+    public QueryConverter createSqlAndTranslate() throws ParseException {
+        return new QueryConverter(MongoDbExecutor.createSql(sql, SqlCorpus.PARAMETERS));
+    }
+
+    @Benchmark
+    public QueryConverter createSqlAndCachedPlan() throws ParseException {
+        return QueryPlanCache.get(MongoDbExecutor.createSql(sql, SqlCorpus.PARAMETERS));
+    }
+
+    @Benchmark
+    public QueryConverter bindTemplate() throws ParseException {
+        return QueryPlanCache.getTemplate(sql).bind(SqlCorpus.PARAMETERS::get);
+    }
+}
@@ -0,0 +1,63 @@
+package com.github.vincentrussell.query.mongodb.sql.converter.benchmark;
+
+import com.github.vincentrussell.query.mongodb.sql.converter.ResultUtils;
+import org.bson.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Turning the documents of a distinct or group by query into the rows ResultUtils.select returns.
+ */
+@State(Scope.Thread)
+public class ResultShapingBenchmark {
+
+    @Param({"100", "10000"})
+    public int rows;
+
+    private List<String> values;
+    private List<Document> groups;
+    private List<Document> compoundGroups;
+    private Document projection;
+    private Document compoundProjection;
+
+    @Setup
+    public void setup() {
+        values = new ArrayList<>(rows);
+        groups = new ArrayList<>(rows);
+        compoundGroups = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            values.add("agent" + i);
+            groups.add(new Document("_id", "agent" + i).append("count", i));
+            compoundGroups.add(new Document("_id", new Document("agent_code", "agent" + i).append("city", "city" + i % 10))
+                    .append("count", i));
+        }
+        projection = new Document("_id", "$agent_code").append("count", new Document("$sum", 1));
+        compoundProjection = new Document("_id", new Document("agent_code", "$agent_code").append("city", "$city"))
+                .append("count", new Document("$sum", 1));
+    }
+
+    @Benchmark
+    public List<Map> distinctRows() {
+        return ResultUtils.distinctRows(values, "agent_code");
+    }
+
+    @Benchmark
+    public List<Map> groupRows() {
+        return ResultUtils.groupRows(groups, projection);
+    }
+
+    /**
+     * the _id documents are changed in place, so the same documents can be shaped again
+     */
+    @Benchmark
+    public List<Map> compoundGroupRows() {
+        return ResultUtils.groupRows(compoundGroups, compoundProjection);
+    }
+}
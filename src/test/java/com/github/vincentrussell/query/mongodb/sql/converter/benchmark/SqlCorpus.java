@@ -0,0 +1,54 @@
+package com.github.vincentrussell.query.mongodb.sql.converter.benchmark;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * The sql shapes the benchmarks run on, taken from QueryConverterTest and from the where template of RpcLog.
+ */
+public final class SqlCorpus {
+
+    public static final String[] SQL = {
+            "select * from my_table where value=1",
+            "select column1, column2 from my_table where value IS NULL",
+            "select * from my_table where value IS NULL order by field_1, field_2 DESC",
+            "select * from my_table where value=1 OR (number = 1 AND value2='theValue')",
+            "select * from my_table where (value=1 and column <= '2016-12-12' AND nullField IS NULL ) OR ((number > 5 OR number = 1) AND value2='theValue')",
+            "select column1 from my_table where value IN ('theValue1','theValue2','theValue3')",
+            "select * from my_table where OBJECTID('_id') IN ('53102b43bf1044ed8b0ba36b', '54651022bffebc03098b4568') AND (foo = 'bar')",
+            "select * from my_table where subDocument.value LIKE 'start%'",
+            "select DISTINCT column1 from my_table where value=1",
+            "select count(*) from my_table where value NOT LIKE 'start%'",
+            "SELECT agent_code, count(*) FROM my_table WHERE a = 1 GROUP BY agent_code ORDER BY agent_code",
+            "SELECT count(*) FROM rpc_logs where type = 'com.dankegongyu.risk.provider.baidu.FaceMatch0008' and create_at >'2019-09-03 00:00:00' AND create_at <= '2019-09-03 23:59:59' and charging = 'Y' ",
+            "select * from rpc_logs where status='2' and type='http' and create_at>'2019-09-03 00:00:00' and create_at<'2019-09-04 00:00:00' order by create_at desc limit 20",
+    };
+
+    /**
+     * sql templates as qeorm builds them from the where template of RpcLog
+     */
+    public static final String[] TEMPLATES = {
+            "select * from rpc_logs where data_id=:dataId",
+            "select * from rpc_logs where status=:status and type=:type and create_at>:beginTime and create_at<:endTime",
+            "select * from rpc_logs where trace_id like :traceId and url like :url",
+    };
+
+    public static final Map<String, Object> PARAMETERS = ImmutableMap.<String, Object>builder()
+            .put("dataId", "5d6e1b7a9b1e8a0001a1b2c3")
+            .put("status", "2")
+            .put("type", "http")
+            .put("beginTime", new Date(1567440000000L))
+            .put("endTime", new Date(1567526400000L))
+            .put("traceId", "a8e1f0c2%")
+            .put("url", "/api/rpc/%")
+            .build();
+
+    public static final String[] DATE_LITERALS = {
+            "2019-09-03", "2019-09-03 23:59:59", "2019-09-03 23:59:59.123", "2019-09-03T23:59:59Z"
+    };
+
+    private SqlCorpus() {
+    }
+}
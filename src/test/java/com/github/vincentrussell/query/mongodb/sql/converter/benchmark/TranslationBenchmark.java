@@ -0,0 +1,78 @@
+package com.github.vincentrussell.query.mongodb.sql.converter.benchmark;
+
+import com.github.vincentrussell.query.mongodb.sql.converter.FieldType;
+import com.github.vincentrussell.query.mongodb.sql.converter.ParseException;
+import com.github.vincentrussell.query.mongodb.sql.converter.QueryConverter;
+import com.github.vincentrussell.query.mongodb.sql.converter.QueryFingerprint;
+import com.github.vincentrussell.query.mongodb.sql.converter.QueryPlanCache;
+import com.github.vincentrussell.query.mongodb.sql.converter.WhereCauseProcessor;
+import net.sf.jsqlparser.JSQLParserException;
+import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.parser.CCJSqlParserUtil;
+import net.sf.jsqlparser.statement.select.PlainSelect;
+import net.sf.jsqlparser.statement.select.Select;
+import org.bson.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.function.Function;
+
+/**
+ * Translation of one sql statement of the {@link SqlCorpus} per run.
+ */
+@State(Scope.Thread)
+public class TranslationBenchmark {
+    private static final Function<String, Object> NO_PARAMETERS = name -> null;
+
+    @Param({"0", "3", "4", "6", "10", "12"})
+    public int statement;
+
+    private String sql;
+    private Expression where;
+    private QueryConverter plan;
+    private WhereCauseProcessor whereCauseProcessor;
+
+    @Setup
+    public void setup() throws JSQLParserException, ParseException {
+        sql = SqlCorpus.SQL[statement];
+        where = ((PlainSelect) ((Select) CCJSqlParserUtil.parse(sql)).getSelectBody()).getWhere();
+        plan = new QueryConverter(sql);
+        whereCauseProcessor = new WhereCauseProcessor(FieldType.UNKNOWN, Collections.<String, FieldType>emptyMap());
+    }
+
+    @Benchmark
+    public QueryConverter parse() throws ParseException {
+        return new QueryConverter(sql);
+    }
+
+    @Benchmark
+    public QueryConverter cachedPlan() throws ParseException {
+        return QueryPlanCache.get(sql);
+    }
+
+    @Benchmark
+    public Object whereClause() throws ParseException {
+        return whereCauseProcessor.parseExpression(new Document(), where, null);
+    }
+
+    @Benchmark
+    public long fingerprint() {
+        return QueryFingerprint.hash(sql);
+    }
+
+    /**
+     * the copy made by bind() is measured too, the shell statement of a plan is only rendered once
+     */
+    @Benchmark
+    public int write() throws ParseException, IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        plan.bind(NO_PARAMETERS).write(outputStream);
+        return outputStream.size();
+    }
+}